@@ -0,0 +1,20 @@
+package concurrency;
+
+import java.util.*;
+
+/**
+Functional interface representing a function which processes several items at once, added to a pipeline with PipelineBuilder.addBatch. <br>
+This suits work which is cheaper done in bulk, such as one native call over many frames, or one write of many records. <br>
+T is the input type to the function, V is the output type.
+*/
+public interface BatchFunction<T, V>{
+	/**
+	The function to execute. <br>
+	The batch holds the items in the order they arrived, each as the Collection a PipelineFunction would have been given for it. <br>
+	The function must return exactly one output per item, in the same order. Each output is passed on to the next step by itself,
+	with its own item's frame sequence number, so the steps after a batch step receive items one at a time as usual. <br>
+	If the output type is Void, the function may return null. <br>
+	The same rules as for PipelineFunction.execute apply to modifying the input and to exceptions.
+	*/
+	List<V> executeBatch(List<Collection<T>> batch);
+}
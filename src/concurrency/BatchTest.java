@@ -0,0 +1,68 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class BatchTest{
+	static int received = 0;
+	static int outOfOrder = 0;
+	static int batches = 0;
+	static int largestBatch = 0;
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> source = (t) -> {
+			sleep(1);
+			return counter[0]++;
+		};
+		BatchFunction<Integer, Integer> square = (batch) -> {
+			batches++;
+			largestBatch = Math.max(largestBatch, batch.size());
+			//Pretend each call has a fixed cost, which batching spreads over several items.
+			sleep(5);
+			List<Integer> answer = new ArrayList<Integer>(batch.size());
+			for(Collection<Integer> item : batch){
+				int i = item.iterator().next();
+				answer.add(i * i);
+			}
+			return answer;
+		};
+		int[] last = {-1};
+		PipelineFunction<Integer, Void> sink = PipelineFunction.single((t) -> {
+			int root = (int)Math.round(Math.sqrt(t));
+			if(root != last[0] + 1){
+				outOfOrder++;
+			}
+			last[0] = root;
+			received++;
+			return null;
+		});
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.addThreads(Void.class, Integer.class, source);
+		builder.addBatch(Integer.class, Integer.class, NodeBehavior.BLOCKING, 8, 20, square);
+		builder.addThreads(Integer.class, Void.class, sink);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(1000);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		System.out.println("finished " + finished + ", " + counter[0] + " produced, " + received + " received, " + outOfOrder + " out of order, " + batches + " batches, largest " + largestBatch);
+		System.out.println(p.metrics());
+		if(!finished){
+			p.interrupt();
+		}
+	}
+
+	static void sleep(int ms){
+		try {
+			Thread.sleep(ms);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package concurrency;
+
+import java.util.*;
+
+//The function run by a batch step, together with how large its batches may get and how long it waits to fill one.
+//It is also a PipelineFunction running a batch of one, so that a batch step can be described by a Stage like any other step.
+class Batching<T, V> implements PipelineFunction<T, V>{
+	private final BatchFunction<T, V> function;
+	private final int size;
+	private final long waitNanos;
+
+	Batching(BatchFunction<T, V> function, int size, long waitNanos){
+		this.function = function;
+		this.size = size;
+		this.waitNanos = waitNanos;
+	}
+
+	int size(){
+		return size;
+	}
+
+	long waitNanos(){
+		return waitNanos;
+	}
+
+	String functionName(){
+		return function.getClass().getName();
+	}
+
+	List<V> executeBatch(List<Collection<T>> batch){
+		return function.executeBatch(Collections.unmodifiableList(batch));
+	}
+
+	public V execute(Collection<T> t){
+		List<V> answer = this.executeBatch(List.of(t));
+		return answer == null ? null : answer.get(0);
+	}
+}
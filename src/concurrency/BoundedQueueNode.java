@@ -0,0 +1,350 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
+
+//Node which queues up to a fixed number of generations.
+//A generation is assembled from one value from each producer, then appended to the queue. Every consumer withdraws every queued generation, in order.
+//What happens when a producer deposits twice into the same generation, or when a generation is completed while the queue is full, depends on the drop policy.
+//Withdrawal Value has representation exposure.
+//If one consumer thread modifies their instance of the withdrawn object, it may affect the instance being stored in node.
+class BoundedQueueNode<T> implements Node<T>{
+	private final int capacity;
+	private final DropPolicy policy;
+
+	private boolean producersHaveStarted = false;
+	private boolean consumersHaveStarted = false;
+
+	private final Map<PipelineRunnable<?, T>, Integer> producers = new HashMap<PipelineRunnable<?, T>, Integer>();
+	private final Map<PipelineRunnable<T, ?>, Integer> consumers = new HashMap<PipelineRunnable<T, ?>, Integer>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	//The generation currently being assembled, indexed by producer.
+	private Object[] assembling;
+	private int assembled = 0;
+	//Frame sequence number of the generation being assembled, which is the highest sequence number deposited into it.
+	private long assemblingSequence = -1;
+	//Set while a producer waits for room to queue the assembled generation, so that nobody else queues it too.
+	private boolean queueing = false;
+
+	//Queued generations. Generation g is stored at index g % capacity, and the queue holds generations head (inclusive) to tail (exclusive).
+	private final List<T>[] queue;
+	private final long[] queueSequences;
+	private long head = 0;
+	private long tail = 0;
+	//The next generation each consumer will withdraw, indexed by consumer.
+	private long[] cursors;
+	//Producers which will not deposit again, indexed by producer.
+	private boolean[] closed;
+	private int closedCount = 0;
+
+	private volatile long dropped = 0;
+	private Consumer<? super T> discard = Node.forget();
+
+	@SuppressWarnings("unchecked")
+	BoundedQueueNode(int capacity, DropPolicy policy){
+		if(capacity <= 0){
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		if(policy == null){
+			throw new NullPointerException("Drop policy was null.");
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		this.queue = (List<T>[])new List<?>[capacity];
+		this.queueSequences = new long[capacity];
+	}
+
+	//Shouldn't be public??? - kind of ok becuase Node, BoundedQueueNode, and PipelineRunnable are all package private.
+	public void pingAsProducer(PipelineRunnable<?, T> pr){
+		if(producersHaveStarted){
+			throw new IllegalStateException("Cannot ping as producer after producers have already started depositing.");
+		}
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		producers.putIfAbsent(pr, producers.size());
+	}
+
+	public void pingAsConsumer(PipelineRunnable<T, ?> pr){
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		if(consumersHaveStarted){
+			throw new IllegalStateException("Cannot ping as consumer after consumers have already started withdrawing.");
+		}
+		consumers.putIfAbsent(pr, consumers.size());
+	}
+
+	public void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException {
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		if(t == null){
+			throw new NullPointerException("Input was null");
+		}
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			producersHaveStarted = true;
+			if(assembling[index] != null && this.isComplete()){
+				//The generation was only waiting on producers which have since closed.
+				this.enqueue();
+			}
+			if(assembling[index] != null){
+				//This producer is a generation ahead of the others.
+				if(policy == DropPolicy.DROP_OLDEST){
+					@SuppressWarnings("unchecked")
+					T replaced = (T)assembling[index];
+					assembling[index] = t;
+					assemblingSequence = Math.max(assemblingSequence, pr.sequence());
+					dropped++;
+					discard.accept(replaced);
+					return;
+				} else if(policy == DropPolicy.DROP_NEWEST){
+					dropped++;
+					discard.accept(t);
+					return;
+				}
+				while(assembling[index] != null){
+					if(this.isComplete()){
+						this.enqueue();
+					} else {
+						changed.await();
+					}
+				}
+			}
+			assembling[index] = t;
+			assemblingSequence = Math.max(assemblingSequence, pr.sequence());
+			assembled++;
+			if(this.isComplete()){
+				try {
+					this.enqueue();
+				} catch(InterruptedException e){
+					//t is already stored, so the generation is left for the next producer or consumer to queue, and the interrupt is kept for the caller.
+					Thread.currentThread().interrupt();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void close(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		lock.lock();
+		try {
+			this.start();
+			if(!closed[index]){
+				closed[index] = true;
+				closedCount++;
+			}
+			//Queueing a generation this completes could block, which close must not do. Waiting producers and consumers queue it instead.
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		return this.take(pr, false, 0);
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException {
+		return this.take(pr, true, deadline);
+	}
+
+	private Collection<T> take(PipelineRunnable<T, ?> pr, boolean timed, long deadline) throws InterruptedException {
+		Integer index = consumers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Consumer did not ping node.");
+		}
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			consumersHaveStarted = true;
+			long cursor;
+			while(true){
+				//Generations this consumer had not reached yet may have been dropped.
+				cursor = Math.max(cursors[index], head);
+				if(cursor < tail){
+					break;
+				}
+				if(closedCount == assembling.length){
+					if(assembled == 0){
+						return null;
+					}
+					//Nobody is left to queue the last, partly assembled generation. Queue it here, without dropping anything.
+					if(tail - head < capacity){
+						this.append();
+						continue;
+					}
+				}
+				if(!Node.await(changed, timed, deadline)){
+					return List.of();
+				}
+			}
+			List<T> answer = queue[(int)(cursor % capacity)];
+			pr.setSequence(queueSequences[(int)(cursor % capacity)]);
+			cursors[index] = cursor + 1;
+			long minimum = tail;
+			for(long c : cursors){
+				minimum = Math.min(minimum, c);
+			}
+			if(minimum > head){
+				while(head < minimum){
+					queue[(int)(head % capacity)] = null;
+					head++;
+				}
+				changed.signalAll();
+			}
+			return answer;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long dropped(){
+		return dropped;
+	}
+
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//A queued generation which some consumer has withdrawn counts as handed over, even if other consumers never withdraw it.
+	public void discardRemaining(){
+		lock.lock();
+		try {
+			this.start();
+			for(long g = Math.max(head, this.maximumCursor()); g < tail; g++){
+				Node.discardAll(discard, queue[(int)(g % capacity)]);
+			}
+			while(head < tail){
+				queue[(int)(head % capacity)] = null;
+				head++;
+			}
+			this.discardAssembling();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int occupancy(){
+		lock.lock();
+		try {
+			return (int)(tail - head);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Allocates the per-producer and per-consumer state. Must be called while holding the lock.
+	private void start(){
+		if(assembling == null){
+			assembling = new Object[producers.size()];
+			cursors = new long[consumers.size()];
+			closed = new boolean[producers.size()];
+		}
+	}
+
+	//Appends the assembled generation to the queue, applying the drop policy if the queue is full. Must be called while holding the lock.
+	private void enqueue() throws InterruptedException {
+		if(tail - head == capacity){
+			if(policy == DropPolicy.DROP_OLDEST){
+				if(this.maximumCursor() <= head){
+					Node.discardAll(discard, queue[(int)(head % capacity)]);
+				}
+				queue[(int)(head % capacity)] = null;
+				head++;
+				dropped++;
+			} else if(policy == DropPolicy.DROP_NEWEST){
+				this.discardAssembling();
+				dropped++;
+				return;
+			} else {
+				queueing = true;
+				try {
+					while(tail - head == capacity){
+						changed.await();
+					}
+				} finally {
+					queueing = false;
+				}
+			}
+		}
+		this.append();
+	}
+
+	//Must be called while holding the lock, with room in the queue.
+	private void append(){
+		queue[(int)(tail % capacity)] = this.assembledGeneration();
+		queueSequences[(int)(tail % capacity)] = assemblingSequence;
+		tail++;
+		this.clearAssembling();
+	}
+
+	//Returns whether every producer which has not closed has deposited into the generation being assembled, and at least one has,
+	//and nobody is already queueing it. Must be called while holding the lock.
+	private boolean isComplete(){
+		if(queueing){
+			return false;
+		}
+		if(assembled == assembling.length){
+			return true;
+		}
+		if(closedCount == 0 || assembled == 0){
+			return false;
+		}
+		for(int i = 0; i < assembling.length; i++){
+			if(assembling[i] == null && !closed[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//Returns the cursor of the consumer furthest ahead. Every queued generation below it has been handed to at least one consumer.
+	//Must be called while holding the lock.
+	private long maximumCursor(){
+		long maximum = 0;
+		for(long c : cursors){
+			maximum = Math.max(maximum, c);
+		}
+		return maximum;
+	}
+
+	//Discards the values of the generation being assembled, and clears it. Must be called while holding the lock.
+	private void discardAssembling(){
+		for(Object o : assembling){
+			if(o != null){
+				@SuppressWarnings("unchecked")
+				T t = (T)o;
+				discard.accept(t);
+			}
+		}
+		this.clearAssembling();
+	}
+
+	//Must be called while holding the lock.
+	private void clearAssembling(){
+		Arrays.fill(assembling, null);
+		assembled = 0;
+		changed.signalAll();
+	}
+
+	//Snapshots the assembled generation, leaving out producers which closed without depositing into it.
+	//The snapshot keeps the array it was assembled in, so a fresh one takes its place. Must be called while holding the lock.
+	private List<T> assembledGeneration(){
+		List<T> answer = GenerationSnapshot.of(assembling);
+		assembling = new Object[assembling.length];
+		return answer;
+	}
+}
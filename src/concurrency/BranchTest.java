@@ -0,0 +1,96 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class BranchTest{
+	static int displayed = 0;
+	static int logged = 0;
+	static int mismatched = 0;
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> source = (t) -> {
+			return counter[0]++;
+		};
+		PipelineFunction<Integer, Integer> detect = (t) -> {
+			sleep(1);
+			return t.iterator().next();
+		};
+		PipelineFunction<Integer, Integer> render = PipelineFunction.single((t) -> {
+			return t;
+		});
+		PipelineFunction<Integer, Integer> overlay = PipelineFunction.single((t) -> {
+			return -t;
+		});
+		PipelineFunction<Integer, Void> display = (t) -> {
+			//The joined generation holds the rendered frame and its overlay, which must come from the same frame.
+			int sum = 0;
+			for(Integer i : t){
+				sum += i;
+			}
+			if(t.size() != 2 || sum != 0){
+				mismatched++;
+			}
+			displayed++;
+			return null;
+		};
+		PipelineFunction<Integer, Void> log = (t) -> {
+			sleep(20);
+			logged++;
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.addThreads(Void.class, Integer.class, source);
+		builder.addThreads(Integer.class, Integer.class, detect);
+		//The slow logging branch sits behind a replacing node, so it should not slow down the display path.
+		builder.branch(NodeBehavior.REPLACING).addThreads(Integer.class, Void.class, log);
+		PipelineBuilder overlayBranch = builder.branch(NodeBehavior.BLOCKING).addThreads(Integer.class, Integer.class, NodeBehavior.REORDERING, overlay);
+		builder.addThreads(Integer.class, Integer.class, NodeBehavior.REORDERING, render);
+		builder.join(overlayBranch);
+		builder.addThreads(Integer.class, Void.class, display);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		System.out.println("finished " + finished + ", " + counter[0] + " produced, " + displayed + " displayed, " + logged + " logged, " + mismatched + " mismatched, " + p.droppedFrames() + " dropped");
+		if(!finished){
+			p.interrupt();
+		}
+
+		//A branch which is not joined must not be able to hold up the rest of the pipeline.
+		PipelineBuilder blocking = Pipeline.builder().setDefaultUncaughtExceptionHandler(logAndContinue).addThreads(Void.class, Integer.class, source);
+		blocking.branch(NodeBehavior.BLOCKING).addThreads(Integer.class, Void.class, log);
+		blocking.addThreads(Integer.class, Void.class, display);
+		System.out.println("unjoined branch behind a blocking node rejected " + rejected(blocking));
+		//Values which are discarded must be shared with every branch they go to.
+		PipelineBuilder unshared = Pipeline.builder().setDefaultUncaughtExceptionHandler(logAndContinue).setDiscardAction(Integer.class, (i) -> {}).addThreads(Void.class, Integer.class, source);
+		unshared.branch(NodeBehavior.REPLACING).addThreads(Integer.class, Void.class, log);
+		unshared.addThreads(Integer.class, Void.class, display);
+		System.out.println("branch with a discard action but no share action rejected " + rejected(unshared));
+		unshared.setShareAction(Integer.class, (i) -> {});
+		System.out.println("branch with both rejected " + rejected(unshared));
+	}
+
+	static boolean rejected(PipelineBuilder builder){
+		try {
+			builder.build();
+			return false;
+		} catch(PipelineBuilderException e){
+			return true;
+		}
+	}
+
+	static void sleep(int ms){
+		try {
+			Thread.sleep(ms);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package concurrency;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DiscardTest{
+	//Stands in for a pooled frame: every reference taken must be released exactly once, by a step or by the discard action,
+	//and a token must not be used once its last reference is released.
+	static final class Token{
+		static final AtomicInteger outstanding = new AtomicInteger();
+		static final AtomicInteger discarded = new AtomicInteger();
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		Token(){
+			outstanding.incrementAndGet();
+		}
+
+		void retain(){
+			if(references.getAndIncrement() <= 0){
+				throw new IllegalStateException("Token retained after being released.");
+			}
+		}
+
+		void release(){
+			int left = references.decrementAndGet();
+			if(left < 0){
+				throw new IllegalStateException("Token released too often.");
+			}
+			if(left == 0){
+				outstanding.decrementAndGet();
+			}
+		}
+	}
+
+	static int mistakes = 0;
+	static final AtomicInteger failures = new AtomicInteger();
+
+	public static void main(String[] args) throws InterruptedException {
+		run("queue, drop oldest", NodeBehavior.QUEUE, DropPolicy.DROP_OLDEST, 0, false, true);
+		run("queue, drop newest", NodeBehavior.QUEUE, DropPolicy.DROP_NEWEST, 0, false, true);
+		run("replacing", NodeBehavior.REPLACING, DropPolicy.BLOCK, 0, false, true);
+		run("ring buffer", NodeBehavior.RING_BUFFER, DropPolicy.BLOCK, 0, false, true);
+		run("max age", NodeBehavior.QUEUE, DropPolicy.BLOCK, 5, false, false);
+		run("elastic, interrupted", NodeBehavior.BLOCKING, DropPolicy.BLOCK, 0, true, true);
+		run("elastic, max age", NodeBehavior.BLOCKING, DropPolicy.BLOCK, 5, true, false);
+		fanOutInterrupted();
+		for(int i = 0; i < 5; i++){
+			runBranch("joined branch, interrupted", true);
+			runBranch("dropping branch, interrupted", false);
+		}
+		runFlow();
+		System.out.println(mistakes + " mistakes");
+	}
+
+	static void run(String name, NodeBehavior nb, DropPolicy dp, long maxAge, boolean elastic, boolean interrupt) throws InterruptedException {
+		Token.outstanding.set(0);
+		Token.discarded.set(0);
+		PipelineBuilder builder = Pipeline.builder();
+
+		PipelineFunction<Void, Token> source = (t) -> {
+			return new Token();
+		};
+		PipelineFunction<Token, Token> slow = PipelineFunction.single((token) -> {
+			token.release();
+			try {
+				Thread.sleep(2);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return new Token();
+		});
+		PipelineFunction<Token, Void> sink = PipelineFunction.single((token) -> {
+			token.release();
+			return null;
+		});
+
+		builder.setDefaultUncaughtExceptionHandler(DiscardTest::failed);
+		builder.setDiscardAction(Token.class, DiscardTest::discard);
+		builder.setFrequency(1000).setNodeCapacity(4).setDropPolicy(dp);
+		builder.addThreads(Void.class, Token.class, nb, source);
+		builder.setMaxFrameAge(maxAge);
+		if(elastic){
+			builder.addElasticWorkers(Token.class, Token.class, 1, 3, slow);
+		} else {
+			builder.addThreads(Token.class, Token.class, nb, slow);
+		}
+		builder.setMaxFrameAge(0);
+		builder.addThreads(Token.class, Void.class, sink);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(300);
+		//Interrupting leaves tokens in the nodes and in the middle of being deposited. Shutting down drains them.
+		if(interrupt){
+			p.interrupt();
+		} else {
+			p.shutdown();
+		}
+		check(name, p);
+	}
+
+	//Each token goes to the next step and to a slow branch, which is either joined back or reads through a dropping node.
+	//Interrupting while a token is being deposited into the branch's node must not discard the shares already handed on.
+	static void runBranch(String name, boolean join) throws InterruptedException {
+		Token.outstanding.set(0);
+		Token.discarded.set(0);
+		PipelineBuilder builder = Pipeline.builder();
+
+		PipelineFunction<Void, Token> source = (t) -> {
+			return new Token();
+		};
+		PipelineFunction<Token, Token> pass = PipelineFunction.single((token) -> {
+			return token;
+		});
+		PipelineFunction<Token, Token> slowPass = PipelineFunction.single((token) -> {
+			try {
+				Thread.sleep(3);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return token;
+		});
+		PipelineFunction<Token, Void> sink = (tokens) -> {
+			for(Token token : tokens){
+				token.release();
+			}
+			return null;
+		};
+
+		builder.setDefaultUncaughtExceptionHandler(DiscardTest::failed);
+		builder.setDiscardAction(Token.class, DiscardTest::discard);
+		builder.setShareAction(Token.class, Token::retain);
+		builder.setFrequency(1000).setNodeCapacity(1).setDropPolicy(DropPolicy.BLOCK);
+		builder.addThreads(Void.class, Token.class, NodeBehavior.QUEUE, source);
+		if(join){
+			PipelineBuilder branch = builder.branch(NodeBehavior.QUEUE).addThreads(Token.class, Token.class, NodeBehavior.REORDERING, slowPass);
+			builder.addThreads(Token.class, Token.class, NodeBehavior.REORDERING, pass);
+			builder.join(branch);
+			builder.addThreads(Token.class, Void.class, sink);
+		} else {
+			builder.setDropPolicy(DropPolicy.DROP_OLDEST);
+			builder.branch(NodeBehavior.QUEUE).addThreads(Token.class, Void.class, (tokens) -> {
+				slowPass.execute(tokens);
+				return sink.execute(tokens);
+			});
+			builder.addThreads(Token.class, Void.class, sink);
+		}
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(100);
+		p.interrupt();
+		check(name, p);
+	}
+
+	//A producer interrupted while depositing into the second node of a fan-out, after the first has stored the token,
+	//must return normally with the interrupt status set, so that it does not discard the token the first node holds.
+	static void fanOutInterrupted() throws InterruptedException {
+		Token.outstanding.set(0);
+		Token.discarded.set(0);
+		BoundedQueueNode<Token> first = new BoundedQueueNode<Token>(4, DropPolicy.BLOCK);
+		SimpleNode<Token> second = new SimpleNode<Token>();
+		FanOutNode<Token> fanOut = new FanOutNode<Token>(List.of(first, second), Token::retain);
+		first.setDiscardAction(DiscardTest::discard);
+		second.setDiscardAction(DiscardTest::discard);
+		fanOut.setDiscardAction(DiscardTest::discard);
+		PipelineFunction<Void, Token> none = (t) -> null;
+		PipelineFunction<Token, Void> never = (t) -> null;
+		PipelineRunnable<Void, Token> producer = new PipelineRunnable<Void, Token>(null, none, fanOut, DiscardTest::failed, null, 0, 0);
+		new PipelineRunnable<Token, Void>(first, never, null, DiscardTest::failed, null, 1, 0);
+		new PipelineRunnable<Token, Void>(second, never, null, DiscardTest::failed, null, 2, 0);
+
+		Token filler = new Token();
+		fanOut.deposit(producer, filler);
+		Token blocked = new Token();
+		boolean[] threw = {false};
+		boolean[] interruptSet = {false};
+		Thread depositor = new Thread(() -> {
+			try {
+				fanOut.deposit(producer, blocked);
+			} catch(InterruptedException e){
+				threw[0] = true;
+			}
+			interruptSet[0] = Thread.currentThread().isInterrupted();
+		});
+		depositor.start();
+		//The second node still holds the first token, so the depositor waits there once the first node has stored the second.
+		while(depositor.getState() != Thread.State.WAITING){
+			Thread.sleep(1);
+		}
+		depositor.interrupt();
+		depositor.join();
+		first.discardRemaining();
+		second.discardRemaining();
+		int outstanding = Token.outstanding.get();
+		if(threw[0] || !interruptSet[0] || outstanding != 0){
+			mistakes++;
+		}
+		System.out.println("fan-out interrupted after the first node: threw " + threw[0] + ", interrupt set " + interruptSet[0]
+			+ ", " + Token.discarded.get() + " discarded, " + outstanding + " never released");
+	}
+
+	//Tokens pass from a publisher through a FlowSource and a FlowSink to two subscribers. The publisher sends one token more than requested each time,
+	//the sink drops the oldest token for a subscriber which falls behind, and one subscriber cancels with tokens still buffered for it.
+	//Every token dropped, left in a buffer, or shared with a subscriber which never receives it must be discarded.
+	static void runFlow() throws InterruptedException {
+		Token.outstanding.set(0);
+		Token.discarded.set(0);
+		FlowSource<Token> source = new FlowSource<Token>(4);
+		boolean[] cancelled = {false};
+		Flow.Publisher<Token> publisher = (subscriber) -> {
+			subscriber.onSubscribe(new Flow.Subscription(){
+				public void request(long n){
+					for(long i = 0; i <= n && !cancelled[0]; i++){
+						subscriber.onNext(new Token());
+					}
+				}
+
+				public void cancel(){
+					cancelled[0] = true;
+				}
+			});
+		};
+		FlowSink<Token> sink = new FlowSink<Token>(2, DropPolicy.DROP_OLDEST);
+		CountDownLatch completed = new CountDownLatch(1);
+		sink.subscribe(new Flow.Subscriber<Token>(){
+			public void onSubscribe(Flow.Subscription s){
+				s.request(Long.MAX_VALUE);
+			}
+
+			public void onNext(Token token){
+				token.release();
+			}
+
+			public void onError(Throwable e){
+				failed(Thread.currentThread(), e);
+			}
+
+			public void onComplete(){
+				completed.countDown();
+			}
+		});
+		sink.subscribe(new Flow.Subscriber<Token>(){
+			public void onSubscribe(Flow.Subscription s){
+				s.request(1);
+				new Thread(() -> {
+					try {
+						Thread.sleep(50);
+					} catch(InterruptedException e){
+						return;
+					}
+					s.cancel();
+				}).start();
+			}
+
+			public void onNext(Token token){
+				token.release();
+			}
+
+			public void onError(Throwable e){
+				failed(Thread.currentThread(), e);
+			}
+
+			public void onComplete(){
+			}
+		});
+
+		PipelineBuilder builder = Pipeline.builder();
+		builder.setDefaultUncaughtExceptionHandler(DiscardTest::failed);
+		builder.setDiscardAction(Token.class, DiscardTest::discard);
+		builder.setShareAction(Token.class, Token::retain);
+		builder.setFrequency(1000);
+		builder.addThreads(Void.class, Token.class, NodeBehavior.QUEUE, source);
+		builder.addThreads(Token.class, Void.class, sink);
+		Pipeline p = builder.build();
+		publisher.subscribe(source);
+		p.start();
+		Thread.sleep(100);
+		p.shutdown();
+		boolean finished = completed.await(5, TimeUnit.SECONDS);
+		if(!finished){
+			mistakes++;
+		}
+		check("flow source and sink", p);
+	}
+
+	static void check(String name, Pipeline p) throws InterruptedException {
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		int outstanding = Token.outstanding.get();
+		int failed = failures.getAndSet(0);
+		if(!finished || outstanding != 0 || failed != 0){
+			mistakes++;
+		}
+		System.out.println(name + ": finished " + finished + ", " + Token.discarded.get() + " discarded, " + outstanding + " never released, "
+			+ failed + " failures, dropped " + p.droppedFrames());
+		if(!finished){
+			p.interrupt();
+		}
+	}
+
+	static void discard(Token token){
+		Token.discarded.incrementAndGet();
+		token.release();
+	}
+
+	//Releasing a token too often, or using one already released, shows up as a failure.
+	static void failed(Thread th, Throwable ex){
+		failures.incrementAndGet();
+		ex.printStackTrace();
+	}
+}
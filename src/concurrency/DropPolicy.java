@@ -0,0 +1,22 @@
+package concurrency;
+
+/**Enum representing what a queue node does when a value arrives and there is no room for it.
+*/
+public enum DropPolicy{
+	/** Represents dropping the oldest value.
+	The oldest queued generation is discarded to make room for the new one, so consumers always see the most recent frames.
+	This favours latency over completeness.
+	*/
+	DROP_OLDEST,
+
+	/** Represents dropping the newest value.
+	The arriving value is discarded, so consumers see every queued frame but miss the frames that arrived while the queue was full.
+	*/
+	DROP_NEWEST,
+
+	/** Represents blocking.
+	Producers wait until there is room in the queue, so no frames are dropped.
+	This favours completeness over latency.
+	*/
+	BLOCK
+}
@@ -0,0 +1,76 @@
+package concurrency;
+
+/**
+Snapshot of the scaling decisions made for one elastic step, added with PipelineBuilder.addElasticWorkers. <br>
+Stages are numbered as in WorkerMetrics.
+*/
+public final class ElasticMetrics {
+	private final int stage;
+	private final int minWorkers;
+	private final int maxWorkers;
+	private final int activeWorkers;
+	private final long workersAdded;
+	private final long workersRetired;
+
+	ElasticMetrics(int stage, int minWorkers, int maxWorkers, int activeWorkers, long workersAdded, long workersRetired){
+		this.stage = stage;
+		this.minWorkers = minWorkers;
+		this.maxWorkers = maxWorkers;
+		this.activeWorkers = activeWorkers;
+		this.workersAdded = workersAdded;
+		this.workersRetired = workersRetired;
+	}
+
+	/**
+	Returns the index of the elastic step.
+	@return the index of the step.
+	*/
+	public int stage(){
+		return stage;
+	}
+
+	/**
+	Returns the smallest number of workers the step runs.
+	@return the minimum number of workers.
+	*/
+	public int minWorkers(){
+		return minWorkers;
+	}
+
+	/**
+	Returns the largest number of workers the step runs.
+	@return the maximum number of workers.
+	*/
+	public int maxWorkers(){
+		return maxWorkers;
+	}
+
+	/**
+	Returns the number of workers currently taking items. A worker retired while processing an item finishes it first.
+	@return the number of active workers.
+	*/
+	public int activeWorkers(){
+		return activeWorkers;
+	}
+
+	/**
+	Returns the number of times a worker has been added because the step's input was backlogged.
+	@return the number of workers added.
+	*/
+	public long workersAdded(){
+		return workersAdded;
+	}
+
+	/**
+	Returns the number of times a worker has been retired because the step's workers sat idle.
+	@return the number of workers retired.
+	*/
+	public long workersRetired(){
+		return workersRetired;
+	}
+
+	@Override
+	public String toString(){
+		return "stage " + stage + ": " + activeWorkers + " of " + minWorkers + " to " + maxWorkers + " workers active, " + workersAdded + " added, " + workersRetired + " retired";
+	}
+}
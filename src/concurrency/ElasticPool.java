@@ -0,0 +1,136 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+//The workers of an elastic step, of which only the first few are active at any time. The rest wait, parked, until the scaler activates them.
+//Every worker is created when the pipeline is built, so that the nodes know every producer and consumer up front. The input node is a shared queue,
+//which only active workers take items from. The output node is a reordering node, which parked workers are excluded from, so they do not hold back its frames.
+//Workers are activated and retired in order of their worker number, so worker i is active exactly when i < active.
+class ElasticPool {
+	//How many consecutive samples make up a window. The scaler decides at most once per window.
+	static final int WINDOW = 10;
+	//A worker is retired if, on average over a window, at least this many active workers were not executing.
+	//Kept above 1, so that the remaining workers still have time to spare, and a worker just retired is not needed straight back.
+	private static final double RETIRE_IDLE = 1.5;
+
+	private final int stage;
+	private final int min;
+	private final int max;
+	private final Node<?> inputNode;
+	//Null if the step is the last one.
+	private final ReorderingNode<?> outputNode;
+	private final List<PipelineRunnable<?, ?>> workers = new ArrayList<PipelineRunnable<?, ?>>();
+	private volatile int active;
+	//Set once a worker has found its input drained, so that parked workers wake up and find that out too.
+	private volatile boolean ended = false;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	//Samples taken in the current window, how many of them found the step backlogged, and how many active workers in total were not executing.
+	//Only touched by the scaler thread.
+	private int samples = 0;
+	private int backlogged = 0;
+	private int idle = 0;
+	//Set after a change, so that the window after it is not used to decide, since its samples straddle the change.
+	private boolean settling = false;
+	private volatile long added = 0;
+	private volatile long retired = 0;
+
+	ElasticPool(int stage, int min, int max, Node<?> inputNode, Node<?> outputNode){
+		if(outputNode != null && !(outputNode instanceof ReorderingNode)){
+			throw new PipelineBuilderException("The output of elastic step " + stage + " must go to a reordering node. It cannot be followed by a distributed step or a branch.");
+		}
+		this.stage = stage;
+		this.min = min;
+		this.max = max;
+		this.active = min;
+		this.inputNode = inputNode;
+		this.outputNode = (ReorderingNode<?>)outputNode;
+	}
+
+	void add(PipelineRunnable<?, ?> pr){
+		workers.add(pr);
+	}
+
+	//Called by a worker before each withdrawal. Returns straight away if the worker is active.
+	//Otherwise the worker parks until it is activated again, or until the input has been drained, after which its withdrawal finds that out.
+	@SuppressWarnings("unchecked")
+	<T> void awaitActive(PipelineRunnable<?, T> pr, int worker) throws InterruptedException {
+		if(worker < active || ended){
+			return;
+		}
+		if(outputNode != null){
+			((ReorderingNode<T>)outputNode).park(pr);
+		}
+		lock.lockInterruptibly();
+		try {
+			while(worker >= active && !ended){
+				changed.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(outputNode != null){
+			((ReorderingNode<T>)outputNode).unpark(pr);
+		}
+	}
+
+	//Called by a worker whose input node has run dry for good.
+	void ended(){
+		lock.lock();
+		try {
+			ended = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Called by the scaler at regular intervals. Adds a worker if the input node held items waiting at every sample of a window while every active worker was executing,
+	//and retires one if the workers sat idle enough of the window and the input was never backlogged.
+	void sample(){
+		int a = active;
+		int busy = 0;
+		for(int i = 0; i < a; i++){
+			if(workers.get(i).recorder().executeStart() != 0){
+				busy++;
+			}
+		}
+		if(busy == a && inputNode.occupancy() > 0){
+			backlogged++;
+		}
+		idle += a - busy;
+		if(++samples < WINDOW){
+			return;
+		}
+		boolean grow = backlogged == WINDOW && a < max;
+		boolean shrink = backlogged == 0 && idle >= RETIRE_IDLE * WINDOW && a > min;
+		samples = 0;
+		backlogged = 0;
+		idle = 0;
+		if(settling){
+			settling = false;
+			return;
+		}
+		if(grow || shrink){
+			lock.lock();
+			try {
+				active = grow ? a + 1 : a - 1;
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if(grow){
+				added++;
+			} else {
+				retired++;
+			}
+			settling = true;
+		}
+	}
+
+	ElasticMetrics snapshot(){
+		return new ElasticMetrics(stage, min, max, active, added, retired);
+	}
+}
@@ -0,0 +1,39 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+//Samples every elastic step of a pipeline at regular intervals, so that each can add or retire workers. See ElasticPool for how it decides.
+class ElasticScaler implements Runnable {
+	//How often to sample, in nanoseconds. With ElasticPool.WINDOW samples per window, a step changes its worker count at most twice a second.
+	static final long INTERVAL = 50_000_000L;
+
+	private final SimplePipeline pipeline;
+	private final List<ElasticPool> pools;
+
+	ElasticScaler(SimplePipeline pipeline, List<ElasticPool> pools){
+		this.pipeline = pipeline;
+		this.pools = pools;
+	}
+
+	//Returns the distinct elastic pools the runnables belong to, in pipeline order.
+	static List<ElasticPool> pools(List<PipelineRunnable<?, ?>> runnables){
+		List<ElasticPool> answer = new ArrayList<ElasticPool>();
+		for(PipelineRunnable<?, ?> pr : runnables){
+			ElasticPool pool = pr.elasticPool();
+			if(pool != null && !answer.contains(pool)){
+				answer.add(pool);
+			}
+		}
+		return answer;
+	}
+
+	public void run(){
+		while(!pipeline.isTerminated()){
+			LockSupport.parkNanos(INTERVAL);
+			for(ElasticPool pool : pools){
+				pool.sample();
+			}
+		}
+	}
+}
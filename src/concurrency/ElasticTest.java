@@ -0,0 +1,61 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class ElasticTest{
+	static volatile long cost = 12;
+	static int last = -1;
+	static int outOfOrder = 0;
+	static int consumed = 0;
+
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return counter[0]++;
+		};
+		PipelineFunction<Integer, Integer> secondLambda = PipelineFunction.single((t) -> {
+			try {
+				Thread.sleep(cost);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return t;
+		});
+		PipelineFunction<Integer, Void> thirdLambda = PipelineFunction.single((t) -> {
+			if(t <= last){
+				outOfOrder++;
+			}
+			last = t;
+			consumed++;
+			return null;
+		});
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		//At 200 frames per second, 12ms items need at least three workers, and 1ms items only one.
+		builder.setFrequency(200);
+		builder.addThreads(Void.class, Integer.class, firstLambda);
+		builder.addElasticWorkers(Integer.class, Integer.class, 1, 4, secondLambda);
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(4000);
+		ElasticMetrics busy = p.metrics().elastic().get(0);
+		cost = 1;
+		Thread.sleep(6000);
+		ElasticMetrics quiet = p.metrics().elastic().get(0);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		System.out.println("finished " + finished + ", " + counter[0] + " produced, " + consumed + " consumed, " + outOfOrder + " out of order");
+		System.out.println("after busy phase: " + busy);
+		System.out.println("after quiet phase: " + quiet);
+		System.out.println(p.metrics());
+		if(!finished){
+			p.interrupt();
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package concurrency;
+
+//Thrown by a function in the first step of a pipeline when it has nothing more to produce. The runnable running it then stops, as if the pipeline had been shut down.
+//If the stream ended because of an error, the error is the cause, and is passed to the runnable's uncaughtExceptionHandler.
+class EndOfStream extends RuntimeException{
+	EndOfStream(Throwable cause){
+		super(null, cause, false, false);
+	}
+}
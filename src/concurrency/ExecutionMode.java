@@ -0,0 +1,103 @@
+package concurrency;
+
+import java.lang.reflect.*;
+import java.util.concurrent.Semaphore;
+
+/**
+Class representing the ways a pipeline can run its threads. <br>
+PLATFORM runs each function added to the pipeline on its own operating system thread. This is the default. <br>
+VIRTUAL runs each function on a virtual thread, so that threads waiting on a node do not hold on to an operating system thread. <br>
+Virtual threads require Java 21 or later. <br>
+pooled(n) runs each function on a virtual thread where available, and on a platform thread otherwise,
+but lets at most n functions execute at the same time. <br>
+Threads only count towards this limit while executing a function, not while waiting on a node, so a pooled pipeline cannot deadlock on the limit.
+*/
+public final class ExecutionMode {
+	/**
+	Runs each function in the pipeline on its own platform thread.
+	*/
+	public static final ExecutionMode PLATFORM = new ExecutionMode(false, 0);
+
+	/**
+	Runs each function in the pipeline on its own virtual thread.
+	*/
+	public static final ExecutionMode VIRTUAL = new ExecutionMode(true, 0);
+
+	//Thread.Builder.unstarted, looked up reflectively so that the package still compiles and runs on Java versions without virtual threads.
+	private static final Object VIRTUAL_BUILDER;
+	private static final Method UNSTARTED;
+
+	static {
+		Object builder;
+		Method unstarted;
+		try{
+			builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		} catch(ReflectiveOperationException | RuntimeException e){
+			builder = null;
+			unstarted = null;
+		}
+		VIRTUAL_BUILDER = builder;
+		UNSTARTED = unstarted;
+	}
+
+	private final boolean virtual;
+	private final int permits;
+
+	private ExecutionMode(boolean virtual, int permits){
+		this.virtual = virtual;
+		this.permits = permits;
+	}
+
+	/**
+	Returns an ExecutionMode which lets at most n functions in the pipeline execute at the same time.
+	@param n the maximum number of functions executing at once.
+	@throws IllegalArgumentException if n is not positive.
+	@return the ExecutionMode.
+	*/
+	public static ExecutionMode pooled(int n){
+		if(n <= 0){
+			throw new IllegalArgumentException("Pool size must be positive, got " + n + ".");
+		}
+		return new ExecutionMode(virtualThreadsAvailable(), n);
+	}
+
+	/**
+	Whether virtual threads are available in the running JVM.
+	@return whether virtual threads are available.
+	*/
+	public static boolean virtualThreadsAvailable(){
+		return VIRTUAL_BUILDER != null;
+	}
+
+	//Creates an unstarted thread which will run r.
+	Thread newThread(Runnable r){
+		if(!virtual){
+			return new Thread(r);
+		}
+		try{
+			return (Thread)UNSTARTED.invoke(VIRTUAL_BUILDER, r);
+		} catch(IllegalAccessException e){
+			throw new IllegalStateException(e);
+		} catch(InvocationTargetException e){
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	//Creates the semaphore shared by all threads of one pipeline, or returns null if this mode does not limit execution.
+	Semaphore newPermits(){
+		return permits > 0 ? new Semaphore(permits) : null;
+	}
+
+	boolean isVirtual(){
+		return virtual;
+	}
+
+	@Override
+	public String toString(){
+		if(permits > 0){
+			return "POOLED(" + permits + ")";
+		}
+		return virtual ? "VIRTUAL" : "PLATFORM";
+	}
+}
@@ -0,0 +1,74 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutionModeTest{
+	static final int POOL_SIZE = 2;
+	static final AtomicInteger executing = new AtomicInteger();
+	static final AtomicInteger peak = new AtomicInteger();
+	static int mistakes = 0;
+
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		PipelineFunction<Void, Long> firstLambda = (t) -> {
+			return counted(1, FrameContext.sequence());
+		};
+		PipelineFunction<Long, Long> secondLambda = (t) -> {
+			//Four workers, slow enough that more than the pool size would be executing at once without a limit.
+			return counted(5, t.iterator().next());
+		};
+		PipelineFunction<Long, Void> thirdLambda = (t) -> {
+			counted(1, null);
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setExecutionMode(ExecutionMode.pooled(POOL_SIZE));
+		builder.addThreads(Void.class, Long.class, firstLambda);
+		builder.addWorkers(Long.class, Long.class, NodeBehavior.REORDERING, 4, secondLambda);
+		builder.addThreads(Long.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		//At most the pool size may execute at once, and with four slow workers the limit should be reached.
+		if(!finished || peak.get() != POOL_SIZE){
+			mistakes++;
+		}
+		System.out.println(ExecutionMode.pooled(POOL_SIZE) + ": finished " + finished + ", at most " + peak.get() + " executing at once");
+
+		//Virtual threads need Java 21. On earlier versions, asking for them must fail while building, rather than when the pipeline starts.
+		boolean failed = false;
+		try {
+			Pipeline.builder().setExecutionMode(ExecutionMode.VIRTUAL);
+		} catch(PipelineBuilderException e){
+			failed = true;
+			System.out.println("VIRTUAL: " + e.getMessage());
+		}
+		if(failed == ExecutionMode.virtualThreadsAvailable()){
+			mistakes++;
+		}
+		System.out.println("virtual threads available " + ExecutionMode.virtualThreadsAvailable() + ", setting VIRTUAL failed " + failed);
+		System.out.println(mistakes + " mistakes");
+	}
+
+	//Counts the calling function as executing for the given number of milliseconds, and returns value.
+	static <T> T counted(long ms, T value){
+		int now = executing.incrementAndGet();
+		peak.accumulateAndGet(now, Math::max);
+		try {
+			Thread.sleep(ms);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		} finally {
+			executing.decrementAndGet();
+		}
+		return value;
+	}
+}
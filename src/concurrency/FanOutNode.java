@@ -0,0 +1,95 @@
+package concurrency;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+//Node which passes everything deposited into it on to several other nodes, one for each step reading the output of the step before it.
+//Each of those nodes has its own behavior, so a step behind a dropping node cannot hold up the others.
+//A deposit does wait on every node in turn though, which is why branches which are not joined must read through nodes which never wait.
+//Every node after the first gets its own share of each value, taken with the share action before any node can pass the value on.
+//Nothing withdraws from a fan-out node directly, and it holds nothing itself.
+class FanOutNode<T> implements Node<T>{
+	private final List<Node<T>> targets;
+	private final Consumer<? super T> share;
+	private Consumer<? super T> discard = Node.forget();
+
+	FanOutNode(List<Node<T>> targets, Consumer<? super T> share){
+		if(targets.isEmpty()){
+			throw new IllegalArgumentException("Must provide at least one node.");
+		}
+		this.targets = List.copyOf(targets);
+		this.share = share;
+	}
+
+	//Only throws InterruptedException if the first node was interrupted, in which case no node stored t.
+	//If a later node is interrupted, the nodes after it are skipped, their shares are discarded, and the interrupt status is set.
+	public void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException {
+		for(int i = 1; i < targets.size(); i++){
+			share.accept(t);
+		}
+		try {
+			targets.get(0).deposit(pr, t);
+		} catch(InterruptedException e){
+			for(int i = 1; i < targets.size(); i++){
+				discard.accept(t);
+			}
+			throw e;
+		}
+		boolean interrupted = false;
+		for(int i = 1; i < targets.size(); i++){
+			if(!interrupted){
+				try {
+					targets.get(i).deposit(pr, t);
+					continue;
+				} catch(InterruptedException e){
+					interrupted = true;
+				}
+			}
+			discard.accept(t);
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public Collection<T> withdraw(PipelineRunnable<T, ?> pr){
+		throw new UnsupportedOperationException("Cannot withdraw from a fan-out node.");
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline){
+		throw new UnsupportedOperationException("Cannot withdraw from a fan-out node.");
+	}
+
+	public void close(PipelineRunnable<?, T> pr){
+		for(Node<T> n : targets){
+			n.close(pr);
+		}
+	}
+
+	public void pingAsProducer(PipelineRunnable<?, T> pr){
+		for(Node<T> n : targets){
+			n.pingAsProducer(pr);
+		}
+	}
+
+	public void pingAsConsumer(PipelineRunnable<T, ?> pr){
+		throw new UnsupportedOperationException("Cannot withdraw from a fan-out node.");
+	}
+
+	//Fan-out nodes are not reported in metrics. The nodes they feed are.
+	public long dropped(){
+		return 0;
+	}
+
+	public int occupancy(){
+		return 0;
+	}
+
+	//Only used for the shares of nodes skipped after an interrupt. The nodes it feeds are given their own discard actions.
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//The nodes it feeds discard what they hold themselves.
+	public void discardRemaining(){}
+}
@@ -0,0 +1,333 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
+
+/**
+Class which publishes a pipeline's output to Flow.Subscribers, for use as the function of the pipeline's last step. <br>
+Add it to a PipelineBuilder, for example addThreads(Mat.class, Void.class, sink), and subscribe any number of subscribers to it, before or while the pipeline runs. <br>
+Each value the step receives is published by itself, in the order received, so the values of a generation from several producers are published one after another. <br>
+Every subscriber has its own buffer of bufferSize values, and is only sent as many as it has requested. The values are sent on the executor,
+never on the pipeline's threads, so a slow subscriber holds up neither the pipeline nor the other subscribers.
+When a subscriber's buffer is full, the drop policy decides what happens: DROP_OLDEST and DROP_NEWEST discard a value for that subscriber alone,
+while BLOCK makes the pipeline wait until the subscriber catches up. <br>
+Once every thread running the sink has stopped, for example after the pipeline has been shut down and drained, each subscriber is sent its buffered values and then onComplete.
+A subscriber which subscribes after that is completed straight away. <br>
+A value sent to a subscriber is the subscriber's to keep. A value no subscriber receives, because there was none, it was dropped, or its subscriber cancelled
+or failed before it was sent, is passed to the pipeline's discard action for the sink's input type. With several subscribers, each holds a value separately,
+so the share action for that type runs once for each subscriber after the first. See PipelineBuilder.setDiscardAction and PipelineBuilder.setShareAction.
+*/
+public final class FlowSink<T> implements PipelineFunction<T, Void>, Flow.Publisher<T>{
+	private final int capacity;
+	private final DropPolicy policy;
+	private final Executor executor;
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	//Number of runnables running this sink which have not exited yet, and whether the last of them has. Guarded by subscriptions.
+	private int attached = 0;
+	private boolean closed = false;
+	private final AtomicLong dropped = new AtomicLong();
+	//Set when the pipeline is built.
+	private volatile Consumer<? super T> discard = Node.forget();
+	private volatile Consumer<? super T> share = Node.forget();
+
+	/**
+	Creates a sink which sends values to its subscribers on the common ForkJoinPool,
+	or on a new thread for each batch of values if the pool has fewer than two threads, since a slow subscriber could then hold up the others.
+	@param bufferSize the largest number of values to buffer for each subscriber.
+	@param policy what to do when a subscriber's buffer is full.
+	@throws IllegalArgumentException if bufferSize is not positive.
+	*/
+	public FlowSink(int bufferSize, DropPolicy policy){
+		this(bufferSize, policy, ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : (r) -> new Thread(r).start());
+	}
+
+	/**
+	Creates a sink which sends values to its subscribers on the given executor.
+	@param bufferSize the largest number of values to buffer for each subscriber.
+	@param policy what to do when a subscriber's buffer is full.
+	@param executor the executor which sends values to subscribers.
+	@throws IllegalArgumentException if bufferSize is not positive.
+	*/
+	public FlowSink(int bufferSize, DropPolicy policy, Executor executor){
+		if(bufferSize <= 0){
+			throw new IllegalArgumentException("Buffer size must be positive, got " + bufferSize + ".");
+		}
+		this.capacity = bufferSize;
+		this.policy = Objects.requireNonNull(policy);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	Subscribes a subscriber. It is sent onSubscribe on the executor, and then values as it requests them. <br>
+	A subscriber which is already subscribed is sent onError with an IllegalStateException instead.
+	*/
+	public void subscribe(Flow.Subscriber<? super T> subscriber){
+		Objects.requireNonNull(subscriber);
+		Subscription s = new Subscription(subscriber);
+		synchronized(subscriptions){
+			for(Subscription other : subscriptions){
+				if(other.subscriber == subscriber){
+					s.fail(new IllegalStateException("Already subscribed."));
+				}
+			}
+			if(s.error == null && !closed){
+				subscriptions.add(s);
+			} else {
+				s.closed = true;
+			}
+		}
+		s.signal();
+	}
+
+	/**
+	Publishes every value in t to every subscriber. <br>
+	Called by the pipeline. It should not be called directly.
+	*/
+	@SuppressWarnings("unchecked")
+	public Void execute(Collection<T> t){
+		//Every subscriber gets its share before any is offered the value, since a subscriber sent it straight away may give it back at once.
+		Object[] current = subscriptions.toArray();
+		for(T value : t){
+			if(current.length == 0){
+				discard.accept(value);
+				continue;
+			}
+			for(int i = 1; i < current.length; i++){
+				share.accept(value);
+			}
+			for(Object s : current){
+				((Subscription)s).offer(value);
+			}
+		}
+		return null;
+	}
+
+	/**
+	Returns the number of values dropped because a subscriber's buffer was full, summed over every subscriber.
+	@return the number of dropped values.
+	*/
+	public long dropped(){
+		return dropped.get();
+	}
+
+	/**
+	Returns the number of subscribers currently subscribed.
+	@return the number of subscribers.
+	*/
+	public int subscribers(){
+		return subscriptions.size();
+	}
+
+	//Called when the pipeline is built, with the discard and share actions for the sink's input type.
+	void setActions(Consumer<? super T> discard, Consumer<? super T> share){
+		this.discard = discard;
+		this.share = share;
+	}
+
+	//Called by each runnable running this sink when it is created.
+	void attach(){
+		synchronized(subscriptions){
+			attached++;
+		}
+	}
+
+	//Called by each runnable running this sink when it exits for good. The last to exit completes every subscriber.
+	void detach(){
+		synchronized(subscriptions){
+			if(--attached > 0 || closed){
+				return;
+			}
+			closed = true;
+		}
+		for(Subscription s : subscriptions){
+			s.close();
+		}
+	}
+
+	//One subscriber's buffer and demand. Every signal to the subscriber is sent from drain, which at most one task runs at a time.
+	private class Subscription implements Flow.Subscription{
+		private final Flow.Subscriber<? super T> subscriber;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notFull = lock.newCondition();
+		private final Deque<T> buffer = new ArrayDeque<T>();
+		private long demand = 0;
+		private boolean subscribed = false;
+		private boolean cancelled = false;
+		//Set once no more values will be offered. onComplete, or onError if error is set, follows the buffered values.
+		private boolean closed = false;
+		private Throwable error;
+		private boolean terminated = false;
+		//Number of times drain has been asked for since it last ran dry. Whoever raises it from 0 schedules drain.
+		private final AtomicInteger pending = new AtomicInteger();
+
+		private Subscription(Flow.Subscriber<? super T> subscriber){
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n){
+			lock.lock();
+			try {
+				if(n <= 0){
+					this.fail(new IllegalArgumentException("Must request a positive number of values, got " + n + "."));
+				} else {
+					//Saturates at Long.MAX_VALUE, which means unbounded demand.
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+			} finally {
+				lock.unlock();
+			}
+			this.signal();
+		}
+
+		public void cancel(){
+			lock.lock();
+			try {
+				cancelled = true;
+				this.discardBuffer();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			subscriptions.remove(this);
+		}
+
+		//Takes over the caller's share of value, which is discarded if it is not buffered.
+		private void offer(T value){
+			lock.lock();
+			try {
+				if(cancelled || closed){
+					discard.accept(value);
+					return;
+				}
+				if(buffer.size() == capacity){
+					if(policy == DropPolicy.DROP_NEWEST){
+						dropped.incrementAndGet();
+						discard.accept(value);
+						return;
+					} else if(policy == DropPolicy.DROP_OLDEST){
+						discard.accept(buffer.pollFirst());
+						dropped.incrementAndGet();
+					} else {
+						while(buffer.size() == capacity && !cancelled){
+							try {
+								notFull.await();
+							} catch(InterruptedException e){
+								//The pipeline was interrupted. The value is given up, and the interrupt kept for the runnable to see.
+								Thread.currentThread().interrupt();
+								dropped.incrementAndGet();
+								discard.accept(value);
+								return;
+							}
+						}
+						if(cancelled){
+							discard.accept(value);
+							return;
+						}
+					}
+				}
+				buffer.addLast(value);
+			} finally {
+				lock.unlock();
+			}
+			this.signal();
+		}
+
+		private void close(){
+			lock.lock();
+			try {
+				closed = true;
+			} finally {
+				lock.unlock();
+			}
+			this.signal();
+		}
+
+		//Sets the error to send instead of onComplete. Must be called while holding the lock, or before the subscription is published.
+		private void fail(Throwable e){
+			if(error == null){
+				error = e;
+			}
+			closed = true;
+			this.discardBuffer();
+			notFull.signalAll();
+		}
+
+		//Discards every buffered value. Must be called while holding the lock.
+		private void discardBuffer(){
+			for(T value : buffer){
+				discard.accept(value);
+			}
+			buffer.clear();
+		}
+
+		private void signal(){
+			if(pending.getAndIncrement() == 0){
+				try {
+					executor.execute(this::drain);
+				} catch(RejectedExecutionException e){
+					pending.set(0);
+					this.cancel();
+				}
+			}
+		}
+
+		//Sends onSubscribe if it has not been sent, then as many buffered values as have been requested, then onComplete or onError if the subscription is closed and empty.
+		private void drain(){
+			int missed = 1;
+			while(true){
+				if(!subscribed){
+					subscribed = true;
+					this.deliver(() -> subscriber.onSubscribe(this));
+				}
+				while(true){
+					T next = null;
+					boolean finish = false;
+					lock.lock();
+					try {
+						if(cancelled || terminated){
+							break;
+						}
+						if(demand > 0 && !buffer.isEmpty()){
+							next = buffer.pollFirst();
+							if(demand != Long.MAX_VALUE){
+								demand--;
+							}
+							notFull.signal();
+						} else if(closed && buffer.isEmpty()){
+							terminated = true;
+							finish = true;
+						}
+					} finally {
+						lock.unlock();
+					}
+					if(next != null){
+						T value = next;
+						this.deliver(() -> subscriber.onNext(value));
+					} else {
+						if(finish){
+							subscriptions.remove(this);
+							this.deliver(error == null ? subscriber::onComplete : () -> subscriber.onError(error));
+						}
+						break;
+					}
+				}
+				missed = pending.addAndGet(-missed);
+				if(missed == 0){
+					return;
+				}
+			}
+		}
+
+		//A subscriber which throws has broken the Flow rules, so it is cancelled.
+		private void deliver(Runnable r){
+			try {
+				r.run();
+			} catch(RuntimeException e){
+				this.cancel();
+			}
+		}
+	}
+}
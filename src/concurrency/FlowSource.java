@@ -0,0 +1,220 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
+
+/**
+Class which feeds a pipeline from a Flow.Publisher, for use as the function of the pipeline's first step. <br>
+Subscribe it to a publisher and add it to a PipelineBuilder, for example addThreads(Void.class, Mat.class, source). <br>
+It buffers at most bufferSize items, and only ever requests as many as it has room for, so a publisher which honors demand
+is held back by the pipeline rather than flooding it. Each call to execute takes the oldest buffered item, waiting for one if there is none. <br>
+When the publisher completes, the pipeline drains the items already buffered and stops, as if it had been shut down.
+If the publisher signals an error, the error is passed to the step's uncaughtExceptionHandler once the buffer has drained. <br>
+When the pipeline is shut down, or every thread running the source has otherwise stopped, the subscription is cancelled.
+Items still buffered are then passed to the pipeline's discard action for the source's output type, as are items which arrive too late or were never requested. <br>
+A source may be subscribed only once.
+*/
+public final class FlowSource<T> implements Flow.Subscriber<T>, PipelineFunction<Void, T>{
+	private final int capacity;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final Deque<T> buffer;
+	private Flow.Subscription subscription;
+	//Items taken since more were last requested. They are requested again in batches, to keep request calls infrequent.
+	private int taken = 0;
+	//Set once the publisher has completed or failed.
+	private boolean complete = false;
+	private Throwable error;
+	//Set once the pipeline has stopped the source. Also guarded by the lock.
+	private boolean stopped = false;
+	//Number of runnables running this source which have not exited yet.
+	private int attached = 0;
+	private long dropped = 0;
+	//Set when the pipeline is built. See PipelineBuilder.setDiscardAction.
+	private volatile Consumer<? super T> discard = Node.forget();
+
+	/**
+	Creates a source buffering at most bufferSize items.
+	@param bufferSize the largest number of items to buffer.
+	@throws IllegalArgumentException if bufferSize is not positive.
+	*/
+	public FlowSource(int bufferSize){
+		if(bufferSize <= 0){
+			throw new IllegalArgumentException("Buffer size must be positive, got " + bufferSize + ".");
+		}
+		this.capacity = bufferSize;
+		this.buffer = new ArrayDeque<T>(bufferSize);
+	}
+
+	/**
+	Called by the publisher when the source is subscribed. Requests enough items to fill the buffer. <br>
+	A second subscription is cancelled straight away.
+	*/
+	public void onSubscribe(Flow.Subscription s){
+		Objects.requireNonNull(s);
+		boolean cancel;
+		lock.lock();
+		try {
+			cancel = subscription != null || stopped;
+			if(subscription == null){
+				subscription = s;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(cancel){
+			s.cancel();
+		} else {
+			s.request(capacity);
+		}
+	}
+
+	/**
+	Called by the publisher with each item. An item arriving while the buffer is full was never requested, and is dropped.
+	*/
+	public void onNext(T item){
+		Objects.requireNonNull(item);
+		lock.lock();
+		try {
+			if(!stopped && buffer.size() < capacity){
+				buffer.addLast(item);
+				changed.signal();
+				return;
+			}
+			if(!stopped){
+				dropped++;
+			}
+		} finally {
+			lock.unlock();
+		}
+		discard.accept(item);
+	}
+
+	/**
+	Called by the publisher if it fails. The pipeline stops once the items already buffered have been processed.
+	*/
+	public void onError(Throwable throwable){
+		lock.lock();
+		try {
+			error = Objects.requireNonNull(throwable);
+			complete = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	Called by the publisher once it has no more items. The pipeline stops once the items already buffered have been processed.
+	*/
+	public void onComplete(){
+		lock.lock();
+		try {
+			complete = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	Returns the oldest buffered item, waiting for the publisher if there is none. <br>
+	Called by the pipeline. It should not be called directly.
+	*/
+	public T execute(Collection<Void> t){
+		T answer;
+		int request = 0;
+		lock.lock();
+		try {
+			while(buffer.isEmpty() && !complete && !stopped){
+				try {
+					changed.await();
+				} catch(InterruptedException e){
+					//The pipeline was interrupted. The interrupt is kept, so that the runnable sees it and exits.
+					Thread.currentThread().interrupt();
+					throw new EndOfStream(null);
+				}
+			}
+			if(stopped || buffer.isEmpty()){
+				//Only the first thread to find the stream over reports the publisher's error.
+				Throwable cause = error;
+				error = null;
+				throw new EndOfStream(cause);
+			}
+			answer = buffer.pollFirst();
+			taken++;
+			if(taken >= Math.max(1, capacity / 2) && !complete){
+				request = taken;
+				taken = 0;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(request > 0){
+			subscription.request(request);
+		}
+		return answer;
+	}
+
+	/**
+	Returns the number of items the publisher sent beyond what was requested, which were dropped.
+	@return the number of dropped items.
+	*/
+	public long dropped(){
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Called by each runnable running this source when it is created.
+	void attach(){
+		lock.lock();
+		try {
+			attached++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Called when the pipeline is built, with the discard action for the source's output type.
+	void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//Called by each runnable running this source when it exits for good. The last to exit cancels the subscription, and discards the items left in the buffer.
+	void detach(){
+		Flow.Subscription cancel = null;
+		List<T> left = List.of();
+		lock.lock();
+		try {
+			if(--attached == 0){
+				stopped = true;
+				left = new ArrayList<T>(buffer);
+				buffer.clear();
+				cancel = subscription;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(cancel != null){
+			cancel.cancel();
+		}
+		Node.discardAll(discard, left);
+	}
+
+	//Called when the pipeline is shut down, so that threads waiting for an item stop instead.
+	void stop(){
+		lock.lock();
+		try {
+			stopped = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FlowTest{
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		SubmissionPublisher<Integer> publisher = new SubmissionPublisher<Integer>();
+		FlowSource<Integer> source = new FlowSource<Integer>(16);
+		publisher.subscribe(source);
+		PipelineFunction<Integer, Integer> process = PipelineFunction.single((t) -> {
+			return t * 2;
+		});
+		FlowSink<Integer> sink = new FlowSink<Integer>(8, DropPolicy.DROP_OLDEST);
+		CountingSubscriber fast = new CountingSubscriber(0);
+		CountingSubscriber slow = new CountingSubscriber(5);
+		sink.subscribe(fast);
+		sink.subscribe(slow);
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.addThreads(Void.class, Integer.class, NodeBehavior.BLOCKING, source);
+		builder.addThreads(Integer.class, Integer.class, NodeBehavior.BLOCKING, process);
+		builder.addThreads(Integer.class, Void.class, sink);
+		Pipeline p = builder.build();
+		p.start();
+		//submit waits whenever the source's demand runs out, so the publisher is held back by the pipeline.
+		for(int i = 0; i < 500; i++){
+			publisher.submit(i);
+		}
+		publisher.close();
+		//Completing the publisher should stop the pipeline, which then completes the subscribers.
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		boolean completed = fast.done.await(5, TimeUnit.SECONDS) && slow.done.await(5, TimeUnit.SECONDS);
+		System.out.println("finished " + finished + ", completed " + completed + ", fast received " + fast.received + " (" + fast.outOfOrder + " out of order), slow received "
+			+ slow.received + " (" + slow.outOfOrder + " out of order), " + sink.dropped() + " dropped by sink, " + source.dropped() + " dropped by source, " + p.droppedFrames() + " dropped by nodes");
+		System.out.println(p.metrics());
+		if(!finished){
+			p.interrupt();
+		}
+	}
+
+	//Requests one value at a time, taking delay milliseconds over each.
+	static class CountingSubscriber implements Flow.Subscriber<Integer>{
+		private final int delay;
+		private Flow.Subscription subscription;
+		private int last = -1;
+		volatile int received = 0;
+		volatile int outOfOrder = 0;
+		final CountDownLatch done = new CountDownLatch(1);
+
+		CountingSubscriber(int delay){
+			this.delay = delay;
+		}
+
+		public void onSubscribe(Flow.Subscription s){
+			subscription = s;
+			s.request(1);
+		}
+
+		public void onNext(Integer item){
+			if(item <= last){
+				outOfOrder++;
+			}
+			last = item;
+			received++;
+			if(delay > 0){
+				try {
+					Thread.sleep(delay);
+				} catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+			subscription.request(1);
+		}
+
+		public void onError(Throwable throwable){
+			throwable.printStackTrace();
+			done.countDown();
+		}
+
+		public void onComplete(){
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class FrameAgeTest{
+	static long oldest = 0;
+	static int total = 0;
+	public static void main(String[] args) throws InterruptedException {
+		run(0);
+		run(30);
+	}
+
+	static void run(long maxAge) throws InterruptedException {
+		oldest = 0;
+		total = 0;
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return counter[0]++;
+		};
+		PipelineFunction<Integer, Integer> secondLambda = (t) -> {
+			try {
+				Thread.sleep(10);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return t.iterator().next();
+		};
+		PipelineFunction<Integer, Void> thirdLambda = (t) -> {
+			oldest = Math.max(oldest, FrameContext.age());
+			total++;
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		//The source runs at 200 frames per second, twice as fast as the second step can keep up with, and the queue lets frames pile up.
+		builder.setFrequency(200).setNodeCapacity(64).setDropPolicy(DropPolicy.BLOCK);
+		builder.addThreads(Void.class, Integer.class, NodeBehavior.QUEUE, firstLambda);
+		builder.setMaxFrameAge(maxAge);
+		builder.addThreads(Integer.class, Integer.class, secondLambda);
+		builder.setMaxFrameAge(0);
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(1000);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		//With a maximum age, no frame should reach the last step much more than maxAge plus the second step's processing time old.
+		System.out.println("max age " + maxAge + "ms: finished " + finished + ", " + counter[0] + " produced, " + total + " consumed, " + p.metrics().stage(1).get(0).expiredFrames() + " expired, oldest " + oldest / 1_000_000 + "ms");
+		if(!finished){
+			p.interrupt();
+		}
+	}
+}
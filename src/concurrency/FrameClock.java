@@ -0,0 +1,48 @@
+package concurrency;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Remembers when the first step of a pipeline started each of its recent frames, by frame sequence number.
+//Times are looked up by the sequence numbers the nodes already carry, rather than carried alongside them, so no node needs to know about them.
+//Only the last CAPACITY frames are remembered. Anything older than that is far past any sensible deadline.
+class FrameClock {
+	static final int CAPACITY = 4096;
+
+	//Frame s is stored at index s % CAPACITY. sequences holds the frame each index currently holds, or -1.
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private final AtomicLongArray times = new AtomicLongArray(CAPACITY);
+
+	FrameClock(){
+		for(int i = 0; i < CAPACITY; i++){
+			sequences.set(i, -1);
+		}
+	}
+
+	//Records that the given frame was started at time, as given by System.nanoTime.
+	void stamp(long sequence, long time){
+		int i = (int)(sequence % CAPACITY);
+		times.set(i, time);
+		sequences.set(i, sequence);
+	}
+
+	//Returns when the given frame was started, or Long.MIN_VALUE if it is not known,
+	//either because it has been forgotten or because the sequence number did not come from the first step.
+	long timestamp(long sequence){
+		if(sequence < 0){
+			return Long.MIN_VALUE;
+		}
+		int i = (int)(sequence % CAPACITY);
+		long time = times.get(i);
+		return sequences.get(i) == sequence ? time : Long.MIN_VALUE;
+	}
+
+	//Returns whether the given frame is older than maxAge nanoseconds at time now.
+	//A frame which has been forgotten is counted as too old, since thousands of frames have been started since.
+	boolean isExpired(long sequence, long maxAge, long now){
+		if(sequence < 0){
+			return false;
+		}
+		long time = this.timestamp(sequence);
+		return time == Long.MIN_VALUE || now - time > maxAge;
+	}
+}
@@ -0,0 +1,38 @@
+package concurrency;
+
+/**
+Class which gives pipeline functions information about the frame they are currently processing. <br>
+Every item deposited by the first step of a pipeline is given a frame sequence number, counting up from 0.
+The number travels with the item, and with everything computed from it, through every later step. <br>
+When a step receives a generation made of values from several producers, the generation's sequence number is the highest of theirs.
+*/
+public final class FrameContext {
+	private static final ThreadLocal<PipelineRunnable<?, ?>> current = new ThreadLocal<PipelineRunnable<?, ?>>();
+
+	private FrameContext(){}
+
+	//Called once by each runnable, when its thread starts.
+	static void setCurrent(PipelineRunnable<?, ?> pr){
+		current.set(pr);
+	}
+
+	/**
+	Returns the sequence number of the frame being processed by the calling thread.
+	@return the frame sequence number, or -1 if the calling thread is not running a pipeline function.
+	*/
+	public static long sequence(){
+		PipelineRunnable<?, ?> pr = current.get();
+		return pr == null ? -1 : pr.sequence();
+	}
+
+	/**
+	Returns how long ago, in nanoseconds, the first step of the pipeline started the frame being processed by the calling thread. <br>
+	Only the most recent few thousand frames are remembered.
+	@return the age of the frame, or -1 if the calling thread is not running a pipeline function or the frame's start is not known.
+	*/
+	public static long age(){
+		PipelineRunnable<?, ?> pr = current.get();
+		long timestamp = pr == null ? Long.MIN_VALUE : pr.timestamp();
+		return timestamp == Long.MIN_VALUE ? -1 : Math.max(0, System.nanoTime() - timestamp);
+	}
+}
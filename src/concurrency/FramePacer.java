@@ -0,0 +1,51 @@
+package concurrency;
+
+import java.util.concurrent.locks.LockSupport;
+
+//Schedules the first step of a pipeline on a fixed-rate grid of absolute deadlines, so that processing time does not add to the period.
+//One pacer is shared by every runnable in the first step. The period can be changed while the pipeline runs, and takes effect from the next tick.
+class FramePacer {
+	private volatile long periodNanos;
+	private final PacingPolicy policy;
+
+	FramePacer(long periodNanos, PacingPolicy policy){
+		this.periodNanos = periodNanos;
+		this.policy = policy;
+	}
+
+	void setPeriod(long nanos){
+		periodNanos = nanos;
+	}
+
+	long period(){
+		return periodNanos;
+	}
+
+	//Waits until the tick due at deadline, then returns the deadline of the following tick. A deadline of 0 means the first tick, which is due immediately.
+	//If the caller is a whole period or more late, missed ticks are either run straight away or skipped, depending on the pacing policy.
+	//Returns 0 without waiting if the pacer has no period.
+	long awaitTick(long deadline, WorkerRecorder recorder) throws InterruptedException {
+		long period = periodNanos;
+		if(period <= 0){
+			return 0;
+		}
+		long now = System.nanoTime();
+		if(deadline == 0){
+			deadline = now;
+		}
+		long remaining;
+		while((remaining = deadline - now) > 0){
+			LockSupport.parkNanos(remaining);
+			if(Thread.interrupted()){
+				throw new InterruptedException();
+			}
+			now = System.nanoTime();
+		}
+		if(policy == PacingPolicy.SKIP && -remaining >= period){
+			long missed = -remaining / period;
+			deadline += missed * period;
+			recorder.skipped(missed);
+		}
+		return deadline + period;
+	}
+}
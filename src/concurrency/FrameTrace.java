@@ -0,0 +1,243 @@
+package concurrency;
+
+import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+
+/**
+Class which records where the time spent on each frame goes, as spans keyed by frame sequence number, and writes them out as a Chrome trace. <br>
+Tracing is off until enable is called. While it is off, begin and end only read one field, so instrumented code can be left in place. <br>
+To trace a span of code, call begin before it and end with the value begin returned after it:
+<pre>
+long start = FrameTrace.begin();
+try {
+	detectMarkers(frame);
+} finally {
+	FrameTrace.end("detect", start);
+}
+</pre>
+Spans are recorded into a ring allocated by enable, so recording never allocates and never waits. Once the ring is full, each new span overwrites the oldest. <br>
+Every step of a pipeline records a span for each call to its function and each deposit into its output node, so a trace shows how steps overlap and where they wait on each other. <br>
+dump writes the recorded spans in the Chrome trace event format, which chrome://tracing and ui.perfetto.dev can open.
+Each span is shown on the thread which recorded it, with its frame sequence number as an argument.
+*/
+public final class FrameTrace {
+	//Returned by begin while tracing is off, so that end ignores the span.
+	private static final long OFF = Long.MIN_VALUE;
+	private static volatile Ring ring;
+	//The ring each thread last gave its name to, so that each thread names itself once per ring.
+	private static final ThreadLocal<Ring> named = new ThreadLocal<Ring>();
+
+	private FrameTrace(){}
+
+	/**
+	Starts tracing into a new, empty ring holding the given number of spans, discarding any spans recorded before. <br>
+	The capacity is rounded up to a power of two.
+	@param capacity the number of most recent spans to keep.
+	@throws IllegalArgumentException if capacity is not positive or is larger than 2<sup>30</sup>.
+	*/
+	public static void enable(int capacity){
+		if(capacity <= 0 || capacity > 1 << 30){
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30, got " + capacity + ".");
+		}
+		int size = Integer.highestOneBit(capacity);
+		ring = new Ring(size < capacity ? size << 1 : size);
+	}
+
+	/**
+	Stops tracing. Spans already recorded are kept, and can still be dumped, until enable is called again.
+	*/
+	public static void disable(){
+		Ring r = ring;
+		if(r != null){
+			r.enabled = false;
+		}
+	}
+
+	/**
+	Returns whether spans are currently being recorded.
+	@return whether tracing is on.
+	*/
+	public static boolean isEnabled(){
+		Ring r = ring;
+		return r != null && r.enabled;
+	}
+
+	/**
+	Starts a span. Pass the value returned to end once the span is over.
+	@return the time the span started, or a value which end ignores if tracing is off.
+	*/
+	public static long begin(){
+		Ring r = ring;
+		return r != null && r.enabled ? System.nanoTime() : OFF;
+	}
+
+	/**
+	Ends a span started by begin, for the frame the calling thread is processing, as given by FrameContext.sequence.
+	@param name the span's name. It should be a constant, or otherwise not built on each call, so that recording does not allocate.
+	@param begin the value returned by begin.
+	*/
+	public static void end(String name, long begin){
+		end(name, begin, FrameContext.sequence());
+	}
+
+	/**
+	Ends a span started by begin, for the given frame. <br>
+	For code running outside the pipeline, such as painting, which still works on a frame the pipeline produced.
+	@param name the span's name. It should be a constant, or otherwise not built on each call, so that recording does not allocate.
+	@param begin the value returned by begin.
+	@param sequence the frame sequence number, or -1 if the span belongs to no frame.
+	*/
+	public static void end(String name, long begin, long sequence){
+		Ring r = ring;
+		if(begin == OFF || r == null || !r.enabled){
+			return;
+		}
+		r.record(name, begin, System.nanoTime(), sequence);
+	}
+
+	/**
+	Writes every span recorded since tracing was last enabled, up to the ring's capacity, as a Chrome trace JSON object. <br>
+	Tracing may carry on while the spans are written. Spans recorded meanwhile may or may not be included.
+	@param out where to write the trace.
+	@throws IOException if out throws one.
+	*/
+	public static void dump(Appendable out) throws IOException {
+		Ring r = ring;
+		out.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		if(r != null){
+			r.dump(out);
+		}
+		out.append("]}\n");
+	}
+
+	/**
+	Writes every span recorded since tracing was last enabled, up to the ring's capacity, to the given file as a Chrome trace JSON object. <br>
+	See dump(Appendable).
+	@param file the file to write, which is replaced if it exists.
+	@throws IOException if the file cannot be written.
+	*/
+	public static void dump(Path file) throws IOException {
+		try(Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+			dump(w);
+		}
+	}
+
+	//A preallocated ring of spans. Writers claim slots with a shared counter, and publish each slot by storing the index they claimed it with.
+	private static final class Ring {
+		private final int mask;
+		private final AtomicLong next = new AtomicLong();
+		//The claim index each slot was last written with, or -1 while it is being written.
+		private final AtomicLongArray published;
+		private final String[] names;
+		private final long[] begins;
+		private final long[] ends;
+		private final long[] sequences;
+		private final long[] threads;
+		private final Map<Long, String> threadNames = new ConcurrentHashMap<Long, String>();
+		private volatile boolean enabled = true;
+
+		private Ring(int capacity){
+			mask = capacity - 1;
+			published = new AtomicLongArray(capacity);
+			for(int i = 0; i < capacity; i++){
+				published.set(i, -1);
+			}
+			names = new String[capacity];
+			begins = new long[capacity];
+			ends = new long[capacity];
+			sequences = new long[capacity];
+			threads = new long[capacity];
+		}
+
+		private void record(String name, long begin, long end, long sequence){
+			Thread t = Thread.currentThread();
+			if(named.get() != this){
+				threadNames.put(t.getId(), t.getName());
+				named.set(this);
+			}
+			long index = next.getAndIncrement();
+			int i = (int)(index & mask);
+			published.set(i, -1);
+			//A volatile store does not keep later plain stores from moving above it, so without the fence a reader could see new fields under the old index.
+			VarHandle.storeStoreFence();
+			names[i] = name;
+			begins[i] = begin;
+			ends[i] = end;
+			sequences[i] = sequence;
+			threads[i] = t.getId();
+			//Releases the fields above to any reader which sees index.
+			published.set(i, index);
+		}
+
+		private void dump(Appendable out) throws IOException {
+			long last = next.get();
+			long first = Math.max(0, last - (mask + 1));
+			//Copied out first, so that slots overwritten while being read can be left out, and so that times can be given relative to the earliest span.
+			List<long[]> spans = new ArrayList<long[]>();
+			List<String> spanNames = new ArrayList<String>();
+			long origin = Long.MAX_VALUE;
+			for(long index = first; index < last; index++){
+				int i = (int)(index & mask);
+				if(published.get(i) != index){
+					continue;
+				}
+				String name = names[i];
+				long[] span = {begins[i], ends[i], sequences[i], threads[i]};
+				//A slot rewritten while it was being read no longer holds index. The fence keeps the reads above from moving below the check.
+				VarHandle.acquireFence();
+				if(published.get(i) != index){
+					continue;
+				}
+				spans.add(span);
+				spanNames.add(name);
+				origin = Math.min(origin, span[0]);
+			}
+			boolean comma = false;
+			for(Map.Entry<Long, String> e : threadNames.entrySet()){
+				if(comma){
+					out.append(',');
+				}
+				out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(Long.toString(e.getKey())).append(",\"args\":{\"name\":");
+				quote(e.getValue(), out);
+				out.append("}}");
+				comma = true;
+			}
+			for(int s = 0; s < spans.size(); s++){
+				long[] span = spans.get(s);
+				if(comma){
+					out.append(',');
+				}
+				out.append("\n{\"name\":");
+				quote(spanNames.get(s), out);
+				out.append(",\"ph\":\"X\",\"ts\":").append(micros(span[0] - origin)).append(",\"dur\":").append(micros(span[1] - span[0]));
+				out.append(",\"pid\":1,\"tid\":").append(Long.toString(span[3])).append(",\"args\":{\"frame\":").append(Long.toString(span[2])).append("}}");
+				comma = true;
+			}
+		}
+
+		//Trace event times are in microseconds. Fractions keep nanosecond precision.
+		private static String micros(long nanos){
+			return (nanos / 1000) + "." + String.format("%03d", nanos % 1000);
+		}
+
+		private static void quote(String s, Appendable out) throws IOException {
+			out.append('"');
+			for(int i = 0; i < s.length(); i++){
+				char c = s.charAt(i);
+				if(c == '"' || c == '\\'){
+					out.append('\\').append(c);
+				} else if(c < 0x20){
+					out.append(String.format("\\u%04x", (int)c));
+				} else {
+					out.append(c);
+				}
+			}
+			out.append('"');
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package concurrency;
+
+import java.util.*;
+
+//Runs the functions of several fused steps one after another on one thread, in place of the blocking nodes which would have passed each output on.
+//Each step but the first had one thread before it, so it receives its predecessor's output as a generation of one value.
+//Each function's call is traced under the number of the step it came from, so a trace still shows where the time went.
+class FusedFunction<T, V> implements PipelineFunction<T, V>{
+	private final PipelineFunction<Object, Object>[] functions;
+	private final int firstStage;
+	private final String[] spans;
+	private final String functionName;
+
+	@SuppressWarnings("unchecked")
+	FusedFunction(List<PipelineFunction<?, ?>> functions, int firstStage){
+		this.functions = (PipelineFunction<Object, Object>[])functions.toArray(new PipelineFunction<?, ?>[0]);
+		this.firstStage = firstStage;
+		this.spans = new String[functions.size()];
+		StringBuilder name = new StringBuilder();
+		for(int i = 0; i < functions.size(); i++){
+			spans[i] = "step " + (firstStage + i);
+			if(i > 0){
+				name.append(" + ");
+			}
+			name.append(functions.get(i).getClass().getName());
+		}
+		this.functionName = name.toString();
+	}
+
+	String functionName(){
+		return functionName;
+	}
+
+	int stageCount(){
+		return functions.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V execute(Collection<T> t){
+		Object value = null;
+		for(int i = 0; i < functions.length; i++){
+			long start = FrameTrace.begin();
+			try {
+				if(i == 0){
+					value = functions[0].execute((Collection<Object>)(Collection<?>)t);
+				} else if(functions[i] instanceof SingleValueFunction){
+					value = ((SingleValueFunction<Object, Object>)functions[i]).apply(value);
+				} else {
+					value = functions[i].execute(Collections.singletonList(value));
+				}
+			} finally {
+				FrameTrace.end(spans[i], start);
+			}
+			//A node would have refused a null output, so the same mistake fails the same way.
+			if(value == null && i + 1 < functions.length){
+				throw new NullPointerException("Step " + (firstStage + i) + " returned null.");
+			}
+		}
+		return (V)value;
+	}
+}
@@ -0,0 +1,68 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class FusionTest{
+	static int mistakes = 0;
+	static int total = 0;
+	static long latency = 0;
+
+	public static void main(String[] args) throws InterruptedException {
+		run(false);
+		run(true);
+	}
+
+	static void run(boolean fuse) throws InterruptedException {
+		mistakes = 0;
+		total = 0;
+		latency = 0;
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return counter[0]++;
+		};
+		PipelineFunction<Integer, Integer> secondLambda = PipelineFunction.single((t) -> {
+			return t + 1;
+		});
+		PipelineFunction<Integer, Integer> thirdLambda = (t) -> {
+			return t.iterator().next() * 2;
+		};
+		PipelineFunction<Integer, Integer> fourthLambda = PipelineFunction.single((t) -> {
+			return t - 2;
+		});
+		PipelineFunction<Integer, Void> fifthLambda = PipelineFunction.single((t) -> {
+			//Every frame n should come out as 2n, in order.
+			if(t != 2 * total){
+				mistakes++;
+			}
+			total++;
+			latency += FrameContext.age();
+			return null;
+		});
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setFrequency(500).setStageFusion(fuse);
+		builder.addThreads(Void.class, Integer.class, firstLambda);
+		builder.addThreads(Integer.class, Integer.class, secondLambda);
+		//The queue between the third and fourth steps is kept, so they are fused into two groups.
+		builder.addThreads(Integer.class, Integer.class, NodeBehavior.QUEUE, thirdLambda);
+		builder.addThreads(Integer.class, Integer.class, fourthLambda);
+		builder.addThreads(Integer.class, Void.class, fifthLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(1000);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		PipelineMetrics m = p.metrics();
+		System.out.println((fuse ? "fused" : "unfused") + ": finished " + finished + ", " + counter[0] + " produced, " + total + " consumed, " + mistakes + " mistakes, "
+			+ m.workers().size() + " threads, " + m.nodes().size() + " nodes, mean latency " + (total == 0 ? 0 : latency / total / 1000) + "us");
+		System.out.print(m);
+		if(!finished){
+			p.interrupt();
+		}
+	}
+}
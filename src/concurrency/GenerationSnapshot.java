@@ -0,0 +1,52 @@
+package concurrency;
+
+import java.util.*;
+
+//Immutable list of the values in one generation.
+//A node creates one when a generation is complete and hands the same instance to every consumer, so withdrawing does not copy anything.
+//A snapshot made with inPlace is the exception: its node refills the array for a later generation, once every consumer has withdrawn again.
+final class GenerationSnapshot<T> extends AbstractList<T> implements RandomAccess {
+	private final Object[] values;
+
+	private GenerationSnapshot(Object[] values){
+		this.values = values;
+	}
+
+	//Takes ownership of values, which must not be changed afterwards.
+	//Null entries, left by producers which closed without depositing into the generation, are left out.
+	static <T> GenerationSnapshot<T> of(Object[] values){
+		int count = 0;
+		for(Object o : values){
+			if(o != null){
+				count++;
+			}
+		}
+		if(count == values.length){
+			return new GenerationSnapshot<T>(values);
+		}
+		Object[] compacted = new Object[count];
+		int i = 0;
+		for(Object o : values){
+			if(o != null){
+				compacted[i++] = o;
+			}
+		}
+		return new GenerationSnapshot<T>(compacted);
+	}
+
+	//Reads values in place, so the caller must only hand it out while values holds no nulls, and must not refill values while a consumer may still hold it.
+	static <T> GenerationSnapshot<T> inPlace(Object[] values){
+		return new GenerationSnapshot<T>(values);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index){
+		return (T)values[Objects.checkIndex(index, values.length)];
+	}
+
+	@Override
+	public int size(){
+		return values.length;
+	}
+}
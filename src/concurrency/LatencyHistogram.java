@@ -0,0 +1,126 @@
+package concurrency;
+
+import java.util.concurrent.atomic.*;
+
+/**
+Histogram of durations in nanoseconds. <br>
+Values are counted in logarithmic buckets, each split into 32 linear sub-buckets, so a recorded value is off by at most about 3% when read back. <br>
+Recording a value does not allocate or lock, so histograms can be left on while a pipeline runs. <br>
+The histograms handed out by PipelineMetrics are snapshots, and do not change after they are created.
+*/
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	LatencyHistogram(){
+		counts = new AtomicLongArray(BUCKETS);
+	}
+
+	//Records a single duration. Negative durations are recorded as 0.
+	void record(long nanos){
+		if(nanos < 0){
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketIndex(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long currentMax = max.get();
+		while(nanos > currentMax && !max.compareAndSet(currentMax, nanos)){
+			currentMax = max.get();
+		}
+	}
+
+	//Returns a copy of this histogram. Values recorded while copying may or may not be included.
+	LatencyHistogram copy(){
+		LatencyHistogram answer = new LatencyHistogram();
+		long copied = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			long c = counts.get(i);
+			answer.counts.set(i, c);
+			copied += c;
+		}
+		answer.count.set(copied);
+		answer.total.set(total.get());
+		answer.max.set(max.get());
+		return answer;
+	}
+
+	/**
+	Returns the number of recorded durations.
+	@return the number of recorded durations.
+	*/
+	public long count(){
+		return count.get();
+	}
+
+	/**
+	Returns the longest recorded duration, in nanoseconds, or 0 if nothing has been recorded.
+	@return the longest recorded duration.
+	*/
+	public long max(){
+		return max.get();
+	}
+
+	/**
+	Returns the mean recorded duration, in nanoseconds, or 0 if nothing has been recorded.
+	@return the mean recorded duration.
+	*/
+	public double mean(){
+		long c = count.get();
+		return c == 0 ? 0 : (double)total.get() / c;
+	}
+
+	/**
+	Returns the duration, in nanoseconds, which the given percentage of recorded durations are at or below.
+	@param percentile the percentile, between 0 and 100.
+	@throws IllegalArgumentException if percentile is not between 0 and 100.
+	@return the duration at the given percentile, or 0 if nothing has been recorded.
+	*/
+	public long percentile(double percentile){
+		if(percentile < 0 || percentile > 100){
+			throw new IllegalArgumentException("Percentile must be between 0 and 100, got " + percentile + ".");
+		}
+		long c = count.get();
+		if(c == 0){
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(percentile / 100 * c));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += counts.get(i);
+			if(seen >= target){
+				return Math.min(highestValueInBucket(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString(){
+		return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", count(), mean() / 1e6, percentile(50) / 1e6, percentile(99) / 1e6, max() / 1e6);
+	}
+
+	private static int bucketIndex(long value){
+		if(value < SUB_BUCKETS){
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int)((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long highestValueInBucket(int index){
+		if(index < SUB_BUCKETS){
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
@@ -1,13 +1,65 @@
 package concurrency;
 
 import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
 
 interface Node<T>{
+	//Only throws InterruptedException before t is stored, so that the producer knows it still holds t.
+	//A node which is interrupted after storing t returns normally instead, with the interrupt status set.
 	void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException;
 
+	//Returns null once every producer has closed and this consumer has withdrawn everything left in the node.
 	Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException;
 
+	//Like withdraw, but gives up once System.nanoTime() reaches deadline, returning an empty collection.
+	Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException;
+
+	//Called by a producer once it will not deposit again. Generations stop waiting for values from closed producers,
+	//so a generation completed after a producer closes may hold fewer values than there are producers.
+	//Must not block, since producers call it on their way out, possibly after being interrupted.
+	void close(PipelineRunnable<?, T> pr);
+
 	void pingAsProducer(PipelineRunnable<?, T> pr);
 
 	void pingAsConsumer(PipelineRunnable<T, ?> pr);
+
+	long dropped();
+
+	//Sets what is done with each value this node throws away without handing it to any consumer, such as a value its drop policy drops.
+	//Called before the pipeline starts. Until then, dropped values are simply forgotten.
+	void setDiscardAction(Consumer<? super T> action);
+
+	//Passes every value still held that no consumer has been handed to the discard action, and forgets them.
+	//Called once every producer and consumer has exited, so nothing else touches the node any more.
+	void discardRemaining();
+
+	int occupancy();
+
+	//The discard action of a node which has not been given one.
+	static <T> Consumer<T> forget(){
+		return (t) -> {};
+	}
+
+	//Passes each value of a generation to the discard action.
+	static <T> void discardAll(Consumer<? super T> action, Collection<T> generation){
+		for(T t : generation){
+			action.accept(t);
+		}
+	}
+
+	//Waits on c, until deadline if timed. Returns false, without waiting, if the deadline has already passed.
+	//Shared by the nodes which wait on a condition, so that withdraw and poll can share one implementation.
+	static boolean await(Condition c, boolean timed, long deadline) throws InterruptedException {
+		if(!timed){
+			c.await();
+			return true;
+		}
+		long remaining = deadline - System.nanoTime();
+		if(remaining <= 0){
+			return false;
+		}
+		c.awaitNanos(remaining);
+		return true;
+	}
 }
\ No newline at end of file
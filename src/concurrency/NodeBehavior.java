@@ -13,5 +13,26 @@ public enum NodeBehavior{
 	Replacing nodes let the producers deposit whenever they want to.
 	This speeds up the program.
 	*/
-	REPLACING
+	REPLACING,
+
+	/** Represents a ring buffer node.
+	Ring buffer nodes keep the same all-producers-of-one-generation semantics as blocking nodes, but buffer several generations
+	in a preallocated ring, so producers can run ahead of the consumers by up to the node capacity.
+	They do not lock or allocate when values are handed over.
+	*/
+	RING_BUFFER,
+
+	/** Represents a queue node.
+	Queue nodes hold up to the node capacity generations, and every consumer withdraws every queued generation in order.
+	When a producer runs ahead or the queue is full, the node's drop policy decides whether frames are dropped or producers wait.
+	Dropped frames are counted, and the counts are available from the pipeline.
+	*/
+	QUEUE,
+
+	/** Represents a reordering node.
+	Reordering nodes release values strictly in order of their frame sequence numbers, grouping values with the same sequence number into one generation.
+	Producers may run up to the node capacity frames ahead of the slowest consumer.
+	This lets a step process frames out of order without the next step seeing them out of order.
+	*/
+	REORDERING
 }
\ No newline at end of file
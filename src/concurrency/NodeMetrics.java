@@ -0,0 +1,47 @@
+package concurrency;
+
+/**
+Snapshot of the metrics for one node in a pipeline. <br>
+Nodes are numbered in pipeline order, starting at 0. In a pipeline without branches, node i sits between stage i and stage i + 1. <br>
+The nodes of branches are numbered after those of the builder they came from, each branch's input node first.
+*/
+public final class NodeMetrics {
+	private final int index;
+	private final int occupancy;
+	private final long dropped;
+
+	NodeMetrics(int index, int occupancy, long dropped){
+		this.index = index;
+		this.occupancy = occupancy;
+		this.dropped = dropped;
+	}
+
+	/**
+	Returns the index of this node.
+	@return the index of this node.
+	*/
+	public int index(){
+		return index;
+	}
+
+	/**
+	Returns the number of generations held by the node which have not yet been withdrawn by every consumer.
+	@return the node occupancy.
+	*/
+	public int occupancy(){
+		return occupancy;
+	}
+
+	/**
+	Returns the number of frames the node has dropped.
+	@return the number of frames the node has dropped.
+	*/
+	public long dropped(){
+		return dropped;
+	}
+
+	@Override
+	public String toString(){
+		return "node " + index + ": occupancy " + occupancy + ", dropped " + dropped;
+	}
+}
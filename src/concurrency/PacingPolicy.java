@@ -0,0 +1,17 @@
+package concurrency;
+
+/**Enum representing what a paced pipeline does when its first step falls behind its frame rate.
+*/
+public enum PacingPolicy{
+	/** Represents catching up.
+	Missed frames are run back to back, as soon as possible, until the first step is back on schedule.
+	Every tick is run, but frames come in bursts after a stall.
+	*/
+	CATCH_UP,
+
+	/** Represents skipping.
+	Missed frames are skipped, and the first step waits for the next tick on the original schedule.
+	This keeps the cadence steady. Skipped ticks are counted in the pipeline's metrics.
+	*/
+	SKIP
+}
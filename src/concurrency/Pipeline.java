@@ -1,4 +1,9 @@
 package concurrency;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
 	Interface representing a group of threads, running concurrently. <br>
 	The only way to get a Pipeline instance is with a PipelineBuilder.
@@ -22,4 +27,55 @@ public interface Pipeline {
 	Interrupts all threads in the pipeline.
 	*/
 	void interrupt();
+
+	/**
+	Stops the pipeline gracefully. <br>
+	The first step stops producing frames once its current frame is done. Every later step then finishes the frames already waiting for it
+	and stops once its input has been drained, so no frame which has been produced is abandoned part way through the pipeline,
+	except for frames dropped by the nodes' usual drop rules. <br>
+	While the pipeline drains, a step whose previous step had several threads may receive a final item holding fewer values than usual. <br>
+	This method does not wait. If the pipeline has not been started yet, it stops as soon as it is started.
+	@return a future which completes once every thread in the pipeline has finished.
+	*/
+	CompletableFuture<Void> shutdown();
+
+	/**
+	Waits for every thread in the pipeline to finish, after shutdown or interrupt has been called.
+	@param timeout the longest time to wait
+	@param unit the unit of timeout
+	@throws InterruptedException if the calling thread is interrupted while waiting.
+	@return true if every thread finished, or false if the timeout elapsed first.
+	*/
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	Returns the number of frames each node in the pipeline has dropped so far, in pipeline order. <br>
+	Blocking nodes never drop frames. Ring buffer nodes only drop values which were deposited after another thread in the same step stopped,
+	since those can never form a complete generation. Replacing nodes count values that were replaced before every consumer withdrew them.
+	Queue nodes count frames dropped according to their drop policy.
+	@return an unmodifiable list of the number of frames dropped by each node.
+	*/
+	List<Long> droppedFrames();
+
+	/**
+	Returns a snapshot of the pipeline's metrics. <br>
+	Every thread records how long each call to its function takes, how long it waits on its input and output nodes, and how many items it has processed.
+	Recording is cheap enough to always be on. Taking a snapshot copies every histogram, so it should not be done on every frame.
+	@return a snapshot of the pipeline's metrics.
+	*/
+	PipelineMetrics metrics();
+
+	/**
+	Changes the frequency, in frames per second, at which the first step of the pipeline runs. <br>
+	The new frequency takes effect from the next frame. 0 means no pacing.
+	@param hz the frequency
+	@throws IllegalArgumentException if hz is negative.
+	*/
+	void setFrequency(double hz);
+
+	/**
+	Returns the frequency, in frames per second, at which the first step of the pipeline runs, or 0 if it is not paced.
+	@return the frequency.
+	*/
+	double frequency();
 }
\ No newline at end of file
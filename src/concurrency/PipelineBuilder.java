@@ -1,6 +1,8 @@
 package concurrency;
 
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
 /**
 Class which builds a pipeline.
@@ -11,6 +13,10 @@ The input type of the first thread group and the output type of the last thread
 When a thread group with an output type of Void is added to the PipelineBuilder, the builder becomes closed. <br>
 Once a builder is closed, no more thread groups can be added to it. <br>
 A builder must be closed in order to be build into a pipeline. <br>
+The output of a step can also be read by other steps than the next one, through branches. <br>
+The branch method returns a new builder whose first step reads the output of this builder's last step, through a node of its own. <br>
+A branch must either be closed, or joined back into the builder it came from with the join method,
+after which the next step added to that builder reads the output of both. <br>
 @author Owen Kulik
 */
 public class PipelineBuilder{
@@ -19,15 +25,59 @@ public class PipelineBuilder{
 	private Thread.UncaughtExceptionHandler defaultHandler;
 	private NodeBehavior defaultBehavior = NodeBehavior.BLOCKING;
 
-	private List<Node<?>> nodes;
-	private List<PipelineRunnable<?, ?>> runnables;
-	private int framerate = 0;
+	private List<Stage<?, ?>> stages;
+	private long framePeriod = 0;
+	private PacingPolicy pacingPolicy = PacingPolicy.SKIP;
+	private int nodeCapacity = RingBufferNode.DEFAULT_CAPACITY;
+	private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+	private DropPolicy dropPolicy = DropPolicy.DROP_OLDEST;
+	private long stallTimeout = 0;
+	private StallAction stallAction = StallAction.REPORT;
+	private long maxFrameAge = 0;
+	private boolean fuseStages = false;
+	//What is done with thrown away values, by the type of value. Each action takes values of its key type.
+	private final Map<Class<?>, Consumer<?>> discardActions = new HashMap<Class<?>, Consumer<?>>();
+	//What is done to give another holder its own share of a value, by the type of value. Each action takes values of its key type.
+	private final Map<Class<?>, Consumer<?>> shareActions = new HashMap<Class<?>, Consumer<?>>();
+
+	//Set for builders returned by branch. The branch's first step reads the output of the parent's step at forkIndex,
+	//through a node created with the behavior, capacity and drop policy below.
+	private final PipelineBuilder parent;
+	private final int forkIndex;
+	private final NodeBehavior inputBehavior;
+	private final int inputCapacity;
+	private final DropPolicy inputDropPolicy;
+	private final List<PipelineBuilder> branches = new ArrayList<PipelineBuilder>();
+	//Index of the parent's step whose output node this branch's last step also deposits into, or -1 if the branch has not been joined.
+	private int joinIndex = -1;
 
 	PipelineBuilder(){
 		nextType = Void.class;
 		closed = false;
-		nodes = new LinkedList<Node<?>>();
-		runnables = new LinkedList<PipelineRunnable<?, ?>>();
+		stages = new ArrayList<Stage<?, ?>>();
+		parent = null;
+		forkIndex = -1;
+		inputBehavior = null;
+		inputCapacity = 0;
+		inputDropPolicy = null;
+	}
+
+	private PipelineBuilder(PipelineBuilder parent, NodeBehavior nb){
+		nextType = parent.nextType;
+		closed = false;
+		stages = new ArrayList<Stage<?, ?>>();
+		defaultHandler = parent.defaultHandler;
+		defaultBehavior = parent.defaultBehavior;
+		nodeCapacity = parent.nodeCapacity;
+		dropPolicy = parent.dropPolicy;
+		stallTimeout = parent.stallTimeout;
+		stallAction = parent.stallAction;
+		maxFrameAge = parent.maxFrameAge;
+		this.parent = parent;
+		forkIndex = parent.stages.size() - 1;
+		inputBehavior = nb;
+		inputCapacity = parent.nodeCapacity;
+		inputDropPolicy = parent.dropPolicy;
 	}
 
 	/**
@@ -44,41 +94,213 @@ public class PipelineBuilder{
 	@return this, for method call chaining.
 	*/
 	@SafeVarargs
-	@SuppressWarnings("unchecked")
 	public final <T, V> PipelineBuilder addThreads(Class<T> inputType, Class<V> outputType, Thread.UncaughtExceptionHandler ueh, NodeBehavior nb, PipelineFunction<T, V>... threads){
 		if(threads.length == 0){
 			throw new PipelineBuilderException("threads.length was 0.");
 		}
+		return this.addStage(inputType, outputType, ueh, nb, Arrays.asList(threads), false, 0);
+	}
+
+	/**
+	Adds a group of n worker threads which all run the passed function, using the specified uncaughtExceptionHandler and node behavior. <br>
+	Unlike threads added with addThreads, which each receive every item from the previous step, the workers compete for items:
+	each item is processed by exactly one worker. <br>
+	Items wait in one shared queue, oldest first, and whichever worker is free next takes the item at its head,
+	so one slow item does not hold up the rest. <br>
+	The node between the previous step and the workers always distributes items this way, regardless of the node behavior used when adding the previous step. <br>
+	Since workers finish items in no particular order, use NodeBehavior.REORDERING as nb if the next step needs them in order. <br>
+	The function is shared by all n workers, so it must be safe to call from several threads at once.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param ueh An uncaghtExceptionHandler which will be used for all workers added in this method call.
+	@param nb The node behavior to use for the next node in the pipeline.
+	@param n The number of workers.
+	@param function The function to run.
+	@throws PipelineBuilderException if n is not positive, the builder is closed, or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addWorkers(Class<T> inputType, Class<V> outputType, Thread.UncaughtExceptionHandler ueh, NodeBehavior nb, int n, PipelineFunction<T, V> function){
+		if(n <= 0){
+			throw new PipelineBuilderException("Number of workers must be positive, got " + n + ".");
+		}
+		return this.addStage(inputType, outputType, ueh, nb, Collections.nCopies(n, function), true, 0);
+	}
+
+	/**
+	Adds a group of n worker threads which all run the passed function, using the default uncaughtExceptionHandler and node behavior. <br>
+	See addWorkers(Class, Class, Thread.UncaughtExceptionHandler, NodeBehavior, int, PipelineFunction) for how workers share items.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param n The number of workers.
+	@param function The function to run.
+	@throws PipelineBuilderException if a default uncaughtExceptionHandler has not been specified, n is not positive,
+			the builder is closed, or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addWorkers(Class<T> inputType, Class<V> outputType, int n, PipelineFunction<T, V> function){
+		if(defaultHandler == null){
+			throw new PipelineBuilderException("Cannot add threads without an UncaughtExceptionHandler before a default Handler has been set");
+		}
+		return this.addWorkers(inputType, outputType, defaultHandler, defaultBehavior, n, function);
+	}
+
+	/**
+	Adds a group of n worker threads which all run the passed function, using the default uncaughtExceptionHandler and the specified node behavior. <br>
+	See addWorkers(Class, Class, Thread.UncaughtExceptionHandler, NodeBehavior, int, PipelineFunction) for how workers share items.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param nb The node behavior to use for the next node in the pipeline.
+	@param n The number of workers.
+	@param function The function to run.
+	@throws PipelineBuilderException if n is not positive, the builder is closed, or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addWorkers(Class<T> inputType, Class<V> outputType, NodeBehavior nb, int n, PipelineFunction<T, V> function){
+		return this.addWorkers(inputType, outputType, defaultHandler, nb, n, function);
+	}
+
+	/**
+	Adds an elastic group of worker threads which all run the passed function, using the specified uncaughtExceptionHandler. <br>
+	Workers share items as with addWorkers, but how many of them take items changes with the load, between min and max.
+	The step starts with min active workers. While items keep waiting in its input node with every active worker busy, another worker is activated,
+	and while the active workers sit idle, one is retired. Each decision needs about half a second of consistent samples, and the half second after a change is ignored,
+	so short bursts do not make the number flap. <br>
+	All max threads are started with the pipeline. A retired worker finishes its current item and then waits, without taking items, until it is activated again. <br>
+	The next node always puts items back in order, as NodeBehavior.REORDERING does, so the next step must not be distributed, and no branch may be started from this step.
+	Decisions are reported by Pipeline.metrics(). <br>
+	The function is shared by all max workers, so it must be safe to call from several threads at once.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param ueh An uncaghtExceptionHandler which will be used for all workers added in this method call.
+	@param min The smallest number of active workers.
+	@param max The largest number of active workers.
+	@param function The function to run.
+	@throws PipelineBuilderException if min is not positive, max is less than min, inputType is Void, the builder is closed,
+			or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addElasticWorkers(Class<T> inputType, Class<V> outputType, Thread.UncaughtExceptionHandler ueh, int min, int max, PipelineFunction<T, V> function){
+		if(min <= 0){
+			throw new PipelineBuilderException("Minimum number of workers must be positive, got " + min + ".");
+		}
+		if(max < min){
+			throw new PipelineBuilderException("Maximum number of workers must be at least the minimum, " + min + ", got " + max + ".");
+		}
+		if(inputType.equals(Void.class)){
+			throw new PipelineBuilderException("An elastic step cannot be the first step, since it has no input to be backlogged.");
+		}
+		return this.addStage(inputType, outputType, ueh, NodeBehavior.REORDERING, Collections.nCopies(max, function), true, min);
+	}
+
+	/**
+	Adds an elastic group of worker threads which all run the passed function, using the default uncaughtExceptionHandler. <br>
+	See addElasticWorkers(Class, Class, Thread.UncaughtExceptionHandler, int, int, PipelineFunction) for how workers are added and retired.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param min The smallest number of active workers.
+	@param max The largest number of active workers.
+	@param function The function to run.
+	@throws PipelineBuilderException if min is not positive, max is less than min, inputType is Void, the builder is closed,
+			or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addElasticWorkers(Class<T> inputType, Class<V> outputType, int min, int max, PipelineFunction<T, V> function){
+		return this.addElasticWorkers(inputType, outputType, defaultHandler, min, max, function);
+	}
+
+	/**
+	Adds a batch step, which collects items and passes them to the passed function several at a time, using the specified uncaughtExceptionHandler and node behavior. <br>
+	The step waits for an item, then keeps collecting until it has size items, or until maxWait milliseconds have passed since the first one arrived,
+	and calls the function on the whole batch. Each output is then passed on to the next step by itself, so the steps on either side of a batch step need not know about batching. <br>
+	Batching trades latency for throughput, so it suits offline work, such as processing a recorded session, better than live display. <br>
+	A batch step has one thread, and cannot be the first step.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param ueh An uncaghtExceptionHandler which will be used for the thread added in this method call.
+	@param nb The node behavior to use for the next node in the pipeline.
+	@param size The largest number of items in a batch.
+	@param maxWait The longest time, in milliseconds, to wait for a batch to fill before processing it anyway. 0 means only what is already waiting is added.
+	@param function The function to run.
+	@throws PipelineBuilderException if size is not positive, maxWait is negative, inputType is Void, the builder is closed,
+			or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addBatch(Class<T> inputType, Class<V> outputType, Thread.UncaughtExceptionHandler ueh, NodeBehavior nb, int size, long maxWait, BatchFunction<T, V> function){
+		if(size <= 0){
+			throw new PipelineBuilderException("Batch size must be positive, got " + size + ".");
+		}
+		if(maxWait < 0){
+			throw new PipelineBuilderException("Batch wait must not be negative, got " + maxWait + ".");
+		}
+		if(inputType.equals(Void.class)){
+			throw new PipelineBuilderException("A batch step cannot be the first step, since it has nothing to collect.");
+		}
+		return this.addStage(inputType, outputType, ueh, nb, List.of(new Batching<T, V>(function, size, maxWait * 1_000_000L)), false, 0);
+	}
+
+	/**
+	Adds a batch step, using the default uncaughtExceptionHandler and the specified node behavior. <br>
+	See addBatch(Class, Class, Thread.UncaughtExceptionHandler, NodeBehavior, int, long, BatchFunction) for how batches are collected.
+	@param inputType A class object representing the input type of the passed function.
+	@param outputType A class object representing the output type of the passed function.
+	@param nb The node behavior to use for the next node in the pipeline.
+	@param size The largest number of items in a batch.
+	@param maxWait The longest time, in milliseconds, to wait for a batch to fill before processing it anyway.
+	@param function The function to run.
+	@throws PipelineBuilderException if size is not positive, maxWait is negative, inputType is Void, the builder is closed,
+			or the input type of this call does not match the output type of the last call.
+	@return this, for method call chaining.
+	*/
+	public <T, V> PipelineBuilder addBatch(Class<T> inputType, Class<V> outputType, NodeBehavior nb, int size, long maxWait, BatchFunction<T, V> function){
+		return this.addBatch(inputType, outputType, defaultHandler, nb, size, maxWait, function);
+	}
+
+	private <T, V> PipelineBuilder addStage(Class<T> inputType, Class<V> outputType, Thread.UncaughtExceptionHandler ueh, NodeBehavior nb, List<PipelineFunction<T, V>> functions, boolean distributed, int minWorkers){
 		if(this.isClosed()){
 			throw new PipelineBuilderException("Cannot add threads to a closed builder.");
 		}
+		if(joinIndex >= 0){
+			throw new PipelineBuilderException("Cannot add threads to a branch which has been joined.");
+		}
 		if(!inputType.equals(nextType)){
 			throw new PipelineBuilderException("Input type did not match last output type: Expected " + nextType.toString() + ", got " + inputType.toString() + ".");
 		}
+		Stage<T, V> stage = new Stage<T, V>(inputType, outputType, ueh, nb, nodeCapacity, dropPolicy, stallTimeout, stallAction, maxFrameAge, functions, distributed, minWorkers);
+		if(stage.takesSingleValue() && this.inputProducers(distributed) > 1){
+			throw new PipelineBuilderException("A SingleValueFunction can only be added after a step with one thread, but " + this.inputProducers(distributed) + " threads deposit into its input node.");
+		}
 		nextType = outputType;
 		if(nextType.equals(Void.class)){
 			closed = true;
 		}
+		stages.add(stage);
+		return this;
+	}
 
-		//Whether the pipelineBuilder is closed must be determined by this point in the method.
-		//This unchecked cast is safe because we verified it at the beginning of the method using the inputType and nextType variables.
-		Node<T> inputNode = nodes.size() > 0 ? (Node<T>)nodes.get(nodes.size() - 1) : null;
-		Node<V> outputNode = null; 
-		if(this.isClosed()){
-			outputNode = null;
-		} else {
-			if(nb == NodeBehavior.BLOCKING){
-				outputNode = new SimpleNode<V>();
-			} else if(nb == NodeBehavior.REPLACING){
-				outputNode = new ReplacingNode<V>();
-			}
-			nodes.add(outputNode);
+	//Returns the number of threads whose values may share a generation in the input node of the next step added to this builder.
+	//Workers depositing into a reordering node count as one, since no two of them deposit the same frame, so each generation holds one value.
+	//That does not hold if the next step is distributed, since its input node is then assembled from every producer instead.
+	private int inputProducers(boolean nextIsDistributed){
+		if(stages.isEmpty()){
+			return parent == null ? 0 : parent.stages.get(forkIndex).threadCount();
 		}
-		int framerate = inputType.equals(Void.class) ? this.framerate : 0;
-		for(PipelineFunction<T, V> pf : threads){
-			runnables.add(new PipelineRunnable<T, V>(inputNode, pf, outputNode, ueh, framerate));
+		Stage<?, ?> last = stages.get(stages.size() - 1);
+		int producers = this.producersAt(stages.size() - 1);
+		if(!nextIsDistributed && last.isDistributed() && last.behavior() == NodeBehavior.REORDERING && producers == last.threadCount()){
+			return 1;
 		}
-		return this;
+		return producers;
+	}
+
+	//Returns the number of threads which deposit into the node after step i: the step itself, and the branches joined into it.
+	private int producersAt(int i){
+		int answer = stages.get(i).threadCount();
+		for(PipelineBuilder b : branches){
+			if(b.joinIndex == i){
+				answer += b.producersAt(b.stages.size() - 1);
+			}
+		}
+		return answer;
 	}
 
 	/**
@@ -148,12 +370,314 @@ public class PipelineBuilder{
 
 	/**
 	Sets the framerate.
-	The framrate is the amount of time that each thread in the first step of the pipeline waits between method calls.
+	The framrate is the time, in milliseconds, between the starts of consecutive method calls in the first step of the pipeline. <br>
+	Frames are scheduled on a fixed grid, so the time spent processing a frame does not lengthen the period. 0, the default, means no pacing.
 	@param f the framerate
+	@throws PipelineBuilderException if f is negative, or this builder is a branch.
 	@return this, for method call chaining.
 	*/
 	public PipelineBuilder setFramerate(int f){
-		framerate = f;
+		this.requireRoot("framerate");
+		if(f < 0){
+			throw new PipelineBuilderException("Framerate must not be negative, got " + f + ".");
+		}
+		framePeriod = f * 1_000_000L;
+		return this;
+	}
+
+	/**
+	Sets the frequency, in frames per second, at which the first step of the pipeline runs. <br>
+	This is an alternative to setFramerate for rates which are not a whole number of milliseconds apart, such as 60 Hz.
+	0 means no pacing. The frequency can be changed later through Pipeline.setFrequency.
+	@param hz the frequency
+	@throws PipelineBuilderException if hz is negative, or this builder is a branch.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setFrequency(double hz){
+		this.requireRoot("frequency");
+		framePeriod = periodOf(hz);
+		return this;
+	}
+
+	/**
+	Sets the pacing policy.
+	The pacing policy decides what a paced pipeline does when its first step falls behind. The default is PacingPolicy.SKIP.
+	@param pp the pacing policy
+	@throws NullPointerException if pp is null.
+	@throws PipelineBuilderException if this builder is a branch.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setPacingPolicy(PacingPolicy pp){
+		if(pp == null){
+			throw new NullPointerException("Pacing policy was null.");
+		}
+		this.requireRoot("pacing policy");
+		pacingPolicy = pp;
+		return this;
+	}
+
+	//Converts a frequency to a period in nanoseconds. 0 Hz means no pacing.
+	static long periodOf(double hz){
+		if(hz < 0 || Double.isNaN(hz)){
+			throw new PipelineBuilderException("Frequency must not be negative, got " + hz + ".");
+		}
+		return hz == 0 ? 0 : Math.max(1, Math.round(1e9 / hz));
+	}
+
+	/**
+	Sets the node capacity.
+	The node capacity is the number of generations that a ring buffer or queue node can hold, the window of a reordering node,
+	and the number of items a node feeding workers can hold. <br>
+	Ring buffer nodes round the capacity up to the next power of two. The capacity applies to nodes created by later addThreads calls.
+	@param capacity the node capacity
+	@throws PipelineBuilderException if capacity is not positive.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setNodeCapacity(int capacity){
+		if(capacity <= 0){
+			throw new PipelineBuilderException("Node capacity must be positive, got " + capacity + ".");
+		}
+		nodeCapacity = capacity;
+		return this;
+	}
+
+	/**
+	Sets the drop policy.
+	The drop policy decides what queue nodes do with frames that arrive while they are full. The default is DropPolicy.DROP_OLDEST. <br>
+	It applies to nodes created by later addThreads calls.
+	@param dp the drop policy
+	@throws NullPointerException if dp is null.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setDropPolicy(DropPolicy dp){
+		if(dp == null){
+			throw new NullPointerException("Drop policy was null.");
+		}
+		dropPolicy = dp;
+		return this;
+	}
+
+	/**
+	Sets the stall timeout, in milliseconds.
+	The stall timeout is the longest a single call to a function may take before the pipeline's watchdog reports it as stalled,
+	for example because it is stuck reading from a camera. 0, the default, means calls are not watched. <br>
+	Each stall is reported once, as a StallException passed to the stalled thread's uncaughtExceptionHandler. Its stack trace shows where the function is stuck. <br>
+	The timeout applies to steps added by later addThreads and addWorkers calls, so different steps can have different timeouts.
+	@param ms the stall timeout
+	@throws PipelineBuilderException if ms is negative.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setStallTimeout(long ms){
+		if(ms < 0){
+			throw new PipelineBuilderException("Stall timeout must not be negative, got " + ms + ".");
+		}
+		stallTimeout = ms * 1_000_000L;
+		return this;
+	}
+
+	/**
+	Sets the stall action.
+	The stall action decides what the watchdog does with a thread it has reported as stalled. The default is StallAction.REPORT. <br>
+	It applies to steps added by later addThreads and addWorkers calls.
+	@param sa the stall action
+	@throws NullPointerException if sa is null.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setStallAction(StallAction sa){
+		if(sa == null){
+			throw new NullPointerException("Stall action was null.");
+		}
+		stallAction = sa;
+		return this;
+	}
+
+	/**
+	Sets the maximum frame age, in milliseconds.
+	The first step of the pipeline records when it starts each frame. A later step drops any item whose frame is older than the maximum age by the time
+	the step is about to process it, instead of passing it to its function, so under load the pipeline works on recent frames rather than falling further behind. <br>
+	0, the default, means items are processed however old they are. Dropped items are counted in WorkerMetrics.expiredFrames. <br>
+	The maximum age applies to steps added by later addThreads and addWorkers calls, so different steps can have different deadlines.
+	@param ms the maximum frame age
+	@throws PipelineBuilderException if ms is negative.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setMaxFrameAge(long ms){
+		if(ms < 0){
+			throw new PipelineBuilderException("Maximum frame age must not be negative, got " + ms + ".");
+		}
+		maxFrameAge = ms * 1_000_000L;
+		return this;
+	}
+
+	/**
+	Sets the execution mode.
+	The execution mode decides what kind of threads the pipeline's functions run on. The default is ExecutionMode.PLATFORM.
+	@param mode the execution mode
+	@throws NullPointerException if mode is null.
+	@throws PipelineBuilderException if mode is ExecutionMode.VIRTUAL and virtual threads are not available in this JVM, or this builder is a branch.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setExecutionMode(ExecutionMode mode){
+		if(mode == null){
+			throw new NullPointerException("Execution mode was null.");
+		}
+		this.requireRoot("execution mode");
+		if(mode.isVirtual() && !ExecutionMode.virtualThreadsAvailable()){
+			throw new PipelineBuilderException("Virtual threads are not available in this JVM. They require Java 21 or later.");
+		}
+		executionMode = mode;
+		return this;
+	}
+
+	/**
+	Sets whether build fuses adjacent steps which could run on one thread. <br>
+	Two steps are fused when each has one thread, added with addThreads, and the node between them is a blocking node, which only hands each value over.
+	The fused steps run on one thread, which calls their functions one after another, so each frame skips the hand-off and the thread wake-up between them.
+	Steps are not fused across any other node behavior, across a node that a branch starts from or is joined into,
+	or when their uncaughtExceptionHandlers, stall timeouts, stall actions or maximum frame ages differ. Batch steps, workers and flow adapters are never fused. <br>
+	Fusing trades overlap for latency: fused steps no longer work on different frames at the same time, so it suits chains of short steps best. <br>
+	Pipelines are written the same way either way. In the built pipeline's metrics, a fused group of steps shows up as one thread with the number of its first step,
+	and the nodes between fused steps are left out. The default is not to fuse.
+	@param fuse whether to fuse steps.
+	@throws PipelineBuilderException if this builder is a branch.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder setStageFusion(boolean fuse){
+		this.requireRoot("stage fusion");
+		fuseStages = fuse;
+		return this;
+	}
+
+	/**
+	Sets what is done with each value of the given type which the pipeline throws away, rather than passing it on to a function. <br>
+	Values are thrown away when a node drops them under its usual rules, when they reach a reordering node after their frame has been released,
+	when their frame is older than the maximum frame age, when the result of a stalled call is thrown away, when a thread is interrupted while holding them,
+	and when they are still in a node, or buffered by a FlowSource or FlowSink, once the pipeline has stopped. <br>
+	This lets a pipeline carry values which must be given back, such as frames from a pool, without losing one each time a frame is dropped. <br>
+	The action applies to the values passed between steps whose declared type is exactly type. By default, thrown away values are simply forgotten. <br>
+	A value handed to several threads, such as every thread of a step added with addThreads, is discarded by each of them that throws it away,
+	so values which must be given back exactly once should only be passed to one thread. A value passed to branches is shared with them by the share action set for its type. <br>
+	The action may run on any of the pipeline's threads, possibly while a node is locked, so it should be quick and must not use the pipeline.
+	@param type A class object representing the type of the values.
+	@param action The action to run on each thrown away value.
+	@throws NullPointerException if type or action is null.
+	@throws PipelineBuilderException if this builder is a branch.
+	@return this, for method call chaining.
+	*/
+	public <T> PipelineBuilder setDiscardAction(Class<T> type, Consumer<? super T> action){
+		if(type == null || action == null){
+			throw new NullPointerException("Type and discard action must not be null.");
+		}
+		this.requireRoot("discard actions");
+		discardActions.put(type, action);
+		return this;
+	}
+
+	/**
+	Sets what is done to give one more holder its own share of a value of the given type, such as taking another reference to a pooled frame. <br>
+	When the output of a step also goes to branches, each node reading it holds the value separately, so the action runs once for each node after the first,
+	before the value is handed to any of them. Each node then passes on or discards its own share. A FlowSink likewise shares each value once for each subscriber after the first. <br>
+	A step whose output type has a discard action cannot be branched from unless its type also has a share action,
+	since otherwise the value would be discarded once for each branch. By default, values are not shared, and handed to every branch as they are.
+	@param type A class object representing the type of the values.
+	@param action The action to run on a value for each additional holder.
+	@throws NullPointerException if type or action is null.
+	@throws PipelineBuilderException if this builder is a branch.
+	@return this, for method call chaining.
+	*/
+	public <T> PipelineBuilder setShareAction(Class<T> type, Consumer<? super T> action){
+		if(type == null || action == null){
+			throw new NullPointerException("Type and share action must not be null.");
+		}
+		this.requireRoot("share actions");
+		shareActions.put(type, action);
+		return this;
+	}
+
+	//The pace and threads of the whole pipeline are set on the builder it is built from.
+	private void requireRoot(String setting){
+		if(parent != null){
+			throw new PipelineBuilderException("Cannot set the " + setting + " of a branch. Set it on the builder the pipeline is built from.");
+		}
+	}
+
+	/**
+	Starts a branch which reads the output of the last step added to this builder, through a node with the given behavior. <br>
+	The returned builder is the branch. Its first step must take the output type of this builder's last step,
+	and it starts out with this builder's default uncaughtExceptionHandler, node behavior, node capacity and drop policy. <br>
+	The branch's steps run alongside the steps added to this builder afterwards. Each branch reading a step has a node of its own. <br>
+	A branch which is closed rather than joined must read through a node which never makes its producer wait, NodeBehavior.REPLACING,
+	or NodeBehavior.QUEUE with a drop policy other than DropPolicy.BLOCK, so that a slow branch, such as one writing to disk, never holds up the rest of the pipeline.
+	A joined branch may use any behavior, since the step it is joined into waits for it anyway. <br>
+	The branch must be closed, or joined back into this builder, before the pipeline is built.
+	@param nb The node behavior to use for the node between this builder's last step and the branch's first step.
+	@throws NullPointerException if nb is null.
+	@throws PipelineBuilderException if no threads have been added yet, or the builder is closed.
+	@return the branch.
+	*/
+	public PipelineBuilder branch(NodeBehavior nb){
+		if(nb == null){
+			throw new NullPointerException("Node behavior was null.");
+		}
+		if(stages.isEmpty()){
+			throw new PipelineBuilderException("Cannot branch before any threads have been added.");
+		}
+		if(this.isClosed()){
+			throw new PipelineBuilderException("Cannot branch from a closed builder.");
+		}
+		if(joinIndex >= 0){
+			throw new PipelineBuilderException("Cannot branch from a branch which has been joined.");
+		}
+		PipelineBuilder answer = new PipelineBuilder(this, nb);
+		branches.add(answer);
+		return answer;
+	}
+
+	/**
+	Starts a branch which reads the output of the last step added to this builder, through a node with the default behavior. <br>
+	See branch(NodeBehavior).
+	@throws PipelineBuilderException if no threads have been added yet, or the builder is closed.
+	@return the branch.
+	*/
+	public PipelineBuilder branch(){
+		return this.branch(defaultBehavior);
+	}
+
+	/**
+	Joins branches of this builder back into it. <br>
+	The last steps of the branches deposit into the same node as the last step added to this builder, so the next step added to this builder reads from all of them.
+	That node uses the node behavior given for this builder's last step. Each generation holds one value from each thread of the joined steps.
+	Use NodeBehavior.REORDERING to put together the values the branches produced from the same frame. <br>
+	Once joined, no more threads can be added to a branch.
+	@param joined The branches to join. Each must have been returned by this builder's branch method.
+	@throws PipelineBuilderException if a branch did not come from this builder, has no threads, is closed or already joined,
+			or its output type does not match the output type of this builder's last step, or if this builder is closed.
+	@return this, for method call chaining.
+	*/
+	public PipelineBuilder join(PipelineBuilder... joined){
+		if(this.isClosed()){
+			throw new PipelineBuilderException("Cannot join branches into a closed builder.");
+		}
+		for(PipelineBuilder b : joined){
+			if(b.parent != this){
+				throw new PipelineBuilderException("Can only join branches of this builder.");
+			}
+			if(b.stages.isEmpty()){
+				throw new PipelineBuilderException("Cannot join a branch without threads.");
+			}
+			if(b.isClosed()){
+				throw new PipelineBuilderException("Cannot join a closed branch.");
+			}
+			if(b.joinIndex >= 0){
+				throw new PipelineBuilderException("Branch has already been joined.");
+			}
+			if(!b.nextType.equals(nextType)){
+				throw new PipelineBuilderException("Branch output type did not match last output type: Expected " + nextType.toString() + ", got " + b.nextType.toString() + ".");
+			}
+		}
+		for(PipelineBuilder b : joined){
+			b.joinIndex = stages.size() - 1;
+		}
 		return this;
 	}
 
@@ -166,17 +690,165 @@ public class PipelineBuilder{
 	}
 
 	/**
-	Builds the pipeline and returns it.
+	Builds the pipeline and returns it. <br>
+	Each call builds a new pipeline with its own threads and nodes, so a builder can be used to build several pipelines. <br>
+	Stages and nodes are numbered with this builder's steps first, then each branch's in the order the branches were started.
+	@throws PipelineBuilderException if the builder is not closed, one of its branches is neither closed nor joined, a closed branch reads through a node which can block,
+			the builder is a branch, a step whose output type has a discard action but no share action is branched from,
+			or an elastic step is followed by a distributed step or a branch.
 	@return the pipeline.
 	*/
 	public Pipeline build(){
+		if(parent != null){
+			throw new PipelineBuilderException("Cannot build a branch. Build the builder the branch came from.");
+		}
 		if(!this.isClosed()){
 			throw new PipelineBuilderException("Cannot build a pipeline if builder is not closed.");
 		}
+		this.checkBranchesFinished();
+		//The types of connected stages were checked as they were added, so each node carries the output type of the stages before it and the input type of the stages after it.
+		//Every node is created before any runnable, since a step's output may go to a branch started from it, or to a step a branch was joined into.
+		Map<Stage<?, ?>, Node<?>> outputNodes = new IdentityHashMap<Stage<?, ?>, Node<?>>();
+		Map<PipelineBuilder, Node<?>> branchNodes = new IdentityHashMap<PipelineBuilder, Node<?>>();
+		List<Node<?>> nodes = new ArrayList<Node<?>>();
+		this.createNodes(outputNodes, branchNodes, nodes);
+		List<PipelineRunnable<?, ?>> runnables = new ArrayList<PipelineRunnable<?, ?>>();
+		FramePacer pacer = new FramePacer(framePeriod, pacingPolicy);
+		FrameClock clock = new FrameClock();
+		this.createRunnables(null, 0, outputNodes, branchNodes, runnables, pacer, clock);
 		List<Thread> threads = new LinkedList<Thread>();
-		for(Runnable r : runnables){
-			threads.add(new Thread(r));
+		Semaphore permits = executionMode.newPermits();
+		for(PipelineRunnable<?, ?> r : runnables){
+			r.setExecutionPermits(permits);
+			threads.add(executionMode.newThread(r));
+		}
+		return new SimplePipeline(threads, runnables, nodes, pacer, executionMode);
+	}
+
+	/**
+	Builds the pipeline and returns it as a ReconfigurablePipeline, which can later be replaced by a pipeline built from another builder while it runs.
+	@throws PipelineBuilderException if the builder cannot be built. See build.
+	@return the pipeline.
+	*/
+	public ReconfigurablePipeline buildReconfigurable(){
+		return new SwappingPipeline(this.build());
+	}
+
+	private void checkBranchesFinished(){
+		for(PipelineBuilder b : branches){
+			if(!b.isClosed() && b.joinIndex < 0){
+				throw new PipelineBuilderException("Cannot build a pipeline with a branch which is neither closed nor joined.");
+			}
+			if(b.joinIndex < 0 && !b.inputNeverBlocks()){
+				throw new PipelineBuilderException("A branch which is not joined must read through a node which never blocks: "
+					+ "NodeBehavior.REPLACING, or NodeBehavior.QUEUE with a drop policy other than DropPolicy.BLOCK. Got " + b.inputBehavior + ".");
+			}
+			b.checkBranchesFinished();
+		}
+	}
+
+	//Whether this branch's input node never makes the step it reads from wait.
+	private boolean inputNeverBlocks(){
+		return inputBehavior == NodeBehavior.REPLACING || (inputBehavior == NodeBehavior.QUEUE && inputDropPolicy != DropPolicy.BLOCK);
+	}
+
+	//Creates the node between each of this builder's steps and the next, then the input node of each branch followed by the branch's own nodes.
+	private void createNodes(Map<Stage<?, ?>, Node<?>> outputNodes, Map<PipelineBuilder, Node<?>> branchNodes, List<Node<?>> nodes){
+		for(int i = 0; i + 1 < stages.size(); i++){
+			if(this.fusesWithNext(i)){
+				continue;
+			}
+			Node<?> n = stages.get(i).createOutputNode(stages.get(i + 1).isDistributed());
+			this.root().giveDiscardAction(n, stages.get(i).outputType());
+			outputNodes.put(stages.get(i), n);
+			nodes.add(n);
+		}
+		for(PipelineBuilder b : branches){
+			Node<?> n = Stage.createNode(b.inputBehavior, b.inputCapacity, b.inputDropPolicy, b.stages.get(0).isDistributed());
+			this.root().giveDiscardAction(n, b.stages.get(0).inputType());
+			branchNodes.put(b, n);
+			nodes.add(n);
+			b.createNodes(outputNodes, branchNodes, nodes);
+		}
+	}
+
+	//Creates the runnables for this builder's steps, then for each branch's, numbering stages from firstStage. Returns the next unused stage number.
+	private int createRunnables(Node<?> inputNode, int firstStage, Map<Stage<?, ?>, Node<?>> outputNodes, Map<PipelineBuilder, Node<?>> branchNodes, List<PipelineRunnable<?, ?>> runnables, FramePacer pacer, FrameClock clock){
+		int stageIndex = firstStage;
+		for(int i = 0; i < stages.size(); i++){
+			//Steps i to last run as one, depositing into the last one's output node.
+			int last = i;
+			while(this.fusesWithNext(last)){
+				last++;
+			}
+			List<Node<?>> targets = new ArrayList<Node<?>>();
+			Node<?> next = this.nextNode(last, outputNodes);
+			if(next != null){
+				targets.add(next);
+			}
+			for(PipelineBuilder b : branches){
+				if(b.forkIndex == last){
+					targets.add(branchNodes.get(b));
+				}
+			}
+			Node<?> outputNode = targets.isEmpty() ? null : targets.size() == 1 ? targets.get(0) : this.fanOut(targets, stages.get(last).outputType());
+			Stage<?, ?> stage = last == i ? stages.get(i) : Stage.fuse(stages.subList(i, last + 1), stageIndex);
+			runnables.addAll(stage.createRunnables(inputNode, outputNode, stageIndex, pacer, clock, this.root().discardActions, this.root().shareActions));
+			stageIndex += last - i + 1;
+			inputNode = next;
+			i = last;
+		}
+		for(PipelineBuilder b : branches){
+			stageIndex = b.createRunnables(branchNodes.get(b), stageIndex, outputNodes, branchNodes, runnables, pacer, clock);
+		}
+		return stageIndex;
+	}
+
+	//Returns whether step i and the step after it run as one. See setStageFusion.
+	private boolean fusesWithNext(int i){
+		if(!this.root().fuseStages || i + 1 >= stages.size()){
+			return false;
+		}
+		for(PipelineBuilder b : branches){
+			if(b.forkIndex == i || b.joinIndex == i){
+				return false;
+			}
+		}
+		return stages.get(i).canFuseWith(stages.get(i + 1));
+	}
+
+	//Gives a node carrying values of the given type the discard action set for that type.
+	@SuppressWarnings("unchecked")
+	private <T> void giveDiscardAction(Node<?> n, Class<T> type){
+		((Node<T>)n).setDiscardAction(Stage.actionFor(discardActions, type));
+	}
+
+	private PipelineBuilder root(){
+		return parent == null ? this : parent.root();
+	}
+
+	//Returns the node read by whatever follows step i: the next step's input node, or, for the last step of a joined branch, the node the step it was joined to deposits into.
+	//Returns null if nothing follows step i.
+	private Node<?> nextNode(int i, Map<Stage<?, ?>, Node<?>> outputNodes){
+		if(i + 1 < stages.size()){
+			return outputNodes.get(stages.get(i));
+		}
+		if(joinIndex >= 0){
+			return parent.nextNode(joinIndex, outputNodes);
+		}
+		return null;
+	}
+
+	//Creates the node which passes the output of a step of the given type on to every target. Every target carries that type.
+	@SuppressWarnings("unchecked")
+	private <T> Node<?> fanOut(List<Node<?>> targets, Class<T> type){
+		Map<Class<?>, Consumer<?>> discards = this.root().discardActions;
+		Map<Class<?>, Consumer<?>> shares = this.root().shareActions;
+		if(discards.containsKey(type) && !shares.containsKey(type)){
+			throw new PipelineBuilderException("Cannot branch values of type " + type.getName() + ", which have a discard action but no share action.");
 		}
-		return new SimplePipeline(threads);
+		FanOutNode<T> answer = new FanOutNode<T>((List<Node<T>>)(List<?>)targets, Stage.actionFor(shares, type));
+		answer.setDiscardAction(Stage.actionFor(discards, type));
+		return answer;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,234 @@
+package concurrency;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.file.*;
+import java.util.*;
+import org.json.*;
+
+/**
+Class which reads pipeline descriptions written in JSON, so that a pipeline's steps, thread counts and node behaviors can be changed without recompiling. <br>
+A description is a JSON object with a "stages" array holding the pipeline's steps, in order. It may also set "frequency" (in frames per second) or
+"framerate" (in milliseconds), "pacingPolicy", "executionMode" ("PLATFORM", "VIRTUAL" or "POOLED", with "poolSize"), "fuseStages" (true or false), and any of the step settings below,
+which then apply to every step. Enum values are written by name. <br>
+Each step is an object with these keys: <br>
+"class": the fully qualified name of a PipelineFunction. It needs a public constructor taking no arguments or, if the step has a "config" key,
+a single JSONObject, which is passed the value of "config". <br>
+"input" and "output": the fully qualified names of the function's input and output types. Void may be written as "Void". <br>
+"threads": the number of threads, each running its own instance of the function, or "workers": the number of workers sharing one instance.
+With neither, the step has one thread. "maxWorkers", with an optional "minWorkers" defaulting to 1, makes the step elastic instead,
+as with addElasticWorkers, in which case "nodeBehavior" is ignored. <br>
+"nodeBehavior": optional, the behavior of the node after the step. <br>
+"nodeCapacity", "dropPolicy", "maxFrameAge", "stallTimeout" and "stallAction": optional, and as with the PipelineBuilder setters, they apply from this step on. <br>
+"branches": optional, an array of branches started from the step. Each is an object with its own "stages" array, an optional "nodeBehavior" for the node
+between the step and the branch, and a "name" if it is joined later. <br>
+"join": optional, an array of names of branches started earlier in the same "stages" array, which are joined before this step is added. <br>
+The types of the functions cannot be checked against "input" and "output", so a mismatch shows up as a ClassCastException when the pipeline runs. <br>
+concurrency/sample_pipeline.json is an example, used by PipelineConfigTest.
+*/
+public final class PipelineConfig {
+	private PipelineConfig(){}
+
+	/**
+	Reads a pipeline description from a file and returns a builder for it.
+	@param path the path of the file.
+	@param ueh the uncaughtExceptionHandler used for every thread in the pipeline.
+	@throws IOException if the file cannot be read.
+	@throws PipelineBuilderException if the description is malformed, or one of its functions cannot be created.
+	@return a builder for the described pipeline.
+	*/
+	public static PipelineBuilder fromFile(String path, Thread.UncaughtExceptionHandler ueh) throws IOException {
+		String content = Files.readString(Path.of(path));
+		try {
+			return fromJSON(new JSONObject(content), ueh);
+		} catch(JSONException e){
+			throw new PipelineBuilderException("Pipeline description " + path + " is not valid JSON.", e);
+		}
+	}
+
+	/**
+	Returns a builder for the pipeline described by the given JSON object. <br>
+	Every function in the description is created by this call. The returned builder is closed, so it can be built straight away.
+	@param description the pipeline description.
+	@param ueh the uncaughtExceptionHandler used for every thread in the pipeline.
+	@throws PipelineBuilderException if the description is malformed, or one of its functions cannot be created.
+	@return a builder for the described pipeline.
+	*/
+	public static PipelineBuilder fromJSON(JSONObject description, Thread.UncaughtExceptionHandler ueh){
+		PipelineBuilder builder = Pipeline.builder();
+		builder.setDefaultUncaughtExceptionHandler(ueh);
+		configure(builder, description);
+		try {
+			addStages(builder, description.getJSONArray("stages"));
+		} catch(JSONException | IllegalArgumentException e){
+			throw new PipelineBuilderException("Malformed pipeline description: " + e.getMessage(), e);
+		}
+		if(!builder.isClosed()){
+			throw new PipelineBuilderException("Malformed pipeline description: the last step's output type must be Void.");
+		}
+		return builder;
+	}
+
+	/**
+	Applies the pipeline-wide settings of a description to a builder, leaving out its "stages". <br>
+	This lets a program which adds its own steps still take its settings from a description. Settings missing from the description are left as they are.
+	@param builder the builder to configure. It should not have any steps yet, or the step settings will not apply to them.
+	@param description the pipeline description. It need not have a "stages" array.
+	@throws PipelineBuilderException if one of the settings is malformed.
+	@return the builder.
+	*/
+	public static PipelineBuilder configure(PipelineBuilder builder, JSONObject description){
+		try {
+			if(description.has("framerate")){
+				builder.setFramerate(description.getInt("framerate"));
+			}
+			if(description.has("frequency")){
+				builder.setFrequency(description.getDouble("frequency"));
+			}
+			if(description.has("pacingPolicy")){
+				builder.setPacingPolicy(PacingPolicy.valueOf(description.getString("pacingPolicy")));
+			}
+			if(description.has("executionMode")){
+				builder.setExecutionMode(executionMode(description));
+			}
+			if(description.has("fuseStages")){
+				builder.setStageFusion(description.getBoolean("fuseStages"));
+			}
+			applySettings(builder, description);
+		} catch(JSONException | IllegalArgumentException e){
+			throw new PipelineBuilderException("Malformed pipeline description: " + e.getMessage(), e);
+		}
+		return builder;
+	}
+
+	private static ExecutionMode executionMode(JSONObject description){
+		String mode = description.getString("executionMode");
+		if(mode.equals("PLATFORM")){
+			return ExecutionMode.PLATFORM;
+		} else if(mode.equals("VIRTUAL")){
+			return ExecutionMode.VIRTUAL;
+		} else if(mode.equals("POOLED")){
+			return ExecutionMode.pooled(description.getInt("poolSize"));
+		}
+		throw new PipelineBuilderException("Unknown execution mode " + mode + ".");
+	}
+
+	//Applies the settings which the builder applies to every step added after them.
+	private static void applySettings(PipelineBuilder builder, JSONObject o){
+		if(o.has("nodeCapacity")){
+			builder.setNodeCapacity(o.getInt("nodeCapacity"));
+		}
+		if(o.has("dropPolicy")){
+			builder.setDropPolicy(DropPolicy.valueOf(o.getString("dropPolicy")));
+		}
+		if(o.has("maxFrameAge")){
+			builder.setMaxFrameAge(o.getLong("maxFrameAge"));
+		}
+		if(o.has("stallTimeout")){
+			builder.setStallTimeout(o.getLong("stallTimeout"));
+		}
+		if(o.has("stallAction")){
+			builder.setStallAction(StallAction.valueOf(o.getString("stallAction")));
+		}
+	}
+
+	private static void addStages(PipelineBuilder builder, JSONArray stages){
+		//Branches started from these steps, by name, for later steps to join.
+		Map<String, PipelineBuilder> named = new HashMap<String, PipelineBuilder>();
+		for(int i = 0; i < stages.length(); i++){
+			JSONObject step = stages.getJSONObject(i);
+			applySettings(builder, step);
+			if(step.has("join")){
+				JSONArray names = step.getJSONArray("join");
+				PipelineBuilder[] joined = new PipelineBuilder[names.length()];
+				for(int j = 0; j < names.length(); j++){
+					joined[j] = named.get(names.getString(j));
+					if(joined[j] == null){
+						throw new PipelineBuilderException("No branch named " + names.getString(j) + " was started before step " + i + ".");
+					}
+				}
+				builder.join(joined);
+			}
+			addStep(builder, step, type(step.getString("input")), type(step.getString("output")));
+			if(step.has("branches")){
+				JSONArray branches = step.getJSONArray("branches");
+				for(int j = 0; j < branches.length(); j++){
+					JSONObject b = branches.getJSONObject(j);
+					PipelineBuilder branch = b.has("nodeBehavior") ? builder.branch(NodeBehavior.valueOf(b.getString("nodeBehavior"))) : builder.branch();
+					addStages(branch, b.getJSONArray("stages"));
+					if(b.has("name")){
+						named.put(b.getString("name"), branch);
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T, V> void addStep(PipelineBuilder builder, JSONObject step, Class<T> input, Class<V> output){
+		NodeBehavior nb = step.has("nodeBehavior") ? NodeBehavior.valueOf(step.getString("nodeBehavior")) : null;
+		if(step.has("maxWorkers")){
+			PipelineFunction<T, V> function = (PipelineFunction<T, V>)newFunction(step);
+			builder.addElasticWorkers(input, output, step.optInt("minWorkers", 1), step.getInt("maxWorkers"), function);
+			return;
+		}
+		if(step.has("workers")){
+			PipelineFunction<T, V> function = (PipelineFunction<T, V>)newFunction(step);
+			if(nb == null){
+				builder.addWorkers(input, output, step.getInt("workers"), function);
+			} else {
+				builder.addWorkers(input, output, nb, step.getInt("workers"), function);
+			}
+			return;
+		}
+		int threads = step.optInt("threads", 1);
+		if(threads <= 0){
+			throw new PipelineBuilderException("Number of threads must be positive, got " + threads + ".");
+		}
+		PipelineFunction<T, V>[] functions = (PipelineFunction<T, V>[])new PipelineFunction<?, ?>[threads];
+		for(int i = 0; i < threads; i++){
+			functions[i] = (PipelineFunction<T, V>)newFunction(step);
+		}
+		if(nb == null){
+			builder.addThreads(input, output, functions);
+		} else {
+			builder.addThreads(input, output, nb, functions);
+		}
+	}
+
+	private static PipelineFunction<?, ?> newFunction(JSONObject step){
+		String name = step.getString("class");
+		Class<?> c;
+		try {
+			c = Class.forName(name);
+		} catch(ClassNotFoundException e){
+			throw new PipelineBuilderException("Class " + name + " not found. You may have forgotten to use the class' fully qualified name.", e);
+		}
+		if(!PipelineFunction.class.isAssignableFrom(c)){
+			throw new PipelineBuilderException("Class " + name + " is not a PipelineFunction.");
+		}
+		try {
+			if(step.has("config")){
+				return (PipelineFunction<?, ?>)c.getConstructor(JSONObject.class).newInstance(step.getJSONObject("config"));
+			}
+			return (PipelineFunction<?, ?>)c.getConstructor().newInstance();
+		} catch(NoSuchMethodException e){
+			throw new PipelineBuilderException("Class " + name + " does not have a public constructor taking " + (step.has("config") ? "a JSONObject." : "no arguments."), e);
+		} catch(InvocationTargetException e){
+			throw new PipelineBuilderException("Constructor of " + name + " threw an exception.", e.getCause());
+		} catch(ReflectiveOperationException e){
+			throw new PipelineBuilderException("Could not create " + name + ".", e);
+		}
+	}
+
+	private static Class<?> type(String name){
+		if(name.equals("Void")){
+			return Void.class;
+		}
+		try {
+			return Class.forName(name);
+		} catch(ClassNotFoundException e){
+			throw new PipelineBuilderException("Class " + name + " not found. You may have forgotten to use the class' fully qualified name.", e);
+		}
+	}
+}
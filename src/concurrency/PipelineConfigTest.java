@@ -0,0 +1,88 @@
+package concurrency;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+//Builds the pipeline in sample_pipeline.json, and checks that every frame comes out of it once and in order. Run from the src directory.
+public class PipelineConfigTest{
+	static final String SAMPLE = "concurrency/sample_pipeline.json";
+	static final List<Long> collected = Collections.synchronizedList(new ArrayList<Long>());
+	static int mistakes = 0;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		PipelineBuilder builder = PipelineConfig.fromFile(SAMPLE, logAndContinue);
+		Pipeline p = builder.build();
+		p.start();
+		boolean finished = p.awaitTermination(10, TimeUnit.SECONDS);
+		List<Long> expected = new ArrayList<Long>();
+		for(long i = 0; i < 50; i++){
+			expected.add(i * i);
+		}
+		if(!finished || !collected.equals(expected)){
+			mistakes++;
+		}
+		System.out.println("finished " + finished + ", collected " + collected.size() + " squares in order " + collected.equals(expected));
+
+		//The settings alone can be applied to a builder which adds its own steps.
+		PipelineBuilder settings = PipelineConfig.configure(Pipeline.builder(), new JSONObject().put("nodeCapacity", 2).put("dropPolicy", "DROP_OLDEST"));
+		if(settings.isClosed()){
+			mistakes++;
+		}
+		boolean failed = false;
+		try {
+			PipelineConfig.configure(Pipeline.builder(), new JSONObject().put("dropPolicy", "SOMETIMES"));
+		} catch(PipelineBuilderException e){
+			failed = true;
+			System.out.println("malformed setting: " + e.getMessage());
+		}
+		if(!failed){
+			mistakes++;
+		}
+		System.out.println(mistakes + " mistakes");
+	}
+
+	//Produces the numbers from 0, and then ends the stream once "frames" numbers have been produced.
+	public static class Count implements PipelineFunction<Void, Long>{
+		private final long frames;
+		private long next = 0;
+
+		public Count(JSONObject config){
+			frames = config.getLong("frames");
+		}
+
+		@Override
+		public Long execute(Collection<Void> t){
+			if(next == frames){
+				throw PipelineFunction.endOfStream();
+			}
+			return next++;
+		}
+	}
+
+	//Squares its input, taking longer for some inputs than others so that the workers finish out of order.
+	public static class Square implements PipelineFunction<Long, Long>{
+		@Override
+		public Long execute(Collection<Long> t){
+			long n = t.iterator().next();
+			try {
+				Thread.sleep(n % 3);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return n * n;
+		}
+	}
+
+	public static class Collect implements PipelineFunction<Long, Void>{
+		@Override
+		public Void execute(Collection<Long> t){
+			collected.add(t.iterator().next());
+			return null;
+		}
+	}
+}
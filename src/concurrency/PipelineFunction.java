@@ -14,8 +14,30 @@ public interface PipelineFunction<T, V>{
 	If a PipelineFunction with a non-Void output type returns null, the program will crash. <br>
 	Additionally, the function MUST not modify any values in the input collection. <br>
 	If it does so, it may affect the input values for the other threads. <br>
+	The node the collection came from may reuse it for a later frame once the function returns, so copy it if the values are needed afterwards. <br>
 	Since the function does not declare any checked exceptions, the function body cannot throw any checked exceptions. <br>
 	If you really want to throw a checked exception, you can just wrap it in an unchecked exceptinon. <br>
 	*/
 	V execute(Collection<T> t);
+
+	/**
+	Returns the passed function, so that a lambda taking a single value can be passed wherever a PipelineFunction is expected. <br>
+	For example, addThreads(Mat.class, Mat.class, PipelineFunction.single(m -> process(m))).
+	See SingleValueFunction for where it can be used.
+	@param f the function.
+	@return f.
+	*/
+	static <T, V> PipelineFunction<T, V> single(SingleValueFunction<T, V> f){
+		return f;
+	}
+
+	/**
+	Returns an exception which a function in the first step of a pipeline throws when it has nothing more to produce, such as at the end of a video file. <br>
+	The thread running the function stops, and once every thread of the first step has stopped, the pipeline drains and terminates as if it had been shut down. <br>
+	Thrown from any other step, its effect is undefined.
+	@return an exception to throw.
+	*/
+	static RuntimeException endOfStream(){
+		return new EndOfStream(null);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package concurrency;
+
+import java.util.*;
+
+/**
+Snapshot of the metrics for a whole pipeline, returned by Pipeline.metrics(). <br>
+The snapshot does not change after it is created. Call Pipeline.metrics() again for up to date values.
+*/
+public final class PipelineMetrics {
+	private final List<WorkerMetrics> workers;
+	private final List<NodeMetrics> nodes;
+	private final List<ElasticMetrics> elastic;
+
+	PipelineMetrics(List<WorkerMetrics> workers, List<NodeMetrics> nodes, List<ElasticMetrics> elastic){
+		this.workers = List.copyOf(workers);
+		this.nodes = List.copyOf(nodes);
+		this.elastic = List.copyOf(elastic);
+	}
+
+	/**
+	Returns the metrics for every thread in the pipeline, ordered by stage and then by worker.
+	@return the metrics for every thread in the pipeline.
+	*/
+	public List<WorkerMetrics> workers(){
+		return workers;
+	}
+
+	/**
+	Returns the metrics for every thread in the given stage.
+	@param stage the index of the stage.
+	@return the metrics for every thread in the given stage, or an empty list if there is no such stage.
+	*/
+	public List<WorkerMetrics> stage(int stage){
+		List<WorkerMetrics> answer = new ArrayList<WorkerMetrics>();
+		for(WorkerMetrics wm : workers){
+			if(wm.stage() == stage){
+				answer.add(wm);
+			}
+		}
+		return Collections.unmodifiableList(answer);
+	}
+
+	/**
+	Returns the metrics for every node in the pipeline, in pipeline order.
+	@return the metrics for every node in the pipeline.
+	*/
+	public List<NodeMetrics> nodes(){
+		return nodes;
+	}
+
+	/**
+	Returns the scaling decisions made for every elastic step in the pipeline, in pipeline order.
+	@return the metrics for every elastic step, or an empty list if there are none.
+	*/
+	public List<ElasticMetrics> elastic(){
+		return elastic;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for(WorkerMetrics wm : workers){
+			sb.append(wm).append(System.lineSeparator());
+		}
+		for(NodeMetrics nm : nodes){
+			sb.append(nm).append(System.lineSeparator());
+		}
+		for(ElasticMetrics em : elastic){
+			sb.append(em).append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+}
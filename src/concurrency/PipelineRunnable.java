@@ -1,22 +1,83 @@
 package concurrency;
 
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 class PipelineRunnable<T, V> implements Runnable {
 	private Node<T> inputNode;
 	private PipelineFunction<T, V> function;
 	private Node<V> outputNode;
 	private Thread.UncaughtExceptionHandler handler;
-	//Hardcoded value
-	//private static final int FRAMERATE = 100;
-	private int framerate;
+	//Paces the first step of the pipeline. Null for every other step, and for unpaced pipelines.
+	private FramePacer pacer;
+	private long nextTick = 0;
+	//Shared by every runnable in a pooled pipeline to limit how many functions execute at once. Null if execution is not limited.
+	private Semaphore executionPermits;
+	private WorkerRecorder recorder;
+	//Names of the spans this runnable records in a FrameTrace, built once so that tracing does not allocate.
+	private final String executeSpan;
+	private final String depositSpan;
+	//Frame sequence number of the item currently being processed.
+	//Runnables in the first step number their outputs themselves. Every other runnable has it set by its input node on withdrawal.
+	private volatile long sequence = -1;
+	//Counter shared by the runnables of a distributed first step, which number their outputs together. Null otherwise.
+	private AtomicLong sharedSequence;
+	//When each frame was started, shared by every runnable in the pipeline. Runnables in the first step record their frames in it.
+	private FrameClock clock;
+	//Items whose frame is older than this, in nanoseconds, are dropped instead of being passed to the function. 0 means no limit.
+	private long maxAge = 0;
+	//What is done with input values and outputs this runnable throws away, rather than processing them or passing them on.
+	private Consumer<? super T> inputDiscard = Node.forget();
+	private Consumer<? super V> outputDiscard = Node.forget();
+	//Set for a batch step, which collects several items before calling its function. Null otherwise.
+	private Batching<T, V> batching;
+	//Frame sequence numbers of the items in the batch being processed.
+	private long[] batchSequences;
+	//Set once the input node has run dry while collecting a batch, so that the runnable exits after processing it.
+	private boolean inputEnded = false;
+	//Set for a worker of an elastic step, which only withdraws while the pool has it active. Null otherwise.
+	private ElasticPool elasticPool;
+	//Set to make a runnable in the first step finish its current frame and exit.
+	private volatile boolean stopping = false;
+	//Run once this runnable exits, however it exits. Null if nothing needs to know.
+	private Runnable exitListener;
+	//Longest a call to the function may take before the watchdog steps in, in nanoseconds, and what it then does. 0 means no limit.
+	private long stallTimeout = 0;
+	private StallAction stallAction = StallAction.REPORT;
+	//The thread currently running this runnable.
+	private volatile Thread thread;
+	//Incremented each time the watchdog replaces the thread running this runnable.
+	//A replaced thread exits as soon as its function returns, leaving the nodes to its replacement.
+	private volatile int incarnation = 0;
+	//Set by the watchdog, together with interrupting the thread, to throw away the frame being processed.
+	//The lock makes setting it and interrupting atomic with respect to the thread checking it, so an interrupt meant for one frame cannot leak into the next.
+	private boolean skipping = false;
+	private final ReentrantLock stallLock = new ReentrantLock();
 
-	PipelineRunnable(Node<T> ii, PipelineFunction<T, V> pf, Node<V> oi, Thread.UncaughtExceptionHandler ueh, int fr){
+	@SuppressWarnings("unchecked")
+	PipelineRunnable(Node<T> ii, PipelineFunction<T, V> pf, Node<V> oi, Thread.UncaughtExceptionHandler ueh, FramePacer fp, int stage, int worker){
+		recorder = new WorkerRecorder(stage, worker, pf);
+		//Fused steps also trace each function by itself, under its own step's number.
+		executeSpan = pf instanceof FusedFunction ? "steps " + stage + "-" + (stage + ((FusedFunction<?, ?>)pf).stageCount() - 1) : "step " + stage;
+		depositSpan = "step " + stage + " deposit";
 		inputNode = ii;
 		function = pf;
 		outputNode = oi;
-		framerate = fr;
+		pacer = fp;
 		handler = ueh;
+		if(pf instanceof Batching){
+			batching = (Batching<T, V>)pf;
+			batchSequences = new long[batching.size()];
+		}
+		//Flow sources and sinks end their streams once every runnable running them has exited.
+		if(pf instanceof FlowSource){
+			((FlowSource<?>)pf).attach();
+		} else if(pf instanceof FlowSink){
+			((FlowSink<?>)pf).attach();
+		}
 		if(ii != null){
 			ii.pingAsConsumer(this);
 		}
@@ -25,30 +86,372 @@ class PipelineRunnable<T, V> implements Runnable {
 		}
 	}
 
+	void setExecutionPermits(Semaphore s){
+		executionPermits = s;
+	}
+
+	WorkerRecorder recorder(){
+		return recorder;
+	}
+
+	long sequence(){
+		return sequence;
+	}
+
+	void setSequence(long s){
+		sequence = s;
+	}
+
+	void setSharedSequence(AtomicLong s){
+		sharedSequence = s;
+	}
+
+	void setFrameClock(FrameClock c){
+		clock = c;
+	}
+
+	void setMaxAge(long nanos){
+		maxAge = nanos;
+	}
+
+	void setDiscardActions(Consumer<? super T> input, Consumer<? super V> output){
+		inputDiscard = input;
+		outputDiscard = output;
+	}
+
+	void setElasticPool(ElasticPool p){
+		elasticPool = p;
+	}
+
+	ElasticPool elasticPool(){
+		return elasticPool;
+	}
+
+	//Returns when the first step started the frame currently being processed, or Long.MIN_VALUE if that is not known.
+	long timestamp(){
+		return clock == null ? Long.MIN_VALUE : clock.timestamp(sequence);
+	}
+
+	void setExitListener(Runnable r){
+		exitListener = r;
+	}
+
+	void setStallTimeout(long nanos, StallAction action){
+		stallTimeout = nanos;
+		stallAction = action;
+	}
+
+	long stallTimeout(){
+		return stallTimeout;
+	}
+
+	StallAction stallAction(){
+		return stallAction;
+	}
+
+	Thread.UncaughtExceptionHandler handler(){
+		return handler;
+	}
+
+	Thread thread(){
+		return thread;
+	}
+
+	//Makes the thread give up on the call to the function which started at executeStart, if it is still in it. Returns whether it was.
+	boolean skip(long executeStart){
+		stallLock.lock();
+		try {
+			if(recorder.executeStart() != executeStart){
+				return false;
+			}
+			skipping = true;
+			thread.interrupt();
+			return true;
+		} finally {
+			stallLock.unlock();
+		}
+	}
+
+	//Abandons the thread if it is still in the call to the function which started at executeStart. Returns whether it was.
+	//The caller must then start a new thread running this runnable.
+	boolean abandon(long executeStart){
+		stallLock.lock();
+		try {
+			if(recorder.executeStart() != executeStart){
+				return false;
+			}
+			incarnation++;
+			thread.interrupt();
+			return true;
+		} finally {
+			stallLock.unlock();
+		}
+	}
+
+	boolean isSource(){
+		return inputNode == null;
+	}
+
+	//Asks a runnable in the first step to stop producing frames. Runnables in later steps stop once their input node runs dry.
+	void stop(){
+		stopping = true;
+		//A flow source may be waiting for its publisher, which could take arbitrarily long.
+		if(function instanceof FlowSource){
+			((FlowSource<?>)function).stop();
+		}
+	}
+
 	public void run(){
+		int current = incarnation;
+		thread = Thread.currentThread();
+		try {
+			this.loop(current);
+		} finally {
+			//An abandoned thread leaves closing up to its replacement.
+			if(current == incarnation){
+				//Closing the output node lets the next step drain it and stop in turn.
+				if(outputNode != null){
+					outputNode.close(this);
+				}
+				if(function instanceof FlowSource){
+					((FlowSource<?>)function).detach();
+				} else if(function instanceof FlowSink){
+					((FlowSink<?>)function).detach();
+				}
+				if(exitListener != null){
+					exitListener.run();
+				}
+			}
+		}
+	}
+
+	private void loop(int current){
+		recorder.started();
+		FrameContext.setCurrent(this);
 		while(true){
+			//An unpaced first step may never wait on anything, so it has to check for interruption itself.
+			if(stopping || Thread.currentThread().isInterrupted()){
+				return;
+			}
 			Collection<T> inputValue;
 			try {
+				//A retired worker waits here, rather than in the node, so that the wait is not counted as blocked withdrawing.
+				if(elasticPool != null){
+					elasticPool.awaitActive(this, recorder.worker());
+				}
+				long withdrawStart = System.nanoTime();
 				inputValue = inputNode != null ? inputNode.withdraw(this) : null;
-				Thread.sleep(framerate);
+				recorder.withdrew(System.nanoTime() - withdrawStart);
+				if(inputNode != null && inputValue == null){
+					//Every producer of the input node has closed, and it has been drained.
+					if(elasticPool != null){
+						elasticPool.ended();
+					}
+					return;
+				}
+				if(inputNode == null){
+					sequence = sharedSequence != null ? sharedSequence.getAndIncrement() : sequence + 1;
+				}
+				if(pacer != null){
+					nextTick = pacer.awaitTick(nextTick, recorder);
+				}
+				if(inputNode == null && clock != null){
+					clock.stamp(sequence, System.nanoTime());
+				}
 			} catch(InterruptedException e){
 				return;
 			}
+			List<Collection<T>> batch = null;
+			if(batching != null){
+				try {
+					batch = this.collectBatch(inputValue);
+				} catch(InterruptedException e){
+					return;
+				}
+				if(batch.isEmpty()){
+					//Every item collected had expired.
+					if(inputEnded){
+						return;
+					}
+					continue;
+				}
+			}
 			V outputValue;
+			List<V> outputValues = null;
+			if(executionPermits != null){
+				try {
+					executionPermits.acquire();
+				} catch(InterruptedException e){
+					this.discardInput(inputValue, batch);
+					return;
+				}
+			}
+			//Checked as late as possible, since waiting for an execution permit ages the frame too.
+			if(batch == null && maxAge > 0 && inputNode != null && clock.isExpired(sequence, maxAge, System.nanoTime())){
+				if(executionPermits != null){
+					executionPermits.release();
+				}
+				recorder.expired();
+				this.discardInput(inputValue, null);
+				continue;
+			}
+			Exception failure = null;
+			long traceStart = FrameTrace.begin();
+			long executeStart = System.nanoTime();
 			try{
-				outputValue = function.execute(inputValue);
+				recorder.executing(executeStart);
+				if(batch == null){
+					outputValue = function.execute(inputValue);
+					recorder.executed(System.nanoTime() - executeStart);
+				} else {
+					outputValue = null;
+					outputValues = batching.executeBatch(batch);
+					recorder.executedBatch(System.nanoTime() - executeStart, batch.size());
+					if(outputNode != null && (outputValues == null || outputValues.size() != batch.size())){
+						throw new IllegalStateException("Batch function returned " + (outputValues == null ? "null" : outputValues.size() + " outputs") + " for " + batch.size() + " items.");
+					}
+				}
 			} catch(Exception e){
-				handler.uncaughtException(Thread.currentThread(), e);
+				outputValue = null;
+				//A batch function which returned the wrong number of outputs still returned them.
+				this.discardOutputs(outputValues, 0);
+				outputValues = null;
+				failure = e;
+			} finally {
+				recorder.idle(executeStart);
+				if(executionPermits != null){
+					executionPermits.release();
+				}
+				FrameTrace.end(executeSpan, traceStart, sequence);
+			}
+			if(this.stalled(current)){
+				//Whatever the function returned or threw after being interrupted is thrown away.
+				this.discardOutput(outputValue);
+				this.discardOutputs(outputValues, 0);
+				if(current != incarnation){
+					return;
+				}
 				continue;
 			}
-			if(outputNode != null){
+			if(failure instanceof EndOfStream){
+				//The first step has nothing more to produce, so the pipeline drains and stops as if it had been shut down.
+				if(failure.getCause() != null){
+					handler.uncaughtException(Thread.currentThread(), failure.getCause());
+				}
+				stopping = true;
+			} else if(failure != null){
+				recorder.failed();
+				handler.uncaughtException(Thread.currentThread(), failure);
+			} else if(outputNode != null){
+				int deposited = 0;
 				try {
-					outputNode.deposit(this, outputValue);
+					long depositStart = System.nanoTime();
+					traceStart = FrameTrace.begin();
+					if(batch == null){
+						outputNode.deposit(this, outputValue);
+						FrameTrace.end(depositSpan, traceStart, sequence);
+					} else {
+						//Each output goes on by itself, under its own item's sequence number.
+						for(int i = 0; i < outputValues.size(); i++){
+							sequence = batchSequences[i];
+							outputNode.deposit(this, outputValues.get(i));
+							deposited = i + 1;
+						}
+						FrameTrace.end(depositSpan, traceStart, sequence);
+					}
+					recorder.deposited(System.nanoTime() - depositStart);
 				} catch(InterruptedException e){
+					//A node which throws has not stored the output, so it is this runnable's to discard, as are the outputs not yet deposited.
+					this.discardOutput(outputValue);
+					this.discardOutputs(outputValues, deposited);
 					return;
 				}
 			}
+			if(inputEnded){
+				return;
+			}
+		}
+	}
+
+	//Collects a batch, starting with first, by withdrawing until the batch is full or the batch step's wait has passed since first arrived.
+	//Items whose frame has expired are left out. The sequence numbers of the rest are stored in batchSequences.
+	private List<Collection<T>> collectBatch(Collection<T> first) throws InterruptedException {
+		List<Collection<T>> answer = new ArrayList<Collection<T>>(batching.size());
+		long deadline = System.nanoTime() + batching.waitNanos();
+		Collection<T> next = first;
+		while(true){
+			if(maxAge > 0 && clock.isExpired(sequence, maxAge, System.nanoTime())){
+				recorder.expired();
+				this.discardInput(next, null);
+			} else {
+				batchSequences[answer.size()] = sequence;
+				//Copied, since a ring buffer node reuses the collection it handed out once it is withdrawn from again.
+				answer.add(List.copyOf(next));
+			}
+			if(answer.size() == batching.size()){
+				return answer;
+			}
+			try {
+				next = inputNode.poll(this, deadline);
+			} catch(InterruptedException e){
+				this.discardInput(null, answer);
+				throw e;
+			}
+			if(next == null){
+				inputEnded = true;
+				return answer;
+			}
+			if(next.isEmpty()){
+				return answer;
+			}
+		}
+	}
+
+	//Passes an input value, and each item of a batch, to the input discard action. Either may be null.
+	private void discardInput(Collection<T> value, List<Collection<T>> batch){
+		if(batch != null){
+			for(Collection<T> item : batch){
+				Node.discardAll(inputDiscard, item);
+			}
+		} else if(value != null){
+			Node.discardAll(inputDiscard, value);
+		}
+	}
+
+	private void discardOutput(V value){
+		if(value != null){
+			outputDiscard.accept(value);
+		}
+	}
+
+	//Passes the outputs of a batch from index from onwards to the output discard action. outputs may be null.
+	private void discardOutputs(List<V> outputs, int from){
+		if(outputs != null){
+			for(int i = from; i < outputs.size(); i++){
+				this.discardOutput(outputs.get(i));
+			}
 		}
 	}
 
+	//Returns whether the watchdog gave up on the call to the function that just returned, either skipping its frame or abandoning this thread.
+	//Clears the interrupt used to skip the frame.
+	private boolean stalled(int current){
+		if(stallTimeout == 0){
+			return false;
+		}
+		stallLock.lock();
+		try {
+			if(current != incarnation){
+				return true;
+			}
+			if(skipping){
+				skipping = false;
+				Thread.interrupted();
+				return true;
+			}
+			return false;
+		} finally {
+			stallLock.unlock();
+		}
+	}
 }
\ No newline at end of file
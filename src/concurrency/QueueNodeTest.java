@@ -0,0 +1,47 @@
+package concurrency;
+
+public class QueueNodeTest{
+	static int total = 0;
+	static int mistakes = 0;
+	public static void main(String[] args) throws InterruptedException {
+		for(DropPolicy dp : DropPolicy.values()){
+			total = 0;
+			mistakes = 0;
+			PipelineBuilder builder = Pipeline.builder();
+
+			int[] counter = {0};
+			PipelineFunction<Void, Integer> firstLambda = (t) -> {
+				return counter[0]++;
+			};
+			int[] last = {-1};
+			PipelineFunction<Integer, Void> secondLambda = (t) -> {
+				int value = t.iterator().next();
+				//Frames may be dropped, but must never arrive out of order.
+				if(value <= last[0]){
+					mistakes++;
+				}
+				last[0] = value;
+				total++;
+				try {
+					Thread.sleep(5);
+				} catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			};
+
+			Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+				ex.printStackTrace();
+			};
+			builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+			builder.setNodeCapacity(4).setDropPolicy(dp);
+			builder.addThreads(Void.class, Integer.class, NodeBehavior.QUEUE, firstLambda);
+			builder.addThreads(Integer.class, Void.class, secondLambda);
+			Pipeline p = builder.build();
+			p.start();
+			Thread.sleep(200);
+			p.interrupt();
+			System.out.println(dp + ": " + total + " frames consumed, " + counter[0] + " produced, " + p.droppedFrames() + " dropped, " + mistakes + " out of order");
+		}
+	}
+}
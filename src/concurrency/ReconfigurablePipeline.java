@@ -0,0 +1,27 @@
+package concurrency;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+Interface representing a pipeline which can be replaced by a different pipeline while it runs. <br>
+Every method of Pipeline applies to whichever pipeline is currently running.
+Termination only counts once the pipeline running at the time has finished, not when a pipeline being replaced has been drained,
+so awaitTermination keeps waiting through a reconfiguration.
+Metrics and dropped frames start again from 0 after each reconfiguration, since they belong to the new pipeline. <br>
+The only way to get a ReconfigurablePipeline instance is with PipelineBuilder.buildReconfigurable.
+*/
+public interface ReconfigurablePipeline extends Pipeline {
+	/**
+	Replaces the running pipeline with one built from the given builder. <br>
+	The new pipeline is built first, so a builder which cannot be built leaves the running pipeline alone.
+	The running pipeline is then shut down as with shutdown, finishing every frame it has already started,
+	and the new pipeline starts as soon as the old one has finished, so the pause lasts about as long as one frame takes to pass through the old pipeline. <br>
+	If this pipeline has not been started yet, the new pipeline simply takes the old one's place. <br>
+	This method does not wait.
+	@param builder the builder for the new pipeline.
+	@throws PipelineBuilderException if the builder cannot be built.
+	@throws IllegalStateException if this pipeline has been shut down.
+	@return a future which completes once the new pipeline has started.
+	*/
+	CompletableFuture<Void> reconfigure(PipelineBuilder builder);
+}
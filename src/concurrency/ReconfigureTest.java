@@ -0,0 +1,69 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReconfigureTest{
+	static AtomicInteger produced = new AtomicInteger();
+	static AtomicInteger consumed = new AtomicInteger();
+	static volatile boolean stopping = false;
+	public static void main(String[] args) throws Exception {
+		ReconfigurablePipeline p = builder(1).buildReconfigurable();
+		p.start();
+		//A thread already waiting for termination must keep waiting through the swap.
+		AtomicBoolean terminatedEarly = new AtomicBoolean();
+		Thread waiter = new Thread(() -> {
+			try {
+				p.awaitTermination(5, TimeUnit.SECONDS);
+				terminatedEarly.set(produced.get() > 0 && !stopping);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiter.start();
+		Thread.sleep(300);
+		long swapStart = System.nanoTime();
+		p.reconfigure(builder(3)).get(5, TimeUnit.SECONDS);
+		long pause = System.nanoTime() - swapStart;
+		System.out.println("swapped after " + pause / 1_000_000 + "ms");
+		Thread.sleep(300);
+		stopping = true;
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		//No frame may be lost in the swap.
+		waiter.join();
+		System.out.println("finished " + finished + ", " + produced.get() + " produced, " + consumed.get() + " consumed, waiter returned before shutdown " + terminatedEarly.get());
+		System.out.println(p.metrics());
+		if(!finished){
+			p.interrupt();
+		}
+	}
+
+	static PipelineBuilder builder(int workers){
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return produced.getAndIncrement();
+		};
+		PipelineFunction<Integer, Integer> secondLambda = (t) -> {
+			try {
+				Thread.sleep(5);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return t.iterator().next();
+		};
+		PipelineFunction<Integer, Void> thirdLambda = (t) -> {
+			consumed.addAndGet(t.size());
+			return null;
+		};
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		PipelineBuilder builder = Pipeline.builder();
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.addThreads(Void.class, Integer.class, firstLambda);
+		builder.addWorkers(Integer.class, Integer.class, NodeBehavior.REORDERING, workers, secondLambda);
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		return builder;
+	}
+}
@@ -0,0 +1,344 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
+
+//Node which releases values strictly in order of their frame sequence numbers.
+//Values deposited with the same sequence number form one generation. A sequence number is released once every producer has
+//either deposited it or moved past it, so frames that some producers never see (for example because they were dropped upstream) are skipped.
+//Producers may run at most a window of sequence numbers ahead of the slowest consumer.
+//Withdrawal Value has representation exposure.
+//If one consumer thread modifies their instance of the withdrawn object, it may affect the instance being stored in node.
+class ReorderingNode<T> implements Node<T>{
+	private final int window;
+
+	private boolean producersHaveStarted = false;
+	private boolean consumersHaveStarted = false;
+
+	private final Map<PipelineRunnable<?, T>, Integer> producers = new HashMap<PipelineRunnable<?, T>, Integer>();
+	private final Map<PipelineRunnable<T, ?>, Integer> consumers = new HashMap<PipelineRunnable<T, ?>, Integer>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	//Sequence number s is stored in slot s % window. slotSequences holds the sequence number each slot currently holds, or -1.
+	private Object[][] slots;
+	private int[] slotCounts;
+	private final long[] slotSequences;
+	private final List<T>[] released;
+
+	//Every sequence number below next has been released or skipped.
+	private long next = 0;
+	//The highest sequence number each producer has finished with, indexed by producer.
+	private long[] producerSequences;
+	//The next sequence number each consumer will withdraw, indexed by consumer.
+	private long[] cursors;
+	//Producers which will not deposit again, indexed by producer. Closed producers no longer hold back the release of later sequence numbers.
+	private boolean[] closed;
+	private int closedCount = 0;
+	//Producers which have stopped depositing for now, without closing. Like closed producers, they do not hold back the release of later sequence numbers.
+	private boolean[] parked;
+
+	private volatile long dropped = 0;
+	private Consumer<? super T> discard = Node.forget();
+
+	@SuppressWarnings("unchecked")
+	ReorderingNode(int window){
+		if(window <= 0){
+			throw new IllegalArgumentException("Window must be positive.");
+		}
+		this.window = window;
+		this.slotSequences = new long[window];
+		Arrays.fill(slotSequences, -1);
+		this.released = (List<T>[])new List<?>[window];
+	}
+
+	//Shouldn't be public??? - kind of ok becuase Node, ReorderingNode, and PipelineRunnable are all package private.
+	public void pingAsProducer(PipelineRunnable<?, T> pr){
+		if(producersHaveStarted){
+			throw new IllegalStateException("Cannot ping as producer after producers have already started depositing.");
+		}
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		producers.putIfAbsent(pr, producers.size());
+	}
+
+	public void pingAsConsumer(PipelineRunnable<T, ?> pr){
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		if(consumersHaveStarted){
+			throw new IllegalStateException("Cannot ping as consumer after consumers have already started withdrawing.");
+		}
+		consumers.putIfAbsent(pr, consumers.size());
+	}
+
+	public void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException {
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		if(t == null){
+			throw new NullPointerException("Input was null");
+		}
+		long sequence = pr.sequence();
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			producersHaveStarted = true;
+			if(sequence < next || sequence <= producerSequences[index]){
+				//Arrived after its sequence number was released.
+				dropped++;
+				discard.accept(t);
+				return;
+			}
+			//This producer will never deposit anything below sequence, so earlier sequence numbers may be released while it waits.
+			producerSequences[index] = sequence - 1;
+			this.release();
+			while(sequence >= this.minimumCursor() + window){
+				changed.await();
+			}
+			int slot = (int)(sequence % window);
+			if(slotSequences[slot] != sequence){
+				slotSequences[slot] = sequence;
+				slotCounts[slot] = 0;
+				released[slot] = null;
+			}
+			slots[slot][slotCounts[slot]++] = t;
+			producerSequences[index] = sequence;
+			this.release();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void close(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		lock.lock();
+		try {
+			this.start();
+			if(!closed[index]){
+				closed[index] = true;
+				closedCount++;
+			}
+			this.release();
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Called by a producer which will not deposit until it calls unpark, such as a retired worker of an elastic step.
+	void park(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		lock.lock();
+		try {
+			this.start();
+			parked[index] = true;
+			this.release();
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Called by a parked producer before it deposits again. It counts as having finished with everything released while it was parked.
+	void unpark(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		lock.lock();
+		try {
+			this.start();
+			parked[index] = false;
+			producerSequences[index] = Math.max(producerSequences[index], next - 1);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		return this.take(pr, false, 0);
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException {
+		return this.take(pr, true, deadline);
+	}
+
+	private Collection<T> take(PipelineRunnable<T, ?> pr, boolean timed, long deadline) throws InterruptedException {
+		Integer index = consumers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Consumer did not ping node.");
+		}
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			consumersHaveStarted = true;
+			while(true){
+				long cursor = this.nextReleased(cursors[index]);
+				if(cursor < next){
+					int slot = (int)(cursor % window);
+					cursors[index] = cursor + 1;
+					changed.signalAll();
+					pr.setSequence(cursor);
+					return released[slot];
+				}
+				//Nothing left to withdraw. Moving the cursor up to next lets producers waiting on the window continue.
+				if(cursors[index] != next){
+					cursors[index] = next;
+					changed.signalAll();
+				}
+				if(closedCount == closed.length){
+					//Once every producer has closed, release has released everything stored.
+					return null;
+				}
+				if(!Node.await(changed, timed, deadline)){
+					return List.of();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long dropped(){
+		return dropped;
+	}
+
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//A released generation which some consumer has withdrawn counts as handed over, even if other consumers never withdraw it.
+	public void discardRemaining(){
+		lock.lock();
+		try {
+			this.start();
+			long withdrawn = 0;
+			for(long c : cursors){
+				withdrawn = Math.max(withdrawn, c);
+			}
+			for(int slot = 0; slot < window; slot++){
+				long s = slotSequences[slot];
+				if(s >= withdrawn){
+					for(int i = 0; i < slotCounts[slot]; i++){
+						@SuppressWarnings("unchecked")
+						T t = (T)slots[slot][i];
+						discard.accept(t);
+					}
+				}
+				slotSequences[slot] = -1;
+				slotCounts[slot] = 0;
+				released[slot] = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int occupancy(){
+		lock.lock();
+		try {
+			int answer = 0;
+			for(int i = 0; i < window; i++){
+				if(slotSequences[i] >= 0 && slotSequences[i] >= this.minimumCursor()){
+					answer++;
+				}
+			}
+			return answer;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Releases every sequence number which all producers have finished with. Must be called while holding the lock.
+	private void release(){
+		long complete = Long.MAX_VALUE;
+		for(int i = 0; i < producerSequences.length; i++){
+			if(!closed[i] && !parked[i]){
+				complete = Math.min(complete, producerSequences[i]);
+			}
+		}
+		if(complete == Long.MAX_VALUE){
+			//Every producer has closed or parked, so everything stored can be released.
+			complete = next - 1;
+			for(long s : slotSequences){
+				complete = Math.max(complete, s);
+			}
+		}
+		long previous = next;
+		while(next <= complete){
+			int slot = (int)(next % window);
+			if(slotSequences[slot] == next){
+				released[slot] = this.slotValues(slot);
+				next++;
+			} else {
+				//Nothing was deposited with this sequence number. Skip to the next one that was, without stepping through the gap.
+				next = Math.min(this.lowestStoredAfter(next), complete + 1);
+			}
+		}
+		//Consumers need waking even if only a gap was skipped, so that they move their cursors past it.
+		if(next != previous){
+			changed.signalAll();
+		}
+	}
+
+	//Returns the lowest released sequence number at or above from, or next if there is none. Must be called while holding the lock.
+	private long nextReleased(long from){
+		long answer = next;
+		for(int i = 0; i < window; i++){
+			long s = slotSequences[i];
+			if(s >= from && s < answer && released[i] != null){
+				answer = s;
+			}
+		}
+		return answer;
+	}
+
+	//Returns the lowest stored sequence number above from, or Long.MAX_VALUE if there is none. Must be called while holding the lock.
+	private long lowestStoredAfter(long from){
+		long answer = Long.MAX_VALUE;
+		for(long s : slotSequences){
+			if(s > from && s < answer){
+				answer = s;
+			}
+		}
+		return answer;
+	}
+
+	//Must be called while holding the lock.
+	private List<T> slotValues(int slot){
+		return GenerationSnapshot.of(Arrays.copyOf(slots[slot], slotCounts[slot]));
+	}
+
+	//Must be called while holding the lock.
+	private long minimumCursor(){
+		long minimum = next;
+		for(long c : cursors){
+			minimum = Math.min(minimum, c);
+		}
+		return minimum;
+	}
+
+	//Allocates the per-producer and per-consumer state. Must be called while holding the lock.
+	private void start(){
+		if(slots == null){
+			slots = new Object[window][producers.size()];
+			slotCounts = new int[window];
+			producerSequences = new long[producers.size()];
+			Arrays.fill(producerSequences, -1);
+			cursors = new long[consumers.size()];
+			closed = new boolean[producers.size()];
+			parked = new boolean[producers.size()];
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package concurrency;
+
+import java.util.*;
+
+public class ReorderingNodeTest{
+	static int total = 0;
+	static int mistakes = 0;
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		PipelineFunction<Void, Long> firstLambda = (t) -> {
+			return FrameContext.sequence();
+		};
+		Random random = new Random();
+		PipelineFunction<Long, Long> secondLambda = (t) -> {
+			//Uneven processing times, so the two workers deposit their values in no particular order.
+			try {
+				Thread.sleep(random.nextInt(3));
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return t.iterator().next();
+		};
+		long[] last = {-1};
+		PipelineFunction<Long, Void> thirdLambda = (t) -> {
+			long sequence = FrameContext.sequence();
+			//A frame may be missing a value if one of the workers skipped it, but never more than one value per worker.
+			if(sequence <= last[0] || t.size() > 2){
+				mistakes++;
+			}
+			for(Long l : t){
+				if(l != sequence){
+					mistakes++;
+				}
+			}
+			last[0] = sequence;
+			total++;
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setNodeCapacity(8);
+		builder.addThreads(Void.class, Long.class, NodeBehavior.REPLACING, firstLambda);
+		builder.addThreads(Long.class, Long.class, NodeBehavior.REORDERING, secondLambda, secondLambda);
+		builder.addThreads(Long.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.interrupt();
+		System.out.println(total + " frames, " + mistakes + " mistakes, " + p.droppedFrames() + " dropped");
+	}
+}
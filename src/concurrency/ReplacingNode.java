@@ -1,7 +1,8 @@
 package concurrency;
 
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
 
 //Withdrawal Value has representation exposure. 
 //If one consumer thread modifies their instance of the withdrawn object, it may affect the instance being stored in node.
@@ -15,6 +16,25 @@ class ReplacingNode<T> implements Node<T>{
 	private volatile Map<PipelineRunnable<?, T>, T> producers = new HashMap<PipelineRunnable<?, T>, T>();
 	private volatile Map<PipelineRunnable<T, ?>, Boolean> consumers = new HashMap<PipelineRunnable<T, ?>, Boolean>();
 
+	//A lock rather than a monitor, so that virtual threads waiting on this node unmount instead of pinning their carrier.
+	//Both maps are only changed while holding it.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	//Frame sequence number of the current generation, which is the highest sequence number deposited into it.
+	private long frameSequence = -1;
+
+	//The current generation, shared by every consumer. Only changed while holding the lock.
+	private GenerationSnapshot<T> generation;
+
+	//Producers which will not deposit again. Only changed while holding the lock.
+	private final Set<PipelineRunnable<?, T>> closed = new HashSet<PipelineRunnable<?, T>>();
+
+	private Consumer<? super T> discard = Node.forget();
+
+	//Number of deposited values which were replaced before every consumer had withdrawn them.
+	private volatile long dropped = 0;
+
 	ReplacingNode(){
 		numProducers = 0;
 		numConsumers = 0;
@@ -50,34 +70,137 @@ class ReplacingNode<T> implements Node<T>{
 		if(t == null){
 			throw new NullPointerException("Input was null");
 		}
-		producersHaveStarted = true;
-		producers.put(pr, t);
-		if(!producers.containsValue(null)){
-			consumers.replaceAll((k, v) -> {return false;});
-			synchronized(this){
-				notifyAll();
+		lock.lockInterruptibly();
+		try {
+			producersHaveStarted = true;
+			frameSequence = Math.max(frameSequence, pr.sequence());
+			T replaced = producers.put(pr, t);
+			if(replaced != null){
+				dropped++;
+				//The replaced value is still in use if a consumer has withdrawn the generation it was published in.
+				if(generation == null || !consumers.containsValue(true)){
+					discard.accept(replaced);
+				}
+			}
+			if(this.isComplete()){
+				this.publish();
+				changed.signalAll();
 			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void close(PipelineRunnable<?, T> pr){
+		if(!producers.containsKey(pr)){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		lock.lock();
+		try {
+			closed.add(pr);
+			//The generation may have been waiting only on this producer. A generation already handed to consumers is left alone.
+			if(!consumers.containsValue(false) && this.isComplete()){
+				this.publish();
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	public Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		return this.take(pr, false, 0);
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException {
+		return this.take(pr, true, deadline);
+	}
+
+	private Collection<T> take(PipelineRunnable<T, ?> pr, boolean timed, long deadline) throws InterruptedException {
 		if(!consumers.containsKey(pr)){
 			throw new IllegalStateException("Consumer did not ping node.");
 		}
-		while(consumers.get(pr) /*|| producers.containsValue(null)*/){
-			synchronized(this){
-				wait();
+		lock.lockInterruptibly();
+		try {
+			while(consumers.get(pr) /*|| producers.containsValue(null)*/){
+				if(closed.size() == producers.size()){
+					return null;
+				}
+				if(!Node.await(changed, timed, deadline)){
+					return List.of();
+				}
+			}
+			consumersHaveStarted = true;
+			pr.setSequence(frameSequence);
+			List<T> answer = generation;
+			consumers.put(pr, true);
+			if(!consumers.containsValue(false)){
+				producers.replaceAll((k, v) -> {return null;});
+				generation = null;
+				changed.signalAll();
 			}
+			return answer;
+		} finally {
+			lock.unlock();
 		}
-		consumersHaveStarted = true;
-		List<T> answer = Collections.unmodifiableList(new CopyOnWriteArrayList<T>(producers.values()));
-		consumers.put(pr, true);
-		if(!consumers.containsValue(false)){
-			producers.replaceAll((k, v) -> {return null;});
-			synchronized(this){
-				notifyAll();
+	}
+
+	//Snapshots the current generation and hands it to every consumer. Must be called while holding the lock.
+	private void publish(){
+		generation = GenerationSnapshot.of(producers.values().toArray());
+		consumers.replaceAll((k, v) -> {return false;});
+	}
+
+	//Returns whether every producer which has not closed has deposited into the current generation, and at least one value has been deposited.
+	//Must be called while holding the lock.
+	private boolean isComplete(){
+		boolean any = false;
+		for(Map.Entry<PipelineRunnable<?, T>, T> e : producers.entrySet()){
+			if(e.getValue() != null){
+				any = true;
+			} else if(!closed.contains(e.getKey())){
+				return false;
+			}
+		}
+		return any;
+	}
+
+	public long dropped(){
+		return dropped;
+	}
+
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//A generation which some consumer has withdrawn counts as handed over, even if other consumers never withdraw it.
+	public void discardRemaining(){
+		lock.lock();
+		try {
+			if(generation != null){
+				if(!consumers.containsValue(true)){
+					Node.discardAll(discard, generation);
+				}
+			} else {
+				for(T t : producers.values()){
+					if(t != null){
+						discard.accept(t);
+					}
+				}
 			}
+			generation = null;
+			producers.replaceAll((k, v) -> {return null;});
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int occupancy(){
+		lock.lock();
+		try {
+			return producers.containsValue(null) ? 0 : 1;
+		} finally {
+			lock.unlock();
 		}
-		return answer;
 	}
 }
\ No newline at end of file
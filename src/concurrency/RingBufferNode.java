@@ -0,0 +1,287 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+//Node backed by a preallocated ring of generations.
+//Each slot holds one value per producer, and a generation is published once every producer has written its value into the slot.
+//Each producer only ever writes its own index of a slot, and each consumer only ever advances its own cursor, so no locks are needed.
+//Withdrawal Value has representation exposure, and is only valid until the consumer's next call to withdraw.
+class RingBufferNode<T> implements Node<T>{
+	static final int DEFAULT_CAPACITY = 16;
+
+	//Number of busy-spins before a waiting thread starts yielding, and number of yields before it starts parking.
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 10;
+	private static final long PARK_NANOS = 50_000L;
+
+	private final int capacity;
+	private final int mask;
+
+	//Set once the ring has been allocated. Written after the slot storage, so reading true means the storage is visible.
+	private volatile boolean started = false;
+
+	private final Map<PipelineRunnable<?, T>, Integer> producers = new HashMap<PipelineRunnable<?, T>, Integer>();
+	private final Map<PipelineRunnable<T, ?>, Integer> consumers = new HashMap<PipelineRunnable<T, ?>, Integer>();
+
+	//Slot storage. These arrays are allocated on the first deposit or withdrawal, once the number of producers and consumers is fixed.
+	private Object[][] values;
+	private List<T>[] views;
+	private AtomicIntegerArray filled;
+	private AtomicLongArray published;
+	//Frame sequence number of the generation in each slot, which is the highest sequence number deposited into it.
+	private AtomicLongArray frameSequences;
+
+	//The next generation each producer will write, indexed by producer. Each entry is only touched by its own producer.
+	private long[] producerSequences;
+	//The next generation each consumer will read, indexed by consumer. Read by producers to find out which slots are free.
+	private AtomicLongArray consumerCursors;
+	//Whether each consumer currently holds a slot from its last withdrawal. Each entry is only touched by its own consumer.
+	private boolean[] holding;
+	//Lowest consumer cursor seen by any producer. Only a hint, used to avoid scanning every cursor on every deposit.
+	private volatile long cachedMinimumCursor = 0;
+
+	//Once a producer closes, generations from the one it would have written next onwards can never be completed.
+	//closedAt is the lowest such generation, and values deposited into it or later are discarded.
+	private volatile long closedAt = Long.MAX_VALUE;
+	private volatile int closedProducers = 0;
+	private final AtomicLong dropped = new AtomicLong();
+	private Consumer<? super T> discard = Node.forget();
+
+	RingBufferNode(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	RingBufferNode(int capacity){
+		if(capacity <= 0){
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		//Round up to a power of two so that slots can be found with a mask.
+		int size = 1;
+		while(size < capacity){
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+	}
+
+	//Shouldn't be public??? - kind of ok becuase Node, RingBufferNode, and PipelineRunnable are all package private.
+	public synchronized void pingAsProducer(PipelineRunnable<?, T> pr){
+		if(started){
+			throw new IllegalStateException("Cannot ping as producer after producers have already started depositing.");
+		}
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		producers.putIfAbsent(pr, producers.size());
+	}
+
+	public synchronized void pingAsConsumer(PipelineRunnable<T, ?> pr){
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		if(started){
+			throw new IllegalStateException("Cannot ping as consumer after consumers have already started withdrawing.");
+		}
+		consumers.putIfAbsent(pr, consumers.size());
+	}
+
+	public void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException {
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		if(t == null){
+			throw new NullPointerException("Input was null");
+		}
+		if(!started){
+			this.start();
+		}
+		long sequence = producerSequences[index];
+		if(sequence >= closedAt){
+			dropped.incrementAndGet();
+			discard.accept(t);
+			return;
+		}
+		int slot = (int)(sequence & mask);
+		//The slot is free once every consumer has moved past the generation that last used it.
+		long wrapPoint = sequence - capacity;
+		int tries = 0;
+		while(wrapPoint >= cachedMinimumCursor){
+			if(sequence >= closedAt){
+				//The consumers may have stopped, and would never free the slot.
+				dropped.incrementAndGet();
+				discard.accept(t);
+				return;
+			}
+			long minimum = this.minimumCursor();
+			cachedMinimumCursor = minimum;
+			if(wrapPoint < minimum){
+				break;
+			}
+			tries = idle(tries);
+		}
+		values[slot][index] = t;
+		frameSequences.accumulateAndGet(slot, pr.sequence(), Math::max);
+		producerSequences[index] = sequence + 1;
+		if(filled.incrementAndGet(slot) == values[slot].length){
+			filled.set(slot, 0);
+			published.set(slot, sequence);
+		}
+	}
+
+	public Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		return this.take(pr, false, 0);
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException {
+		return this.take(pr, true, deadline);
+	}
+
+	private Collection<T> take(PipelineRunnable<T, ?> pr, boolean timed, long deadline) throws InterruptedException {
+		Integer index = consumers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Consumer did not ping node.");
+		}
+		if(!started){
+			this.start();
+		}
+		long sequence = consumerCursors.get(index);
+		if(holding[index]){
+			//Release the slot handed out by the previous withdrawal.
+			sequence++;
+			consumerCursors.set(index, sequence);
+			holding[index] = false;
+		}
+		int slot = (int)(sequence & mask);
+		int tries = 0;
+		while(published.get(slot) != sequence){
+			//Producers close after their last deposit, so once all of them have closed, an unpublished generation never will be.
+			if(closedProducers == producers.size() && published.get(slot) != sequence){
+				return null;
+			}
+			if(timed && System.nanoTime() - deadline >= 0){
+				return List.of();
+			}
+			tries = idle(tries);
+		}
+		holding[index] = true;
+		pr.setSequence(frameSequences.get(slot));
+		return views[slot];
+	}
+
+	public synchronized void close(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		if(!started){
+			this.start();
+		}
+		closedAt = Math.min(closedAt, producerSequences[index]);
+		closedProducers++;
+		if(closedProducers == producers.size()){
+			//Values written into generations which will never be published.
+			for(long s : producerSequences){
+				dropped.addAndGet(Math.max(0, s - closedAt));
+			}
+		}
+	}
+
+	//Allocates the ring. Called once, by the first thread to deposit or withdraw.
+	//Both producers and consumers are frozen from here on, since the ring is sized from them.
+	@SuppressWarnings("unchecked")
+	private synchronized void start(){
+		if(started){
+			return;
+		}
+		int numProducers = producers.size();
+		values = new Object[capacity][numProducers];
+		views = (List<T>[])new List<?>[capacity];
+		for(int i = 0; i < capacity; i++){
+			views[i] = Collections.unmodifiableList((List<T>)(List<?>)Arrays.asList(values[i]));
+		}
+		filled = new AtomicIntegerArray(capacity);
+		published = new AtomicLongArray(capacity);
+		frameSequences = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; i++){
+			published.set(i, -1);
+			frameSequences.set(i, -1);
+		}
+		producerSequences = new long[numProducers];
+		consumerCursors = new AtomicLongArray(consumers.size());
+		holding = new boolean[consumers.size()];
+		started = true;
+	}
+
+	private long minimumCursor(){
+		long minimum = Long.MAX_VALUE;
+		for(int i = 0; i < consumerCursors.length(); i++){
+			minimum = Math.min(minimum, consumerCursors.get(i));
+		}
+		return minimum;
+	}
+
+	//Waits a little while, backing off from spinning to yielding to parking.
+	private static int idle(int tries) throws InterruptedException {
+		if(Thread.interrupted()){
+			throw new InterruptedException();
+		}
+		if(tries < SPIN_TRIES){
+			Thread.onSpinWait();
+		} else if(tries < SPIN_TRIES + YIELD_TRIES){
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		return tries + 1;
+	}
+
+	public long dropped(){
+		return dropped.get();
+	}
+
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//Slots are not cleared once read, so the values still held are found from the sequence numbers:
+	//the last capacity generations each producer wrote, less those some consumer has withdrawn, which count as handed over.
+	//That includes the values written into generations which were never published because a producer closed.
+	public synchronized void discardRemaining(){
+		if(!started){
+			return;
+		}
+		long taken = 0;
+		for(int i = 0; i < consumerCursors.length(); i++){
+			taken = Math.max(taken, consumerCursors.get(i) + (holding[i] ? 1 : 0));
+		}
+		for(int p = 0; p < producerSequences.length; p++){
+			for(long s = Math.max(taken, producerSequences[p] - capacity); s < producerSequences[p]; s++){
+				int slot = (int)(s & mask);
+				@SuppressWarnings("unchecked")
+				T t = (T)values[slot][p];
+				if(t != null){
+					discard.accept(t);
+					values[slot][p] = null;
+				}
+			}
+		}
+	}
+
+	public int occupancy(){
+		if(!started){
+			return 0;
+		}
+		long minimum = this.minimumCursor();
+		int answer = 0;
+		for(int i = 0; i < capacity; i++){
+			if(published.get(i) >= minimum){
+				answer++;
+			}
+		}
+		return answer;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+package concurrency;
+
+import java.util.*;
+
+public class RingBufferNodeTest{
+	static int total = 0;
+	static int mistakes = 0;
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counters = new int[2];
+		PipelineFunction<Void, Integer> firstLambdaPt1 = (t) -> {
+			return counters[0]++;
+		};
+		PipelineFunction<Void, Integer> firstLambdaPt2 = (t) -> {
+			return -(counters[1]++);
+		};
+		PipelineFunction<Integer, Integer> secondLambda = (t) -> {
+			int sum = 0;
+			for(Integer i : t){
+				sum += i;
+			}
+			//Both producers must have contributed values from the same generation.
+			if(t.size() != 2 || sum != 0){
+				System.out.println(t);
+			}
+			return Collections.max(t);
+		};
+		int[] last = {-1};
+		PipelineFunction<Integer, Void> thirdLambda = (t) -> {
+			int value = t.iterator().next();
+			if(t.size() != 1 || value != last[0] + 1){
+				mistakes++;
+			}
+			last[0] = value;
+			total++;
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setNodeCapacity(4);
+		builder.addThreads(Void.class, Integer.class, NodeBehavior.RING_BUFFER, firstLambdaPt1, firstLambdaPt2);
+		builder.addThreads(Integer.class, Integer.class, NodeBehavior.RING_BUFFER, secondLambda);
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.interrupt();
+		System.out.println(total + " generations, " + mistakes + " out of order");
+	}
+}
@@ -0,0 +1,295 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
+
+//Node which hands each generation to exactly one consumer.
+//Completed generations go onto one shared queue, and whichever consumer is free next takes the generation at its head.
+//This balances the load, since no generation waits behind a slow consumer while another is free.
+//Each consumer also receives generations in the order they were completed, which a reordering node after it relies on.
+//Producers wait once the node holds capacity generations.
+//Withdrawal Value has representation exposure.
+//If one consumer thread modifies their instance of the withdrawn object, it may affect the instance being stored in node.
+class SharedQueueNode<T> implements Node<T>{
+	private boolean producersHaveStarted = false;
+	private boolean consumersHaveStarted = false;
+
+	private final Map<PipelineRunnable<?, T>, Integer> producers = new HashMap<PipelineRunnable<?, T>, Integer>();
+	private final Map<PipelineRunnable<T, ?>, Integer> consumers = new HashMap<PipelineRunnable<T, ?>, Integer>();
+
+	//Guards generation assembly. Consumers take generations without it, and only take it afterwards to wake producers waiting for space.
+	//Nothing waits while holding it, so close never blocks.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private Object[] assembling;
+	private int assembled = 0;
+	private long assemblingSequence = -1;
+
+	//Completed generations, oldest first.
+	private final Queue<Generation<T>> queue = new ConcurrentLinkedQueue<Generation<T>>();
+	//Number of consumers, fixed once start has run.
+	private volatile int consumerCount = -1;
+	//Guards the allocation in start, which consumers may do without the lock.
+	private final Object startLock = new Object();
+	//Permits for queued generations and for free space, respectively.
+	private final Semaphore available = new Semaphore(0);
+	private final Semaphore space;
+
+	//Producers which will not deposit again, indexed by producer. Guarded by the lock.
+	private boolean[] closed;
+	private int closedCount = 0;
+	//Set once every producer has closed. From then on, available also holds one extra permit per consumer,
+	//so that consumers waiting for a generation wake up and find out that none is coming.
+	private volatile boolean ended = false;
+	private Consumer<? super T> discard = Node.forget();
+
+	SharedQueueNode(int capacity){
+		if(capacity <= 0){
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		this.space = new Semaphore(capacity);
+	}
+
+	//Shouldn't be public??? - kind of ok becuase Node, SharedQueueNode, and PipelineRunnable are all package private.
+	public void pingAsProducer(PipelineRunnable<?, T> pr){
+		if(producersHaveStarted){
+			throw new IllegalStateException("Cannot ping as producer after producers have already started depositing.");
+		}
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		producers.putIfAbsent(pr, producers.size());
+	}
+
+	public void pingAsConsumer(PipelineRunnable<T, ?> pr){
+		if(pr == null){
+			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
+		}
+		if(consumersHaveStarted){
+			throw new IllegalStateException("Cannot ping as consumer after consumers have already started withdrawing.");
+		}
+		consumers.putIfAbsent(pr, consumers.size());
+	}
+
+	public void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException {
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		if(t == null){
+			throw new NullPointerException("Input was null");
+		}
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			producersHaveStarted = true;
+			while(assembling[index] != null){
+				if(this.isComplete()){
+					//The generation was only waiting on producers which have since closed.
+					this.enqueue();
+				} else {
+					changed.await();
+				}
+			}
+			assembling[index] = t;
+			assemblingSequence = Math.max(assemblingSequence, pr.sequence());
+			assembled++;
+			if(this.isComplete()){
+				try {
+					this.enqueue();
+				} catch(InterruptedException e){
+					//t is already stored, so the generation is left for the next producer or consumer to queue, and the interrupt is kept for the caller.
+					Thread.currentThread().interrupt();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void close(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
+		}
+		lock.lock();
+		try {
+			this.start();
+			if(closed[index]){
+				return;
+			}
+			closed[index] = true;
+			closedCount++;
+			if(closedCount == closed.length){
+				ended = true;
+				available.release(consumerCount);
+			}
+			//Queueing a generation this completes could wait for space, which close must not do. A waiting producer queues it instead,
+			//or once every producer has closed, a consumer takes it as the remainder.
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		return this.take(pr, false, 0);
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException {
+		return this.take(pr, true, deadline);
+	}
+
+	private Collection<T> take(PipelineRunnable<T, ?> pr, boolean timed, long deadline) throws InterruptedException {
+		Integer index = consumers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Consumer did not ping node.");
+		}
+		this.start();
+		consumersHaveStarted = true;
+		if(!timed){
+			available.acquire();
+		} else if(!available.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)){
+			return List.of();
+		}
+		//Until every producer has closed, holding a permit guarantees that the queue holds a generation no other consumer has claimed.
+		Generation<T> answer = queue.poll();
+		if(answer == null){
+			//The permit was one of the extra ones, or its generation was taken with one. Either way it goes back for the next consumer.
+			available.release();
+			return this.remainder(pr);
+		}
+		space.release();
+		lock.lock();
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		pr.setSequence(answer.sequence);
+		return answer.values;
+	}
+
+	public long dropped(){
+		return 0;
+	}
+
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//Nothing is dropped while the pipeline runs, so only what is left once it stops is discarded.
+	public void discardRemaining(){
+		lock.lock();
+		try {
+			this.start();
+			Generation<T> g;
+			while((g = queue.poll()) != null){
+				Node.discardAll(discard, g.values);
+			}
+			for(Object o : assembling){
+				if(o != null){
+					@SuppressWarnings("unchecked")
+					T t = (T)o;
+					discard.accept(t);
+				}
+			}
+			this.clearAssembling();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int occupancy(){
+		int answer = available.availablePermits();
+		return ended ? Math.max(0, answer - consumerCount) : answer;
+	}
+
+	//Once every producer has closed and the queue is empty, hands out the last, partly assembled generation if there is one, and null otherwise.
+	private Collection<T> remainder(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			if(assembled == 0){
+				return null;
+			}
+			List<T> answer = this.assembledGeneration();
+			pr.setSequence(assemblingSequence);
+			this.clearAssembling();
+			return answer;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//Queues the assembled generation, waiting for space if the node is full. Waiting gives up the lock,
+	//so another producer may queue the generation first, in which case this returns without queueing anything. Must be called while holding the lock.
+	private void enqueue() throws InterruptedException {
+		while(!space.tryAcquire()){
+			changed.await();
+			if(!this.isComplete()){
+				return;
+			}
+		}
+		queue.offer(new Generation<T>(this.assembledGeneration(), assemblingSequence));
+		available.release();
+		this.clearAssembling();
+	}
+
+	//Must be called while holding the lock.
+	private void clearAssembling(){
+		Arrays.fill(assembling, null);
+		assembled = 0;
+		changed.signalAll();
+	}
+
+	//Returns whether every producer which has not closed has deposited into the generation being assembled, and at least one has.
+	//Must be called while holding the lock.
+	private boolean isComplete(){
+		if(assembled == assembling.length){
+			return true;
+		}
+		if(closedCount == 0 || assembled == 0){
+			return false;
+		}
+		for(int i = 0; i < assembling.length; i++){
+			if(assembling[i] == null && !closed[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//Allocates the per-producer state, once.
+	private void start(){
+		if(consumerCount >= 0){
+			return;
+		}
+		synchronized(startLock){
+			if(consumerCount < 0){
+				assembling = new Object[producers.size()];
+				closed = new boolean[producers.size()];
+				consumerCount = consumers.size();
+			}
+		}
+	}
+
+	//Snapshots the assembled generation, leaving out producers which closed without depositing into it.
+	//The snapshot keeps the array it was assembled in, so a fresh one takes its place. Must be called while holding the lock.
+	private List<T> assembledGeneration(){
+		List<T> answer = GenerationSnapshot.of(assembling);
+		assembling = new Object[assembling.length];
+		return answer;
+	}
+
+	private static class Generation<T>{
+		private final List<T> values;
+		private final long sequence;
+
+		private Generation(List<T> values, long sequence){
+			this.values = values;
+			this.sequence = sequence;
+		}
+	}
+}
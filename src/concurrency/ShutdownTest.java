@@ -0,0 +1,62 @@
+package concurrency;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ShutdownTest{
+	static int total = 0;
+	public static void main(String[] args) throws InterruptedException {
+		for(NodeBehavior nb : NodeBehavior.values()){
+			run(nb, false);
+		}
+		run(NodeBehavior.REORDERING, true);
+	}
+
+	static void run(NodeBehavior nb, boolean workers) throws InterruptedException {
+		total = 0;
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return counter[0]++;
+		};
+		PipelineFunction<Integer, Integer> secondLambda = (t) -> {
+			try {
+				Thread.sleep(2);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return t.iterator().next();
+		};
+		PipelineFunction<Integer, Void> thirdLambda = (t) -> {
+			total++;
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setNodeCapacity(8).setDropPolicy(DropPolicy.BLOCK);
+		builder.addThreads(Void.class, Integer.class, nb, firstLambda);
+		if(workers){
+			builder.addWorkers(Integer.class, Integer.class, nb, 3, secondLambda);
+		} else {
+			builder.addThreads(Integer.class, Integer.class, nb, secondLambda, secondLambda);
+		}
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(200);
+		CompletableFuture<Void> done = p.shutdown();
+		//Completing or cancelling the returned future must not make the pipeline look terminated before it is.
+		boolean tampered = done.complete(null) && !p.shutdown().isDone() && p.shutdown().cancel(false);
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		//Every frame produced must reach the last step, unless the node behavior drops frames.
+		System.out.println(nb + (workers ? " workers" : "") + ": finished " + finished + ", " + counter[0] + " produced, " + total + " consumed, "
+			+ p.droppedFrames() + " dropped, futures tampered with " + tampered);
+		if(!finished){
+			p.interrupt();
+		}
+	}
+}
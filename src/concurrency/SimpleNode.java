@@ -1,9 +1,10 @@
 package concurrency;
 
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
 
-//Withdrawal Value has representation exposure. 
+//Withdrawal Value has representation exposure, and is only valid until the consumer's next call to withdraw.
 //If one consumer thread modifies their instance of the withdrawn object, it may affect the instance being stored in node.
 class SimpleNode<T> implements Node<T>{
 	private int numProducers;
@@ -12,9 +13,35 @@ class SimpleNode<T> implements Node<T>{
 	private boolean producersHaveStarted = false;
 	private boolean consumersHaveStarted = false;
 
-	private volatile Map<PipelineRunnable<?, T>, T> producers = new HashMap<PipelineRunnable<?, T>, T>();
+	private volatile Map<PipelineRunnable<?, T>, Integer> producers = new HashMap<PipelineRunnable<?, T>, Integer>();
 	private volatile Map<PipelineRunnable<T, ?>, Boolean> consumers = new HashMap<PipelineRunnable<T, ?>, Boolean>();
 
+	//A lock rather than a monitor, so that virtual threads waiting on this node unmount instead of pinning their carrier.
+	//Both maps are only changed while holding it.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	//Frame sequence number of the current generation, which is the highest sequence number deposited into it.
+	private long frameSequence = -1;
+
+	//The current generation, shared by every consumer. Only changed while holding the lock.
+	private GenerationSnapshot<T> generation;
+
+	//Two buffers, indexed by producer, which generations are assembled into in turn, and a snapshot reading each in place.
+	//A buffer is only refilled once every consumer has withdrawn the generation after the one it held, so no consumer still holds it.
+	//Allocated on first use, once the number of producers is fixed. Everything below is only touched while holding the lock.
+	private Object[][] buffers;
+	private GenerationSnapshot<T>[] views;
+	private int current = 0;
+	private Object[] assembling;
+	private int assembled = 0;
+
+	//Producers which will not deposit again, indexed by producer.
+	private boolean[] closed;
+	private int closedCount = 0;
+
+	private Consumer<? super T> discard = Node.forget();
+
 	SimpleNode(){
 		numProducers = 0;
 		numConsumers = 0;
@@ -29,7 +56,7 @@ class SimpleNode<T> implements Node<T>{
 			throw new IllegalArgumentException("Must provide a valid PipelineRunnable.");
 		}
 		numProducers++;
-		producers.put(pr, null);
+		producers.putIfAbsent(pr, producers.size());
 	}
 
 	public void pingAsConsumer(PipelineRunnable<T, ?> pr){
@@ -44,45 +71,172 @@ class SimpleNode<T> implements Node<T>{
 	}
 
 	public void deposit(PipelineRunnable<?, T> pr, T t) throws InterruptedException {
-		if(!producers.containsKey(pr)){
+		Integer index = producers.get(pr);
+		if(index == null){
 			throw new IllegalStateException("Producer did not ping node.");
 		}
 		if(t == null){
 			throw new NullPointerException("Input was null");
 		}
-		while(producers.get(pr) != null){
-			synchronized(this){
-				wait();
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			while(assembling[index] != null){
+				changed.await();
 			}
+			producersHaveStarted = true;
+			frameSequence = Math.max(frameSequence, pr.sequence());
+			assembling[index] = t;
+			assembled++;
+			if(this.isComplete()){
+				this.publish();
+				changed.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void close(PipelineRunnable<?, T> pr){
+		Integer index = producers.get(pr);
+		if(index == null){
+			throw new IllegalStateException("Producer did not ping node.");
 		}
-		producersHaveStarted = true;
-		producers.put(pr, t);
-		if(!producers.containsValue(null)){
-			consumers.replaceAll((k, v) -> {return false;});
-			synchronized(this){
-				notifyAll();
+		lock.lock();
+		try {
+			this.start();
+			if(!closed[index]){
+				closed[index] = true;
+				closedCount++;
 			}
+			//The generation may have been waiting only on this producer. A generation already handed to consumers is left alone.
+			if(!consumers.containsValue(false) && this.isComplete()){
+				this.publish();
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	public Collection<T> withdraw(PipelineRunnable<T, ?> pr) throws InterruptedException {
+		return this.take(pr, false, 0);
+	}
+
+	public Collection<T> poll(PipelineRunnable<T, ?> pr, long deadline) throws InterruptedException {
+		return this.take(pr, true, deadline);
+	}
+
+	private Collection<T> take(PipelineRunnable<T, ?> pr, boolean timed, long deadline) throws InterruptedException {
 		if(!consumers.containsKey(pr)){
 			throw new IllegalStateException("Consumer did not ping node.");
 		}
-		while(consumers.get(pr) /*|| producers.containsValue(null)*/){
-			synchronized(this){
-				wait();
+		lock.lockInterruptibly();
+		try {
+			this.start();
+			while(consumers.get(pr) /*|| producers.containsValue(null)*/){
+				if(closedCount == producers.size()){
+					return null;
+				}
+				if(!Node.await(changed, timed, deadline)){
+					return List.of();
+				}
 			}
+			consumersHaveStarted = true;
+			pr.setSequence(frameSequence);
+			List<T> answer = generation;
+			consumers.put(pr, true);
+			if(!consumers.containsValue(false)){
+				//Every consumer has now withdrawn again since the other buffer was handed out, so it can be refilled.
+				current = 1 - current;
+				assembling = buffers[current];
+				this.clearAssembling();
+				generation = null;
+				changed.signalAll();
+			}
+			return answer;
+		} finally {
+			lock.unlock();
 		}
-		consumersHaveStarted = true;
-		List<T> answer = Collections.unmodifiableList(new CopyOnWriteArrayList<T>(producers.values()));
-		consumers.put(pr, true);
-		if(!consumers.containsValue(false)){
-			producers.replaceAll((k, v) -> {return null;});
-			synchronized(this){
-				notifyAll();
+	}
+
+	//Hands the current generation to every consumer. Must be called while holding the lock.
+	//A full generation is read in place. One missing the values of closed producers is copied without them, which only happens as the pipeline ends.
+	private void publish(){
+		generation = assembled == assembling.length ? views[current] : GenerationSnapshot.of(assembling.clone());
+		consumers.replaceAll((k, v) -> {return false;});
+	}
+
+	//Returns whether every producer which has not closed has deposited into the current generation, and at least one value has been deposited.
+	//Must be called while holding the lock.
+	private boolean isComplete(){
+		if(assembled == assembling.length){
+			return true;
+		}
+		if(closedCount == 0 || assembled == 0){
+			return false;
+		}
+		for(int i = 0; i < assembling.length; i++){
+			if(assembling[i] == null && !closed[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//Must be called while holding the lock.
+	private void clearAssembling(){
+		Arrays.fill(assembling, null);
+		assembled = 0;
+	}
+
+	//Allocates the per-producer state, once. Must be called while holding the lock.
+	@SuppressWarnings("unchecked")
+	private void start(){
+		if(assembling != null){
+			return;
+		}
+		int n = producers.size();
+		buffers = new Object[2][n];
+		views = (GenerationSnapshot<T>[])new GenerationSnapshot<?>[]{GenerationSnapshot.inPlace(buffers[0]), GenerationSnapshot.inPlace(buffers[1])};
+		closed = new boolean[n];
+		assembling = buffers[current];
+	}
+
+	public long dropped(){
+		return 0;
+	}
+
+	public void setDiscardAction(Consumer<? super T> action){
+		discard = action;
+	}
+
+	//A generation which some consumer has withdrawn counts as handed over, even if other consumers never withdraw it.
+	public void discardRemaining(){
+		lock.lock();
+		try {
+			if(generation != null){
+				if(!consumers.containsValue(true)){
+					Node.discardAll(discard, generation);
+				}
+			} else if(assembling != null){
+				Node.discardAll(discard, GenerationSnapshot.of(assembling.clone()));
+			}
+			generation = null;
+			if(assembling != null){
+				this.clearAssembling();
 			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int occupancy(){
+		lock.lock();
+		try {
+			return assembling != null && assembled == assembling.length ? 1 : 0;
+		} finally {
+			lock.unlock();
 		}
-		return answer;
 	}
 }
\ No newline at end of file
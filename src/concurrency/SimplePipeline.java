@@ -1,18 +1,72 @@
 package concurrency;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class SimplePipeline implements Pipeline {
+	//Thread i runs runnable i. The watchdog replaces the threads it restarts.
 	private List<Thread> threads;
+	private List<PipelineRunnable<?, ?>> runnables;
+	private List<Node<?>> nodes;
+	private FramePacer pacer;
+	//Completed once every runnable has exited.
+	private final CompletableFuture<Void> termination = new CompletableFuture<Void>();
+	private final AtomicInteger running;
+	private final ExecutionMode mode;
+	private final List<ElasticPool> elasticPools;
 
-	SimplePipeline(List<Thread> t){
-		threads = t;
+	SimplePipeline(List<Thread> t, List<PipelineRunnable<?, ?>> r, List<Node<?>> n, FramePacer fp, ExecutionMode em){
+		threads = new CopyOnWriteArrayList<Thread>(t);
+		mode = em;
+		runnables = List.copyOf(r);
+		nodes = List.copyOf(n);
+		pacer = fp;
+		elasticPools = ElasticScaler.pools(runnables);
+		running = new AtomicInteger(runnables.size());
+		for(PipelineRunnable<?, ?> pr : runnables){
+			pr.setExitListener(this::exited);
+		}
+	}
+
+	//Once the last runnable has exited, nothing will withdraw what is left in the nodes, so it is discarded before the pipeline counts as terminated.
+	private void exited(){
+		if(running.decrementAndGet() == 0){
+			try {
+				for(Node<?> n : nodes){
+					n.discardRemaining();
+				}
+			} finally {
+				termination.complete(null);
+			}
+		}
 	}
 
 	public void start(){
 		for(Thread t : threads){
 			t.start();
 		}
+		if(Watchdog.isNeeded(runnables)){
+			Thread watchdog = new Thread(new Watchdog(this, runnables), "pipeline-watchdog");
+			watchdog.setDaemon(true);
+			watchdog.start();
+		}
+		if(!elasticPools.isEmpty()){
+			Thread scaler = new Thread(new ElasticScaler(this, elasticPools), "pipeline-scaler");
+			scaler.setDaemon(true);
+			scaler.start();
+		}
+	}
+
+	boolean isTerminated(){
+		return termination.isDone();
+	}
+
+	//Starts a new thread for runnable i, whose previous thread the watchdog has abandoned.
+	void restart(int i){
+		Thread t = mode.newThread(runnables.get(i));
+		threads.set(i, t);
+		t.start();
 	}
 
 	public void interrupt(){
@@ -20,4 +74,65 @@ class SimplePipeline implements Pipeline {
 			t.interrupt();
 		}
 	}
+
+	public CompletableFuture<Void> shutdown(){
+		for(PipelineRunnable<?, ?> pr : runnables){
+			if(pr.isSource()){
+				pr.stop();
+			}
+		}
+		//A copy, so that callers completing or cancelling it cannot make the pipeline look terminated.
+		return termination.copy();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		try {
+			termination.get(timeout, unit);
+			return true;
+		} catch(TimeoutException e){
+			return false;
+		} catch(ExecutionException e){
+			//The future is only ever completed normally.
+			throw new AssertionError(e);
+		}
+	}
+
+	public List<Long> droppedFrames(){
+		List<Long> answer = new ArrayList<Long>(nodes.size());
+		for(Node<?> n : nodes){
+			answer.add(n.dropped());
+		}
+		return Collections.unmodifiableList(answer);
+	}
+
+	public void setFrequency(double hz){
+		long period;
+		try{
+			period = PipelineBuilder.periodOf(hz);
+		} catch(PipelineBuilderException e){
+			throw new IllegalArgumentException(e.getMessage());
+		}
+		pacer.setPeriod(period);
+	}
+
+	public double frequency(){
+		long period = pacer.period();
+		return period == 0 ? 0 : 1e9 / period;
+	}
+
+	public PipelineMetrics metrics(){
+		List<WorkerMetrics> workers = new ArrayList<WorkerMetrics>(runnables.size());
+		for(PipelineRunnable<?, ?> r : runnables){
+			workers.add(r.recorder().snapshot());
+		}
+		List<NodeMetrics> nodeMetrics = new ArrayList<NodeMetrics>(nodes.size());
+		for(int i = 0; i < nodes.size(); i++){
+			nodeMetrics.add(new NodeMetrics(i, nodes.get(i).occupancy(), nodes.get(i).dropped()));
+		}
+		List<ElasticMetrics> elasticMetrics = new ArrayList<ElasticMetrics>(elasticPools.size());
+		for(ElasticPool pool : elasticPools){
+			elasticMetrics.add(pool.snapshot());
+		}
+		return new PipelineMetrics(workers, nodeMetrics, elasticMetrics);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package concurrency;
+
+import java.util.*;
+
+/**
+Functional interface representing a function which takes the single value deposited by the previous step, rather than a Collection. <br>
+It can only be added after a step with exactly one thread, or after workers whose output is put back in order by a reordering node,
+so that every generation it receives holds exactly one value.
+Adding it after a step with more threads, or after a step that branches were joined into, throws a PipelineBuilderException. <br>
+Use PipelineFunction.single to pass a lambda as a SingleValueFunction.
+T is the input type to the function, V is the output type.
+*/
+public interface SingleValueFunction<T, V> extends PipelineFunction<T, V>{
+	/**
+	The function to execute. <br>
+	If the input type is Void, then the input will be null. Otherwise it is the value deposited by the previous step. <br>
+	The same rules as for PipelineFunction.execute apply to the return value and to modifying the input.
+	*/
+	V apply(T t);
+
+	/**
+	Unwraps the single value in the generation and passes it to apply. Does not allocate.
+	@throws IllegalArgumentException if the generation does not hold exactly one value.
+	*/
+	@Override
+	default V execute(Collection<T> t){
+		if(t == null){
+			return this.apply(null);
+		}
+		if(t.size() != 1){
+			throw new IllegalArgumentException("Expected a single value, got " + t.size() + ".");
+		}
+		return this.apply(t instanceof List ? ((List<T>)t).get(0) : t.iterator().next());
+	}
+}
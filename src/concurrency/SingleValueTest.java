@@ -0,0 +1,112 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+//Checks where the builder accepts a SingleValueFunction, and that generations read from reused buffers hold the right values.
+public class SingleValueTest{
+	static int mistakes = 0;
+	static int total = 0;
+
+	public static void main(String[] args) throws InterruptedException {
+		PipelineFunction<Void, Long> source = (t) -> {
+			return FrameContext.sequence();
+		};
+		PipelineFunction<Long, Long> single = PipelineFunction.single((t) -> {
+			return t;
+		});
+
+		//Two threads deposit into the input node, so each generation holds two values.
+		PipelineBuilder twoThreads = builder();
+		twoThreads.addThreads(Void.class, Long.class, source, source);
+		check("after a step with two threads", twoThreads, single, true);
+
+		//Two branches joined into one step's node add their values to the step's own.
+		PipelineBuilder joined = builder();
+		joined.addThreads(Void.class, Long.class, source);
+		PipelineBuilder branch = joined.branch();
+		branch.addThreads(Long.class, Long.class, (t) -> {
+			return t.iterator().next();
+		});
+		joined.addThreads(Long.class, Long.class, (t) -> {
+			return t.iterator().next();
+		});
+		joined.join(branch);
+		check("after a step which a branch was joined into", joined, single, true);
+
+		PipelineBuilder oneThread = builder();
+		oneThread.addThreads(Void.class, Long.class, source);
+		check("after a step with one thread", oneThread, single, false);
+
+		//Reordered workers deposit one value per generation between them.
+		PipelineBuilder workers = builder();
+		workers.addThreads(Void.class, Long.class, source);
+		workers.addWorkers(Long.class, Long.class, NodeBehavior.REORDERING, 3, (t) -> {
+			return t.iterator().next();
+		});
+		check("after reordered workers", workers, single, false);
+
+		//Every generation of a blocking node with two producers must hold both producers' values for the same frame,
+		//however many generations its two buffers have been refilled for, and both consumers must see the same values.
+		PipelineBuilder builder = builder();
+		PipelineFunction<Void, Long> negated = (t) -> {
+			return -FrameContext.sequence();
+		};
+		PipelineFunction<Long, Void> consumer = (t) -> {
+			if(t.size() == 1){
+				//Handed out once one producer has stopped, without its value.
+				return null;
+			}
+			Iterator<Long> values = t.iterator();
+			long a = values.next();
+			long b = values.next();
+			//The values are read twice, so a refill while a consumer still holds the generation shows up as a mismatch.
+			Thread.yield();
+			Iterator<Long> again = t.iterator();
+			synchronized(SingleValueTest.class){
+				if(t.size() != 2 || a != -b || again.next() != a || again.next() != b){
+					mistakes++;
+				}
+				total++;
+			}
+			return null;
+		};
+		builder.setFrequency(2000);
+		builder.addThreads(Void.class, Long.class, (t) -> {
+			return FrameContext.sequence();
+		}, negated);
+		builder.addThreads(Long.class, Void.class, consumer, consumer);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		if(!finished || total == 0){
+			mistakes++;
+		}
+		System.out.println("blocking node: finished " + finished + ", " + total + " generations read");
+		System.out.println(mistakes + " mistakes");
+	}
+
+	static PipelineBuilder builder(){
+		PipelineBuilder builder = Pipeline.builder();
+		builder.setDefaultUncaughtExceptionHandler((th, ex) -> {
+			ex.printStackTrace();
+		});
+		return builder;
+	}
+
+	//Adds function to builder, and checks whether the builder rejected it as expected.
+	static void check(String name, PipelineBuilder builder, PipelineFunction<Long, Long> function, boolean shouldReject){
+		boolean rejected = false;
+		try {
+			builder.addThreads(Long.class, Long.class, function);
+		} catch(PipelineBuilderException e){
+			rejected = true;
+		}
+		if(rejected != shouldReject){
+			mistakes++;
+		}
+		System.out.println("SingleValueFunction " + name + ": rejected " + rejected);
+	}
+}
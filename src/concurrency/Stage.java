@@ -0,0 +1,171 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//Description of one step of a pipeline, recorded by PipelineBuilder.
+//Nodes and runnables are only created from it when the pipeline is built, because the kind of node between two steps depends on both of them.
+class Stage<T, V> {
+	private final Class<T> inputType;
+	private final Class<V> outputType;
+	private final Thread.UncaughtExceptionHandler handler;
+	private final NodeBehavior behavior;
+	private final int nodeCapacity;
+	private final DropPolicy dropPolicy;
+	//In nanoseconds. 0 means calls to the functions are not watched.
+	private final long stallTimeout;
+	private final StallAction stallAction;
+	//In nanoseconds. 0 means items are processed however old their frame is.
+	private final long maxAge;
+	private final List<PipelineFunction<T, V>> functions;
+	//Whether the functions compete for the items in the input node, rather than each receiving every item.
+	private final boolean distributed;
+	//For an elastic step, the number of workers active at first and at least. The rest are only activated while the step is backlogged. 0 if the step is not elastic.
+	private final int minWorkers;
+
+	Stage(Class<T> inputType, Class<V> outputType, Thread.UncaughtExceptionHandler handler, NodeBehavior behavior, int nodeCapacity, DropPolicy dropPolicy, long stallTimeout, StallAction stallAction, long maxAge, List<PipelineFunction<T, V>> functions, boolean distributed, int minWorkers){
+		this.inputType = inputType;
+		this.outputType = outputType;
+		this.handler = handler;
+		this.behavior = behavior;
+		this.nodeCapacity = nodeCapacity;
+		this.dropPolicy = dropPolicy;
+		this.stallTimeout = stallTimeout;
+		this.stallAction = stallAction;
+		this.maxAge = maxAge;
+		this.functions = List.copyOf(functions);
+		this.distributed = distributed;
+		this.minWorkers = minWorkers;
+	}
+
+	Class<T> inputType(){
+		return inputType;
+	}
+
+	Class<V> outputType(){
+		return outputType;
+	}
+
+	boolean isDistributed(){
+		return distributed;
+	}
+
+	NodeBehavior behavior(){
+		return behavior;
+	}
+
+	int threadCount(){
+		return functions.size();
+	}
+
+	//Whether any function expects a single value rather than a collection.
+	boolean takesSingleValue(){
+		for(PipelineFunction<T, V> pf : functions){
+			if(pf instanceof SingleValueFunction){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean isSource(){
+		return inputType.equals(Void.class);
+	}
+
+	boolean isSink(){
+		return outputType.equals(Void.class);
+	}
+
+	//Whether this stage and the next, which reads its output, can run on one thread, calling one function after the other.
+	//Only a blocking node between two single threads is a plain hand-off. Other behaviors buffer, replace, drop or reorder, so they are kept,
+	//as are steps whose functions the runnable treats specially, and steps whose handler, stall or age settings differ, since a fused step has only one of each.
+	boolean canFuseWith(Stage<?, ?> next){
+		return this.isPlain() && next.isPlain() && behavior == NodeBehavior.BLOCKING && !(functions.get(0) instanceof FlowSource)
+			&& handler == next.handler && stallTimeout == next.stallTimeout && stallAction == next.stallAction && maxAge == next.maxAge;
+	}
+
+	//Whether this stage has a single thread running an ordinary function.
+	private boolean isPlain(){
+		PipelineFunction<T, V> f = functions.get(0);
+		return functions.size() == 1 && !distributed && !(f instanceof Batching) && !(f instanceof FlowSink);
+	}
+
+	//Returns one stage running the given stages' functions in turn, which must each be able to fuse with the next.
+	//It reads the first stage's input, and its output node is the last stage's.
+	@SuppressWarnings("unchecked")
+	static Stage<?, ?> fuse(List<Stage<?, ?>> stages, int firstStage){
+		Stage<Object, ?> first = (Stage<Object, ?>)stages.get(0);
+		Stage<?, Object> last = (Stage<?, Object>)stages.get(stages.size() - 1);
+		List<PipelineFunction<?, ?>> functions = new ArrayList<PipelineFunction<?, ?>>();
+		for(Stage<?, ?> s : stages){
+			functions.add(s.functions.get(0));
+		}
+		PipelineFunction<Object, Object> fused = new FusedFunction<Object, Object>(functions, firstStage);
+		return new Stage<Object, Object>(first.inputType, last.outputType, first.handler, last.behavior, last.nodeCapacity, last.dropPolicy,
+			first.stallTimeout, first.stallAction, first.maxAge, List.of(fused), false, 0);
+	}
+
+	//Creates the node this stage deposits into. If the next stage is distributed, the node hands each generation to only one of its consumers,
+	//whatever this stage's node behavior is.
+	Node<V> createOutputNode(boolean nextIsDistributed){
+		return createNode(behavior, nodeCapacity, dropPolicy, nextIsDistributed);
+	}
+
+	//Creates a node with the given behavior, or one which distributes generations if the stage reading it is distributed.
+	static <V> Node<V> createNode(NodeBehavior behavior, int nodeCapacity, DropPolicy dropPolicy, boolean nextIsDistributed){
+		if(nextIsDistributed){
+			return new SharedQueueNode<V>(nodeCapacity);
+		}
+		if(behavior == NodeBehavior.BLOCKING){
+			return new SimpleNode<V>();
+		} else if(behavior == NodeBehavior.REPLACING){
+			return new ReplacingNode<V>();
+		} else if(behavior == NodeBehavior.RING_BUFFER){
+			return new RingBufferNode<V>(nodeCapacity);
+		} else if(behavior == NodeBehavior.QUEUE){
+			return new BoundedQueueNode<V>(nodeCapacity, dropPolicy);
+		} else if(behavior == NodeBehavior.REORDERING){
+			return new ReorderingNode<V>(nodeCapacity);
+		}
+		throw new PipelineBuilderException("Unknown node behavior " + behavior + ".");
+	}
+
+	//Returns the discard or share action for values of the given type, out of actions keyed by type, or one which does nothing if none was set.
+	@SuppressWarnings("unchecked")
+	static <T> Consumer<? super T> actionFor(Map<Class<?>, Consumer<?>> actions, Class<T> type){
+		Consumer<? super T> answer = (Consumer<? super T>)actions.get(type);
+		return answer == null ? Node.forget() : answer;
+	}
+
+	//Creates one runnable per function, connected to the given nodes. The pacer is only used if this is the first stage. The clock is shared by the whole pipeline.
+	//The discard actions, keyed by type, decide what the runnables do with the values they throw away. Flow sources and sinks are given them too,
+	//along with the share actions, for the values they buffer. The caller is responsible for making sure the nodes carry this stage's input and output types.
+	@SuppressWarnings("unchecked")
+	List<PipelineRunnable<?, ?>> createRunnables(Node<?> inputNode, Node<?> outputNode, int stageIndex, FramePacer pacer, FrameClock clock, Map<Class<?>, Consumer<?>> discardActions, Map<Class<?>, Consumer<?>> shareActions){
+		List<PipelineRunnable<?, ?>> answer = new ArrayList<PipelineRunnable<?, ?>>(functions.size());
+		//Distributed sources share one counter, so that every frame they produce gets its own sequence number.
+		AtomicLong sharedSequence = distributed && this.isSource() ? new AtomicLong() : null;
+		ElasticPool pool = minWorkers > 0 ? new ElasticPool(stageIndex, minWorkers, functions.size(), inputNode, outputNode) : null;
+		int worker = 0;
+		for(PipelineFunction<T, V> pf : functions){
+			PipelineRunnable<T, V> pr = new PipelineRunnable<T, V>((Node<T>)inputNode, pf, (Node<V>)outputNode, handler, this.isSource() ? pacer : null, stageIndex, worker++);
+			pr.setSharedSequence(sharedSequence);
+			pr.setStallTimeout(stallTimeout, stallAction);
+			pr.setFrameClock(clock);
+			pr.setMaxAge(maxAge);
+			pr.setDiscardActions(actionFor(discardActions, inputType), actionFor(discardActions, outputType));
+			if(pf instanceof FlowSource){
+				((FlowSource<V>)pf).setDiscardAction(actionFor(discardActions, outputType));
+			} else if(pf instanceof FlowSink){
+				((FlowSink<T>)pf).setActions(actionFor(discardActions, inputType), actionFor(shareActions, inputType));
+			}
+			if(pool != null){
+				pr.setElasticPool(pool);
+				pool.add(pr);
+			}
+			answer.add(pr);
+		}
+		return answer;
+	}
+}
@@ -0,0 +1,23 @@
+package concurrency;
+
+/**Enum representing what a pipeline's watchdog does when a call to a function takes longer than its stall timeout.
+Whatever the action, the stall is reported to the stalled thread's uncaughtExceptionHandler as a StallException.
+*/
+public enum StallAction{
+	/** Represents only reporting the stall.
+	The thread is left alone, in case the function finishes eventually.
+	*/
+	REPORT,
+
+	/** Represents skipping the frame.
+	The stalled thread is interrupted, and whatever its function returns or throws for that frame is thrown away.
+	Only functions which give up when interrupted, such as ones sleeping or waiting on a lock, can be skipped.
+	*/
+	SKIP,
+
+	/** Represents restarting the thread.
+	The stalled thread is abandoned, and a new thread carries on running the same function from the next frame.
+	The abandoned thread is interrupted, and exits without depositing anything once its function returns, if it ever does.
+	*/
+	RESTART
+}
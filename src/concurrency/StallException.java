@@ -0,0 +1,44 @@
+package concurrency;
+
+/**
+Class representing a call to a pipeline function which took longer than its stall timeout. <br>
+The pipeline's watchdog passes one to the uncaughtExceptionHandler of the stalled thread, from the watchdog's own thread.
+Its stack trace is the stalled thread's stack trace at the time the stall was detected, which shows where the function is stuck.
+*/
+public class StallException extends RuntimeException {
+	private final int stage;
+	private final int worker;
+	private final long frame;
+
+	StallException(int stage, int worker, long frame, long stalledNanos, StackTraceElement[] stackTrace){
+		super(String.format("Stage %d worker %d has spent %.1fms on frame %d.", stage, worker, stalledNanos / 1e6, frame));
+		this.stage = stage;
+		this.worker = worker;
+		this.frame = frame;
+		this.setStackTrace(stackTrace);
+	}
+
+	/**
+	Returns the index of the stage the stalled thread belongs to.
+	@return the index of the stage.
+	*/
+	public int stage(){
+		return stage;
+	}
+
+	/**
+	Returns the index of the stalled thread within its stage.
+	@return the index of the thread within its stage.
+	*/
+	public int worker(){
+		return worker;
+	}
+
+	/**
+	Returns the sequence number of the frame the stalled thread was working on.
+	@return the frame sequence number.
+	*/
+	public long frame(){
+		return frame;
+	}
+}
@@ -0,0 +1,109 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Pipeline which forwards to a current pipeline, and swaps it for a new one when reconfigured.
+//The old pipeline is drained with shutdown before the new one starts, so a frame is never split between them.
+class SwappingPipeline implements ReconfigurablePipeline {
+	private final ReentrantLock lock = new ReentrantLock();
+	//The pipeline running, or about to run once the one before it has drained. Only changed while holding the lock.
+	private volatile Pipeline current;
+	//The pipeline being drained to make way for current, or null if none is.
+	private volatile Pipeline draining;
+	private boolean started = false;
+	private boolean stopped = false;
+
+	SwappingPipeline(Pipeline p){
+		current = p;
+	}
+
+	public CompletableFuture<Void> reconfigure(PipelineBuilder builder){
+		Pipeline next = builder.build();
+		lock.lock();
+		try {
+			if(stopped){
+				throw new IllegalStateException("Cannot reconfigure a pipeline which has been shut down.");
+			}
+			Pipeline old = current;
+			current = next;
+			if(!started){
+				return CompletableFuture.completedFuture(null);
+			}
+			draining = old;
+			//Reconfiguring again before this swap is done shuts next down as well. It is still started, and stops straight away.
+			return old.shutdown().thenRun(() -> {
+				lock.lock();
+				try {
+					if(draining == old){
+						draining = null;
+					}
+					next.start();
+				} finally {
+					lock.unlock();
+				}
+			});
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void start(){
+		lock.lock();
+		try {
+			started = true;
+			current.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void interrupt(){
+		Pipeline d = draining;
+		if(d != null){
+			d.interrupt();
+		}
+		current.interrupt();
+	}
+
+	public CompletableFuture<Void> shutdown(){
+		lock.lock();
+		try {
+			stopped = true;
+			return current.shutdown();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//A pipeline drained for a swap terminates too, but the pipeline replacing it runs on, so the wait carries on with whichever pipeline is current.
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(true){
+			Pipeline p = current;
+			if(!p.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)){
+				return false;
+			}
+			if(current == p){
+				return true;
+			}
+		}
+	}
+
+	public List<Long> droppedFrames(){
+		return current.droppedFrames();
+	}
+
+	public PipelineMetrics metrics(){
+		return current.metrics();
+	}
+
+	public void setFrequency(double hz){
+		current.setFrequency(hz);
+	}
+
+	public double frequency(){
+		return current.frequency();
+	}
+}
@@ -0,0 +1,57 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class TraceTest{
+	public static void main(String[] args) throws Exception {
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return counter[0]++;
+		};
+		PipelineFunction<Integer, Integer> secondLambda = PipelineFunction.single((t) -> {
+			long start = FrameTrace.begin();
+			try {
+				Thread.sleep(2);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			} finally {
+				FrameTrace.end("inner", start);
+			}
+			return t;
+		});
+		PipelineFunction<Integer, Void> thirdLambda = (t) -> {
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setFrequency(200);
+		builder.addThreads(Void.class, Integer.class, firstLambda);
+		builder.addWorkers(Integer.class, Integer.class, NodeBehavior.REORDERING, 2, secondLambda);
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		//The ring holds fewer spans than the run records, so the oldest are overwritten.
+		FrameTrace.enable(1000);
+		p.start();
+		Thread.sleep(1000);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		FrameTrace.disable();
+		StringBuilder trace = new StringBuilder();
+		FrameTrace.dump(trace);
+		String json = trace.toString();
+		int spans = json.split("\"ph\":\"X\"", -1).length - 1;
+		int threads = json.split("\"ph\":\"M\"", -1).length - 1;
+		int inner = json.split("\"name\":\"inner\"", -1).length - 1;
+		System.out.println("finished " + finished + ", " + counter[0] + " produced, " + spans + " spans (" + inner + " inner) on " + threads + " threads, " + json.length() + " characters");
+		System.out.println(json.substring(0, Math.min(json.length(), 600)));
+		if(!finished){
+			p.interrupt();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+//Watches how long each thread of a pipeline has been in its current call to its function.
+//A call which takes longer than its stage's stall timeout is reported once, to the thread's uncaughtExceptionHandler, and then dealt with according to the stage's stall action.
+//Only calls to functions are watched. Threads waiting on a node are usually waiting on a stalled thread elsewhere, which is the one reported.
+class Watchdog implements Runnable {
+	private final SimplePipeline pipeline;
+	private final List<PipelineRunnable<?, ?>> runnables;
+	//The start of the last call reported for each runnable, so that each stall is only reported once.
+	private final long[] reported;
+	//How often to check, in nanoseconds. A stall is noticed at most this long after the timeout has passed.
+	private final long interval;
+
+	Watchdog(SimplePipeline pipeline, List<PipelineRunnable<?, ?>> runnables){
+		this.pipeline = pipeline;
+		this.runnables = runnables;
+		this.reported = new long[runnables.size()];
+		long shortest = Long.MAX_VALUE;
+		for(PipelineRunnable<?, ?> pr : runnables){
+			if(pr.stallTimeout() > 0){
+				shortest = Math.min(shortest, pr.stallTimeout());
+			}
+		}
+		this.interval = Math.max(1_000_000L, shortest / 4);
+	}
+
+	//Whether any runnable has a stall timeout, and so whether a watchdog is needed at all.
+	static boolean isNeeded(List<PipelineRunnable<?, ?>> runnables){
+		for(PipelineRunnable<?, ?> pr : runnables){
+			if(pr.stallTimeout() > 0){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void run(){
+		while(!pipeline.isTerminated()){
+			long now = System.nanoTime();
+			for(int i = 0; i < runnables.size(); i++){
+				this.check(i, now);
+			}
+			LockSupport.parkNanos(interval);
+		}
+	}
+
+	private void check(int i, long now){
+		PipelineRunnable<?, ?> pr = runnables.get(i);
+		long timeout = pr.stallTimeout();
+		long start = pr.recorder().executeStart();
+		if(timeout == 0 || start == 0 || start == reported[i] || now - start <= timeout){
+			return;
+		}
+		reported[i] = start;
+		Thread stalled = pr.thread();
+		//The stack trace is taken before acting, so it shows where the function was stuck rather than where it went after being interrupted.
+		StallException e = new StallException(pr.recorder().stage(), pr.recorder().worker(), pr.sequence(), now - start, stalled.getStackTrace());
+		pr.recorder().stalled();
+		if(pr.stallAction() == StallAction.SKIP){
+			pr.skip(start);
+		} else if(pr.stallAction() == StallAction.RESTART && pr.abandon(start)){
+			pipeline.restart(i);
+		}
+		if(pr.handler() != null){
+			pr.handler().uncaughtException(stalled, e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+public class WatchdogTest{
+	static int total = 0;
+	public static void main(String[] args) throws InterruptedException {
+		for(StallAction sa : StallAction.values()){
+			run(sa);
+		}
+	}
+
+	static void run(StallAction sa) throws InterruptedException {
+		total = 0;
+		PipelineBuilder builder = Pipeline.builder();
+
+		int[] counter = {0};
+		PipelineFunction<Void, Integer> firstLambda = (t) -> {
+			return counter[0]++;
+		};
+		//Hangs on frame 10, as a camera read might.
+		PipelineFunction<Integer, Integer> secondLambda = (t) -> {
+			int i = t.iterator().next();
+			try {
+				Thread.sleep(i == 10 ? 1000 : 2);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return i;
+		};
+		PipelineFunction<Integer, Void> thirdLambda = (t) -> {
+			total++;
+			return null;
+		};
+
+		int[] stalls = {0};
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			if(ex instanceof StallException){
+				stalls[0]++;
+				System.out.println(ex.getMessage() + " at " + ex.getStackTrace()[0]);
+			} else {
+				ex.printStackTrace();
+			}
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.addThreads(Void.class, Integer.class, firstLambda);
+		builder.setStallTimeout(50).setStallAction(sa);
+		builder.addThreads(Integer.class, Integer.class, secondLambda);
+		builder.setStallTimeout(0);
+		builder.addThreads(Integer.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.shutdown();
+		boolean finished = p.awaitTermination(5, TimeUnit.SECONDS);
+		//Only REPORT leaves the display waiting out the whole hang.
+		System.out.println(sa + ": finished " + finished + ", " + counter[0] + " produced, " + total + " consumed, " + stalls[0] + " stalls reported");
+		System.out.println(p.metrics().stage(1).get(0));
+		if(!finished){
+			p.interrupt();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package concurrency;
+
+/**
+Snapshot of the metrics for one thread in a pipeline. <br>
+Stages are numbered in the order they were added to the PipelineBuilder, starting at 0,
+and workers are numbered in the order their functions were passed to the PipelineBuilder, starting at 0 within each stage.
+*/
+public final class WorkerMetrics {
+	private final int stage;
+	private final int worker;
+	private final String functionName;
+	private final LatencyHistogram executeTime;
+	private final long withdrawBlockedNanos;
+	private final long depositBlockedNanos;
+	private final long itemsProcessed;
+	private final long failures;
+	private final long skippedTicks;
+	private final long stalls;
+	private final long expiredFrames;
+	private final long elapsedNanos;
+
+	WorkerMetrics(int stage, int worker, String functionName, LatencyHistogram executeTime, long withdrawBlockedNanos, long depositBlockedNanos, long itemsProcessed, long failures, long skippedTicks, long stalls, long expiredFrames, long elapsedNanos){
+		this.stage = stage;
+		this.worker = worker;
+		this.functionName = functionName;
+		this.executeTime = executeTime;
+		this.withdrawBlockedNanos = withdrawBlockedNanos;
+		this.depositBlockedNanos = depositBlockedNanos;
+		this.itemsProcessed = itemsProcessed;
+		this.failures = failures;
+		this.skippedTicks = skippedTicks;
+		this.stalls = stalls;
+		this.expiredFrames = expiredFrames;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	Returns the index of the stage this thread belongs to.
+	@return the index of the stage this thread belongs to.
+	*/
+	public int stage(){
+		return stage;
+	}
+
+	/**
+	Returns the index of this thread within its stage.
+	@return the index of this thread within its stage.
+	*/
+	public int worker(){
+		return worker;
+	}
+
+	/**
+	Returns the class name of the function this thread runs.
+	@return the class name of the function this thread runs.
+	*/
+	public String functionName(){
+		return functionName;
+	}
+
+	/**
+	Returns a histogram of how long each call to the function took.
+	@return a histogram of how long each call to the function took.
+	*/
+	public LatencyHistogram executeTime(){
+		return executeTime;
+	}
+
+	/**
+	Returns the total time, in nanoseconds, this thread has spent waiting to withdraw from its input node.
+	@return the total time spent waiting to withdraw.
+	*/
+	public long withdrawBlockedNanos(){
+		return withdrawBlockedNanos;
+	}
+
+	/**
+	Returns the total time, in nanoseconds, this thread has spent waiting to deposit into its output node.
+	@return the total time spent waiting to deposit.
+	*/
+	public long depositBlockedNanos(){
+		return depositBlockedNanos;
+	}
+
+	/**
+	Returns the number of items the function has processed successfully.
+	@return the number of items processed.
+	*/
+	public long itemsProcessed(){
+		return itemsProcessed;
+	}
+
+	/**
+	Returns the number of calls to the function which threw an exception.
+	@return the number of failed calls.
+	*/
+	public long failures(){
+		return failures;
+	}
+
+	/**
+	Returns the number of frame ticks this thread skipped because it fell behind. Always 0 except in the first step of a pipeline using PacingPolicy.SKIP.
+	@return the number of skipped ticks.
+	*/
+	public long skippedTicks(){
+		return skippedTicks;
+	}
+
+	/**
+	Returns the number of calls to the function which the watchdog found taking longer than the stage's stall timeout. Always 0 if the stage has none.
+	@return the number of stalls.
+	*/
+	public long stalls(){
+		return stalls;
+	}
+
+	/**
+	Returns the number of items this thread dropped without processing, because their frame was older than the stage's maximum frame age.
+	@return the number of expired frames.
+	*/
+	public long expiredFrames(){
+		return expiredFrames;
+	}
+
+	/**
+	Returns the average number of items processed per second since this thread started, or 0 if it has not started.
+	@return the number of items processed per second.
+	*/
+	public double itemsPerSecond(){
+		return elapsedNanos == 0 ? 0 : itemsProcessed * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString(){
+		return String.format("stage %d worker %d (%s): %.1f items/s, execute [%s], blocked withdrawing %.1fms, blocked depositing %.1fms, %d failures, %d skipped ticks, %d stalls, %d expired",
+			stage, worker, functionName, itemsPerSecond(), executeTime, withdrawBlockedNanos / 1e6, depositBlockedNanos / 1e6, failures, skippedTicks, stalls, expiredFrames);
+	}
+}
@@ -0,0 +1,108 @@
+package concurrency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Records how one PipelineRunnable spends its time.
+//A thread replacing a stalled one carries on with the same recorder while the stalled thread may still be finishing its call,
+//so two threads can record at once. Counters are LongAdders rather than volatile fields for that reason, and recording never allocates.
+//Stalls are also written by the pipeline's watchdog thread.
+class WorkerRecorder {
+	private final int stage;
+	private final int worker;
+	private final String functionName;
+
+	private final LatencyHistogram executeTime = new LatencyHistogram();
+	private final LongAdder withdrawBlocked = new LongAdder();
+	private final LongAdder depositBlocked = new LongAdder();
+	private final LongAdder processed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder expired = new LongAdder();
+	private volatile long startTime = 0;
+	//When the call to the function in progress started, or 0 if the function is not executing.
+	private final AtomicLong executeStart = new AtomicLong();
+	private final LongAdder stalls = new LongAdder();
+
+	WorkerRecorder(int stage, int worker, PipelineFunction<?, ?> function){
+		this.stage = stage;
+		this.worker = worker;
+		//A batch step is named after the batch function it runs, and fused steps after each of theirs.
+		if(function instanceof Batching){
+			this.functionName = ((Batching<?, ?>)function).functionName();
+		} else if(function instanceof FusedFunction){
+			this.functionName = ((FusedFunction<?, ?>)function).functionName();
+		} else {
+			this.functionName = function.getClass().getName();
+		}
+	}
+
+	int stage(){
+		return stage;
+	}
+
+	int worker(){
+		return worker;
+	}
+
+	//A thread replacing a stalled one carries on with the same recorder, and the same start time.
+	void started(){
+		if(startTime == 0){
+			startTime = System.nanoTime();
+		}
+	}
+
+	void executing(long start){
+		executeStart.set(start);
+	}
+
+	//Only clears the call which started at start, so a stalled thread finishing late does not hide its replacement's call from the watchdog.
+	void idle(long start){
+		executeStart.compareAndSet(start, 0);
+	}
+
+	long executeStart(){
+		return executeStart.get();
+	}
+
+	void stalled(){
+		stalls.increment();
+	}
+
+	void withdrew(long blockedNanos){
+		withdrawBlocked.add(blockedNanos);
+	}
+
+	void executed(long nanos){
+		executeTime.record(nanos);
+		processed.increment();
+	}
+
+	void executedBatch(long nanos, int items){
+		executeTime.record(nanos);
+		processed.add(items);
+	}
+
+	void failed(){
+		failed.increment();
+	}
+
+	void skipped(long ticks){
+		skipped.add(ticks);
+	}
+
+	void expired(){
+		expired.increment();
+	}
+
+	void deposited(long blockedNanos){
+		depositBlocked.add(blockedNanos);
+	}
+
+	WorkerMetrics snapshot(){
+		long start = startTime;
+		long elapsed = start == 0 ? 0 : System.nanoTime() - start;
+		return new WorkerMetrics(stage, worker, functionName, executeTime.copy(), withdrawBlocked.sum(), depositBlocked.sum(),
+			processed.sum(), failed.sum(), skipped.sum(), stalls.sum(), expired.sum(), elapsed);
+	}
+}
@@ -0,0 +1,50 @@
+package concurrency;
+
+import java.util.*;
+
+public class WorkerTest{
+	static int total = 0;
+	static int mistakes = 0;
+	public static void main(String[] args) throws InterruptedException {
+		PipelineBuilder builder = Pipeline.builder();
+
+		PipelineFunction<Void, Long> firstLambda = (t) -> {
+			return FrameContext.sequence();
+		};
+		PipelineFunction<Long, Long> secondLambda = (t) -> {
+			//Slow enough that one worker could not keep up on its own.
+			try {
+				Thread.sleep(4);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return t.iterator().next();
+		};
+		long[] last = {-1};
+		PipelineFunction<Long, Void> thirdLambda = (t) -> {
+			long value = t.iterator().next();
+			//Every frame must be processed exactly once, and arrive in order.
+			if(t.size() != 1 || value != last[0] + 1){
+				mistakes++;
+			}
+			last[0] = value;
+			total++;
+			return null;
+		};
+
+		Thread.UncaughtExceptionHandler logAndContinue = (th, ex) -> {
+			ex.printStackTrace();
+		};
+		builder.setDefaultUncaughtExceptionHandler(logAndContinue);
+		builder.setNodeCapacity(8);
+		builder.addThreads(Void.class, Long.class, firstLambda);
+		builder.addWorkers(Long.class, Long.class, NodeBehavior.REORDERING, 4, secondLambda);
+		builder.addThreads(Long.class, Void.class, thirdLambda);
+		Pipeline p = builder.build();
+		p.start();
+		Thread.sleep(500);
+		p.interrupt();
+		System.out.println(total + " frames, " + mistakes + " mistakes");
+		System.out.println(p.metrics());
+	}
+}
@@ -111,6 +111,15 @@ public class ConfigGenerator {
 		tensorConfig.put(0.01);
 
 		saveConfig("./config/TensorSimulation.json", tensorConfig);
+
+		//Default settings for StrengthsGUI's frame pipeline. The first two can also be changed in the GUI's settings while it runs.
+		//The rest are read by concurrency.PipelineConfig, so any pipeline-wide setting of a pipeline description can be added here.
+		JSONObject pipeline = new JSONObject();
+		pipeline.put("workers", 2);
+		pipeline.put("nodeBehavior", "RING_BUFFER");
+		pipeline.put("nodeCapacity", 4);
+		pipeline.put("dropPolicy", "BLOCK");
+		saveConfig("./config/pipeline.json", pipeline);
 	}
 
 	public static JSONObject markerObject(int id, Double xrot, Double yrot, Double zrot, Double xtrans, Double ytrans, Double ztrans){
@@ -22,19 +22,33 @@ import markerdetector.*;
 import userinterface.*;
 
 public class Driver{
-	private static VideoCap webcam = new VideoCap(1);
+	private static final int DEFAULT_CAMERA = 1;
+	//Frame rate for directories of images, which do not record one.
+	private static final int IMAGE_FRAME_RATE = 30;
 
+	//Arguments: detector parameters, camera parameters, and optionally where to take frames from and "fast".
+	//Frames come from a camera ID, a directory of PNG or JPEG images, or a video file. Recorded frames are played back in real time, unless "fast" is given.
 	public static void main(String[] args) throws IOException {
         //Might want some more preprocessing on this one, like using a CLI library or ensuring that the file exists.
         String detectorParameters = args[0];
         String cameraParameters = args[1];
+        FramePacing pacing = args.length > 3 && args[3].equals("fast") ? FramePacing.AS_FAST_AS_POSSIBLE : FramePacing.REAL_TIME;
+        FrameSource source = args.length > 2 ? openSource(args[2], pacing) : new VideoCap(DEFAULT_CAMERA);
         MarkerDetector detector = new MarkerDetector(detectorParameters, cameraParameters);
         CalibrationInformation cameraInfo = detector.getCameraInformation();
         StrengthsGUI gui = new StrengthsGUI(cameraInfo);
-        while(true){
-            Mat m = webcam.getOneFrame();
-            DetectorResults results = detector.detectMarkers(m, 4);
-            gui.updateSimulations(results);
-        }
+        //Capture, detection, simulation and presentation run as a pipeline on threads of their own, which keep the program running after main returns.
+        gui.start(source);
+	}
+
+	private static FrameSource openSource(String name, FramePacing pacing) throws IOException {
+		if(name.matches("\\d+")){
+			return new VideoCap(Integer.parseInt(name));
+		}
+		File f = new File(name);
+		if(f.isDirectory()){
+			return new ImageSequenceSource(f.toPath(), IMAGE_FRAME_RATE, pacing);
+		}
+		return new VideoFileSource(name, pacing);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package markerdetector;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Released DetectionBuffers, kept to be written over by a later detection or replayed frame. Like a FramePool, keeps at most IDLE_BUFFERS.
+//Buffers may be taken on one thread and recycled on any other.
+final class DetectionBufferPool {
+	//The largest number of released containers kept for reuse. This covers the frames a pipeline has in flight.
+	private static final int IDLE_BUFFERS = 8;
+
+	private final ConcurrentLinkedQueue<DetectionBuffers> idle = new ConcurrentLinkedQueue<DetectionBuffers>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final AtomicLong allocations = new AtomicLong();
+
+	//RI: idleCount is the size of idle, give or take concurrent takes and recycles.
+	//AF: Represents the containers which are free to be written over.
+
+	//Returns an idle set of containers, or a new one if there is none.
+	DetectionBuffers take(){
+		DetectionBuffers buffers = idle.poll();
+		if(buffers != null){
+			idleCount.decrementAndGet();
+			return buffers;
+		}
+		allocations.incrementAndGet();
+		return new DetectionBuffers(this);
+	}
+
+	//Called once the results holding the buffers are released.
+	void recycle(DetectionBuffers buffers){
+		if(idleCount.incrementAndGet() <= IDLE_BUFFERS){
+			idle.offer(buffers);
+			return;
+		}
+		idleCount.decrementAndGet();
+		buffers.ids.release();
+		buffers.rotationVectors.release();
+		buffers.translationVectors.release();
+	}
+
+	//Returns the number of sets of containers this pool has made.
+	long allocations(){
+		return allocations.get();
+	}
+}
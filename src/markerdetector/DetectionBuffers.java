@@ -0,0 +1,33 @@
+package markerdetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.opencv.core.Mat;
+
+//Containers for the output of one detection, or of one frame replayed by a SessionReader. They belong to the DetectorResults made from them until it is released,
+//and then go back to the pool of the DetectorSession or SessionReader which made them, to be written over by a later frame.
+final class DetectionBuffers {
+	final Mat ids = new Mat();
+	final List<Mat> corners = new ArrayList<Mat>();
+	final List<Mat> rejected = new ArrayList<Mat>();
+	final Mat rotationVectors = new Mat();
+	final Mat translationVectors = new Mat();
+	private final DetectionBufferPool pool;
+
+	DetectionBuffers(DetectionBufferPool pool){
+		this.pool = pool;
+	}
+
+	//The detector and the reader make new mats for the corners of every frame, so their native memory is freed here rather than left for the garbage collector.
+	void recycle(){
+		for(Mat m : corners){
+			m.release();
+		}
+		corners.clear();
+		for(Mat m : rejected){
+			m.release();
+		}
+		rejected.clear();
+		pool.recycle(this);
+	}
+}
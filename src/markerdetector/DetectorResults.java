@@ -4,6 +4,7 @@ import org.opencv.core.*;
 import org.opencv.aruco.*;
 import java.util.List;
 import java.util.LinkedList;
+import util.PooledFrame;
 
 /**Container class containing all results from a marker detection operation, including the base image, 
 dictionary used, corners of detected markers, corners of rejected markers, rotation vectors, and translation vectors.
@@ -20,6 +21,13 @@ public class DetectorResults {
 	private final Mat rotationVectors;
 	private final Mat translationVectors;
 	private final CalibrationInformation calibrationInformation;
+	//The pooled frame the base matrix belongs to, or null if the base matrix is not pooled. This object holds one reference to it.
+	private final PooledFrame frame;
+	//The DetectorSession containers which ids, corners, rejected and the vectors belong to, or null if they do not belong to a session.
+	//They go back to the session when this object is released.
+	private final DetectionBuffers buffers;
+	//True if the detections belong to a DetectorSession, either through buffers or through the results this object was derived from.
+	private final boolean borrowed;
 
 	/**Constructs a DetectorResults with the specified values.
 	*/
@@ -32,12 +40,43 @@ public class DetectorResults {
 		this.rotationVectors = rotationVectors;
 		this.translationVectors = translationVectors;
 		this.calibrationInformation = ci;
+		this.frame = null;
+		this.buffers = null;
+		this.borrowed = false;
+	}
+
+	//Constructs a DetectorResults holding a DetectorSession's containers, which it hands back when released. frame is the reference this object holds, if any.
+	DetectorResults(Mat base, PooledFrame frame, Dictionary dict, DetectionBuffers buffers, CalibrationInformation ci){
+		this.baseMatrix = base;
+		this.frame = frame;
+		this.dict = dict;
+		this.ids = buffers.ids;
+		this.corners = buffers.corners;
+		this.rejected = buffers.rejected;
+		this.rotationVectors = ci == null ? null : buffers.rotationVectors;
+		this.translationVectors = ci == null ? null : buffers.translationVectors;
+		this.calibrationInformation = ci;
+		this.buffers = buffers;
+		this.borrowed = true;
 	}
 
 	/**Constructs a DetectorResults with the same values as the original, but a new base Mat
 	*/
 	public DetectorResults(Mat base, DetectorResults oldDetector){
+		this(base, null, oldDetector);
+	}
+
+	/**Constructs a DetectorResults with the same values as the original, but a pooled frame as the base image.<br>
+	The new DetectorResults takes its own reference to base, which it gives up when release is called.
+	@throws IllegalStateException if base has already been released.
+	*/
+	public DetectorResults(PooledFrame base, DetectorResults oldDetector){
+		this(base.mat(), base.retain(), oldDetector);
+	}
+
+	private DetectorResults(Mat base, PooledFrame frame, DetectorResults oldDetector){
 		this.baseMatrix = base;
+		this.frame = frame;
 		this.dict = oldDetector.dict;
 		this.ids = oldDetector.ids;
 		this.corners = oldDetector.corners;
@@ -45,6 +84,8 @@ public class DetectorResults {
 		this.rotationVectors = oldDetector.rotationVectors;
 		this.translationVectors = oldDetector.translationVectors;
 		this.calibrationInformation = oldDetector.calibrationInformation;
+		this.buffers = null;
+		this.borrowed = oldDetector.borrowed;
 	}
 
 	/**Returns a MarkerInformation object representing information for the marker specified by id.
@@ -75,6 +116,57 @@ public class DetectorResults {
 		return MatMathUtils.copyof(this.baseMatrix);
 	}
 
+	/**Copies the base image into dst. dst is only reallocated if its size or type differs from the base image's,
+	so reusing dst, for example a frame from a FramePool, avoids the allocation that baseImage makes.
+	@param dst the mat to copy the base image into.
+	@throws NullPointerException if dst is null.
+	*/
+	public void copyBaseImageTo(Mat dst){
+		this.baseMatrix.copyTo(dst);
+	}
+
+	/**Returns the size of the base image, without copying it.
+	@return the size of the base image.
+	*/
+	public Size baseSize(){
+		return this.baseMatrix.size();
+	}
+
+	/**Returns the OpenCV type of the base image, without copying it.
+	@return the OpenCV type of the base image.
+	*/
+	public int baseType(){
+		return this.baseMatrix.type();
+	}
+
+	/**Returns a DetectorResults with the same values as this one, but which owns a copy of the base image rather than a pooled frame,
+	and copies of the detection results rather than a DetectorSession's reusable containers.<br>
+	Use this to keep results around after they have been released, since a released pooled frame or container may be reused for a later frame.
+	@return a DetectorResults which does not hold a pooled frame or a session's containers.
+	*/
+	public DetectorResults detached(){
+		if(this.borrowed){
+			return new DetectorResults(this.baseImage(), this.dict, this.getIds(), this.corners(), this.rejected(),
+				this.rotationVectors(), this.translationVectors(), this.calibrationInformation);
+		}
+		return this.frame == null ? this : new DetectorResults(this.baseImage(), this);
+	}
+
+	/**Gives up this DetectorResults' reference to its pooled base frame, if it has one, and hands its containers back to the DetectorSession
+	which detected it, if there was one. Must be called at most once, after which the base image must not be used.<br>
+	Results made from these with the DetectorResults constructors share their detections, so they must not be used after these are released either.
+	Use detached to keep them.
+	@throws IllegalStateException if the pooled base frame has already been released.
+	*/
+	public void release(){
+		if(this.frame != null){
+			this.frame.release();
+		}
+		if(this.buffers != null){
+			this.buffers.recycle();
+		}
+	}
+
 	/**Returns the dictionary used to detect markers.
 	@return the dictionary used to detect markers.
 	*/
@@ -125,6 +217,28 @@ public class DetectorResults {
 		return MatMathUtils.copyof(this.translationVectors);
 	}
 
+	//The following return this DetectorResults' own mats, without copying them, for SessionRecorder, which only reads them.
+	//The pose vectors are null if the detection was done without calibration information.
+	Mat baseView(){
+		return this.baseMatrix;
+	}
+
+	Mat idsView(){
+		return this.ids;
+	}
+
+	List<Mat> cornersView(){
+		return this.corners;
+	}
+
+	Mat rotationVectorsView(){
+		return this.rotationVectors;
+	}
+
+	Mat translationVectorsView(){
+		return this.translationVectors;
+	}
+
 	/**Returns the calibration information used in this marker detection.
 	@return the calibration information used in this marker detection.
 	*/
@@ -0,0 +1,115 @@
+package markerdetector;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.opencv.aruco.Aruco;
+import org.opencv.aruco.DetectorParameters;
+import org.opencv.aruco.Dictionary;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import util.PooledFrame;
+
+/**Reusable state for detecting markers in a stream of frames, made by MarkerDetector.newSession.<br>
+A session looks up each dictionary once, copies the calibration matrices once, and converts each frame to grayscale into a buffer it keeps,
+so the detector does not convert it again. The ids, corners and pose vectors of each detection are written into containers which go back
+to the session when the results are released, so a session which is kept busy allocates very little per frame.<br>
+MarkerDetector.detectMarkers keeps a session for each thread which calls it, so most code need not use sessions directly.<br>
+A session must only be used by one thread at a time, but the results it returns may be released on any thread.
+*/
+public final class DetectorSession {
+	//Dictionaries never change, so every session shares them.
+	private static final ConcurrentMap<Integer, Dictionary> dictionaries = new ConcurrentHashMap<Integer, Dictionary>();
+	//Side length of the markers, in the units of the estimated translations.
+	private static final float MARKER_LENGTH = 1.0f;
+
+	private final DetectorParameters params;
+	private final CalibrationInformation calibrationInformation;
+	private final Mat cameraMatrix;
+	private final Mat distCoeffs;
+	private final Mat gray = new Mat();
+	private final DetectionBufferPool bufferPool = new DetectionBufferPool();
+
+	//RI: cameraMatrix and distCoeffs are null exactly when calibrationInformation is.
+	//AF: Represents a detector's parameters and calibration, with the buffers it writes detections into.
+
+	DetectorSession(DetectorParameters params, CalibrationInformation ci){
+		this.params = params;
+		this.calibrationInformation = ci;
+		this.cameraMatrix = ci == null ? null : ci.cameraMatrix();
+		this.distCoeffs = ci == null ? null : ci.distCoeffs();
+	}
+
+	/**Returns the predefined dictionary with the given id. Each dictionary is only made once, and is shared by every caller.
+	@param id the id of the dictionary, as passed to Aruco.getPredefinedDictionary.
+	@return the dictionary.
+	*/
+	public static Dictionary dictionary(int id){
+		return dictionaries.computeIfAbsent(id, Aruco::getPredefinedDictionary);
+	}
+
+	/**Detects all markers within the source mat, and estimates their poses if the session has calibration information.<br>
+	The results should be released once they are no longer needed, so their containers can be reused. Results derived from them must not be used after that.
+	@param src The mat to detect markers from. It is not copied, so it must not change while the results are in use.
+	@param dict_id The dictionary to get markers from.
+	@throws NullPointerException if src is null.
+	@return a DetectorResults object containing the results of this detection.
+	*/
+	public DetectorResults detectMarkers(Mat src, int dict_id){
+		DetectionBuffers buffers = this.detect(src, dict_id);
+		return new DetectorResults(src, null, dictionary(dict_id), buffers, calibrationInformation);
+	}
+
+	/**Detects all markers within a pooled frame, and estimates their poses if the session has calibration information.<br>
+	The returned DetectorResults takes its own reference to the frame, so the caller may release theirs straight away.
+	The results must be released once they are no longer needed.
+	@param src The frame to detect markers from.
+	@param dict_id The dictionary to get markers from.
+	@throws NullPointerException if src is null.
+	@throws IllegalStateException if src has already been released.
+	@return a DetectorResults object containing the results of this detection.
+	*/
+	public DetectorResults detectMarkers(PooledFrame src, int dict_id){
+		DetectionBuffers buffers = this.detect(src.mat(), dict_id);
+		return new DetectorResults(src.mat(), src.retain(), dictionary(dict_id), buffers, calibrationInformation);
+	}
+
+	private DetectionBuffers detect(Mat src, int dict_id){
+		Dictionary dictionary = dictionary(dict_id);
+		DetectionBuffers buffers = bufferPool.take();
+		//The detector works on grayscale, and converts colour frames itself into a new mat every time unless it is given grayscale.
+		Mat image = src;
+		if(src.channels() == 3){
+			Imgproc.cvtColor(src, gray, Imgproc.COLOR_BGR2GRAY);
+			image = gray;
+		} else if(src.channels() == 4){
+			Imgproc.cvtColor(src, gray, Imgproc.COLOR_BGRA2GRAY);
+			image = gray;
+		}
+		if(calibrationInformation == null){
+			Aruco.detectMarkers(image, dictionary, buffers.corners, buffers.ids, params, buffers.rejected);
+		} else {
+			Aruco.detectMarkers(image, dictionary, buffers.corners, buffers.ids, params, buffers.rejected, cameraMatrix, distCoeffs);
+			Aruco.estimatePoseSingleMarkers(buffers.corners, MARKER_LENGTH, cameraMatrix, distCoeffs, buffers.rotationVectors, buffers.translationVectors);
+		}
+		//Some versions of the detector leave ids as they were when they find nothing, which would be the ids of an earlier frame.
+		if(buffers.corners.isEmpty() && !buffers.ids.empty()){
+			buffers.ids.release();
+		}
+		return buffers;
+	}
+
+	/**Returns the calibration information this session estimates poses with.
+	@return the calibration information, or null if this session does not estimate poses.
+	*/
+	public CalibrationInformation calibrationInformation(){
+		return calibrationInformation;
+	}
+
+	/**Returns the number of sets of output containers this session has made so far. Once detection is under way, this stops growing,
+	as long as results are released.
+	@return the number of sets of containers made.
+	*/
+	public long allocations(){
+		return bufferPool.allocations();
+	}
+}
@@ -0,0 +1,29 @@
+package markerdetector;
+
+/**How a SessionRecorder stores each frame's image.
+*/
+public enum FrameEncoding {
+	/**The image's pixels as they are. Cheapest to record and replay, but the largest.
+	*/
+	RAW(""),
+	/**Lossless PNG compression. Replays exactly the recorded pixels, but costs several milliseconds a frame to record.
+	*/
+	PNG(".png"),
+	/**Lossy JPEG compression. The smallest, but the detector may not find exactly the markers it found in the original frames.
+	*/
+	JPEG(".jpg"),
+	/**No image at all, only the detection results. Replayed results have a black base image of the recorded size.
+	*/
+	NONE("");
+
+	private final String extension;
+
+	private FrameEncoding(String extension){
+		this.extension = extension;
+	}
+
+	//The extension passed to Imgcodecs.imencode, for the compressed encodings.
+	String extension(){
+		return extension;
+	}
+}
@@ -19,6 +19,8 @@ public class MarkerDetector {
     private Dictionary markers;
     private DetectorParameters params = DetectorParameters.create();
     private CalibrationInformation calibrationInformation;
+    //Each thread which detects markers gets its own session, since a session must only be used by one thread at a time.
+    private final ThreadLocal<DetectorSession> sessions = ThreadLocal.withInitial(this::newSession);
 
     /**Constructs a detector.
     @param detectorConfig Path to a file containing the detector options.
@@ -81,26 +83,32 @@ public class MarkerDetector {
         return this.calibrationInformation;
     }
 
-    /**Detects all markers within the source mat.
+    /**Returns a new DetectorSession with this detector's parameters and calibration information.<br>
+    detectMarkers already keeps a session for each thread which calls it, so this is only needed to manage sessions directly.
+    @return a new session.
+    */
+    public DetectorSession newSession(){
+        return new DetectorSession(this.params, this.calibrationInformation);
+    }
+
+    /**Detects all markers within the source mat, using the calling thread's DetectorSession.
+    The results should be released once they are no longer needed, so the session can reuse their containers.
     @param src The mat to detect markers from.
     @param dict_id The dictionary to get markers from.
     @return a DetectorResults object containing the results of this detection.
     */
     public DetectorResults detectMarkers(Mat src, int dict_id){
-        Dictionary markers = Aruco.getPredefinedDictionary(dict_id);
-        List<Mat> corners = new LinkedList<Mat>();
-        Mat ids = new Mat();
-        List<Mat> rejectedImgPoints = new LinkedList<Mat>();
-        Mat rvecs = null;
-        Mat tvecs = null;
-        if(this.calibrationInformation == null){
-            Aruco.detectMarkers(src, markers, corners, ids, this.params, rejectedImgPoints);
-        } else {
-            rvecs = new Mat();
-            tvecs = new Mat();
-            Aruco.detectMarkers(src, markers, corners, ids, this.params, rejectedImgPoints, this.calibrationInformation.cameraMatrix(), this.calibrationInformation.distCoeffs());
-            Aruco.estimatePoseSingleMarkers(corners, 1.0f, this.calibrationInformation.cameraMatrix(), this.calibrationInformation.distCoeffs(), rvecs, tvecs);
-        }
-        return new DetectorResults(src, markers, ids, corners, rejectedImgPoints, rvecs, tvecs, this.calibrationInformation);
+        return this.sessions.get().detectMarkers(src, dict_id);
+    }
+
+    /**Detects all markers within a pooled frame, using the calling thread's DetectorSession.
+    The returned DetectorResults takes its own reference to the frame, so the caller may release theirs straight away.
+    The results must be released once they are no longer needed.
+    @param src The frame to detect markers from.
+    @param dict_id The dictionary to get markers from.
+    @return a DetectorResults object containing the results of this detection.
+    */
+    public DetectorResults detectMarkers(PooledFrame src, int dict_id){
+        return this.sessions.get().detectMarkers(src, dict_id);
     }
 }
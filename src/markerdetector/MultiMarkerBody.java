@@ -6,6 +6,7 @@ import util.*;
 import java.io.*;
 import org.json.*;
 import org.opencv.calib3d.Calib3d;
+import concurrency.FrameTrace;
 
 public class MultiMarkerBody{
 	private SortedMap<Integer, MarkerOffset> offsets;
@@ -182,6 +183,15 @@ public class MultiMarkerBody{
    }
 
    public Pair<Mat, Mat> predictCenter(DetectorResults results){
+      long start = FrameTrace.begin();
+      try {
+         return this.estimateCenter(results);
+      } finally {
+         FrameTrace.end("predictCenter", start);
+      }
+   }
+
+   private Pair<Mat, Mat> estimateCenter(DetectorResults results){
       Mat ids = results.getIds();
       if(ids.rows() == 0){
          return null;
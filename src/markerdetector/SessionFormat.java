@@ -0,0 +1,23 @@
+package markerdetector;
+
+//Layout of the files written by SessionRecorder and read by SessionReader. All numbers are little endian.
+//Header: MAGIC, VERSION, encoding ordinal, dictionary id, calibration JSON length in bytes (0 if there is none), calibration JSON in UTF-8.
+//Then one chunk per frame: CHUNK_MAGIC, timestamp in nanoseconds since recording started, image rows, columns and OpenCV type,
+//image length in bytes, image bytes, marker count, whether poses follow (one byte), and for each marker:
+//id, its four corners as eight floats, and if poses follow, its rotation and translation vectors as six doubles.
+//Footer: for each frame, its chunk's offset and timestamp as longs, followed by the footer's offset, the frame count, and END_MAGIC.
+//The footer is written when the recorder is closed, so a session cut short by a crash has chunks but no index.
+final class SessionFormat {
+	static final long MAGIC = 0x3130_5353_4553_4253L; //"SBSESS01"
+	static final long END_MAGIC = 0x3130_444E_4553_4253L; //"SBSEND01"
+	static final int VERSION = 1;
+	static final int CHUNK_MAGIC = 0x4D52_4643; //"CFRM"
+	static final int HEADER_FIXED_SIZE = 8 + 4 + 4 + 4 + 4;
+	static final int CHUNK_FIXED_SIZE = 4 + 8 + 4 + 4 + 4 + 4;
+	static final int INDEX_ENTRY_SIZE = 8 + 8;
+	static final int TRAILER_SIZE = 8 + 4 + 8;
+	static final int CORNER_FLOATS = 8;
+	static final int POSE_DOUBLES = 6;
+
+	private SessionFormat(){}
+}
@@ -0,0 +1,347 @@
+package markerdetector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.json.*;
+import org.opencv.aruco.*;
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import util.FramePool;
+import util.PooledFrame;
+import util.VideoCap;
+
+/**Reads a session recorded by a SessionRecorder. The file is memory mapped, and any frame can be read straight away, in any order.<br>
+Replayed results can be passed to SimulationPanel.simulate as they are, so simulations can be run on a recorded session at full speed,
+without a camera or the marker detector. Replayed frames can equally be passed to a MarkerDetector, to reproduce what it found.<br>
+This class is thread safe.
+*/
+public final class SessionReader implements AutoCloseable {
+
+	static{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	//Mappings are limited to Integer.MAX_VALUE bytes, so longer sessions are mapped in several segments, each holding whole chunks.
+	private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final FrameEncoding encoding;
+	private final int dictionaryId;
+	private final Dictionary dictionary;
+	private final CalibrationInformation calibrationInformation;
+	private final long[] offsets;
+	private final long[] timestamps;
+	private final MappedByteBuffer[] segments;
+	private final long[] segmentStarts;
+	private final int[] frameSegments;
+	private FramePool pool;
+	private byte[] bytes = new byte[0];
+	private final float[] corner = new float[SessionFormat.CORNER_FLOATS];
+	private final double[] vector = new double[3];
+	//Containers for the ids, corners and pose vectors of replayed results, which come back here when the results are released.
+	private final DetectionBufferPool bufferPool = new DetectionBufferPool();
+
+	//RI: offsets and timestamps have one entry per frame. Frame i's chunk starts at offsets[i], within segments[frameSegments[i]], which maps the file from segmentStarts[frameSegments[i]].
+	//AF: Represents the frames and detection results of a recorded session.
+
+	/**Opens a session file, and maps it into memory.
+	@param path the session file.
+	@throws IOException if the file cannot be read, is not a session file, or has no index because its recorder was never closed.
+	@throws NullPointerException if path is null.
+	*/
+	public SessionReader(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			ByteBuffer header = this.read(0, SessionFormat.HEADER_FIXED_SIZE, size);
+			if(header.getLong() != SessionFormat.MAGIC){
+				throw new IOException(path + " is not a session file.");
+			}
+			int version = header.getInt();
+			if(version != SessionFormat.VERSION){
+				throw new IOException(path + " is a session file of unsupported version " + version + ".");
+			}
+			int encodingOrdinal = header.getInt();
+			if(encodingOrdinal < 0 || encodingOrdinal >= FrameEncoding.values().length){
+				throw new IOException(path + " has an unknown frame encoding.");
+			}
+			this.encoding = FrameEncoding.values()[encodingOrdinal];
+			this.dictionaryId = header.getInt();
+			this.dictionary = Aruco.getPredefinedDictionary(dictionaryId);
+			int calibrationLength = header.getInt();
+			if(calibrationLength == 0){
+				this.calibrationInformation = null;
+			} else {
+				ByteBuffer calibration = this.read(SessionFormat.HEADER_FIXED_SIZE, calibrationLength, size);
+				String json = new String(calibration.array(), StandardCharsets.UTF_8);
+				try {
+					this.calibrationInformation = CalibrationInformation.fromJSONObject(new JSONObject(json));
+				} catch(JSONException e){
+					throw new IOException(path + " has unreadable calibration information.", e);
+				}
+			}
+
+			ByteBuffer trailer = this.read(size - SessionFormat.TRAILER_SIZE, SessionFormat.TRAILER_SIZE, size);
+			long indexOffset = trailer.getLong();
+			int frameCount = trailer.getInt();
+			if(trailer.getLong() != SessionFormat.END_MAGIC || frameCount < 0 || indexOffset + (long)frameCount * SessionFormat.INDEX_ENTRY_SIZE + SessionFormat.TRAILER_SIZE != size){
+				throw new IOException(path + " has no index. Its recording may not have been stopped properly.");
+			}
+			ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long)frameCount * SessionFormat.INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			this.offsets = new long[frameCount];
+			this.timestamps = new long[frameCount];
+			for(int i = 0; i < frameCount; i++){
+				offsets[i] = index.getLong();
+				timestamps[i] = index.getLong();
+			}
+
+			//Each segment takes as many whole chunks as fit.
+			List<MappedByteBuffer> segmentList = new ArrayList<MappedByteBuffer>();
+			List<Long> startList = new ArrayList<Long>();
+			this.frameSegments = new int[frameCount];
+			int first = 0;
+			while(first < frameCount){
+				long start = offsets[first];
+				int last = first;
+				while(last + 1 < frameCount && chunkEnd(last + 1, indexOffset) - start <= MAX_SEGMENT){
+					last++;
+				}
+				long length = chunkEnd(last, indexOffset) - start;
+				if(length > MAX_SEGMENT || length < SessionFormat.CHUNK_FIXED_SIZE){
+					throw new IOException(path + " has a corrupt index.");
+				}
+				for(int i = first; i <= last; i++){
+					frameSegments[i] = segmentList.size();
+				}
+				segmentList.add(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+				startList.add(start);
+				first = last + 1;
+			}
+			this.segments = segmentList.toArray(new MappedByteBuffer[0]);
+			this.segmentStarts = new long[startList.size()];
+			for(int i = 0; i < segmentStarts.length; i++){
+				segmentStarts[i] = startList.get(i);
+			}
+			for(int i = 0; i < frameCount; i++){
+				if(this.chunk(i).getInt() != SessionFormat.CHUNK_MAGIC){
+					throw new IOException(path + " has a corrupt index.");
+				}
+			}
+		} catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	//Reads length bytes at the given position of the file, which has the given size.
+	private ByteBuffer read(long position, int length, long size) throws IOException {
+		if(position < 0 || position + length > size){
+			throw new IOException("Session file is too short.");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, position + buffer.position()) < 0){
+				throw new IOException("Session file is too short.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	//Returns the offset just past frame i's chunk.
+	private long chunkEnd(int i, long indexOffset){
+		return i + 1 < offsets.length ? offsets[i + 1] : indexOffset;
+	}
+
+	//Returns a buffer positioned at the start of frame i's chunk.
+	private ByteBuffer chunk(int i){
+		int segment = frameSegments[i];
+		ByteBuffer buffer = segments[segment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position((int)(offsets[i] - segmentStarts[segment]));
+		return buffer;
+	}
+
+	//Returns a buffer positioned at the image size of frame i's chunk, just past its magic number and timestamp.
+	private ByteBuffer image(int i){
+		if(i < 0 || i >= offsets.length){
+			throw new IndexOutOfBoundsException("Frame " + i + " of " + offsets.length + ".");
+		}
+		ByteBuffer buffer = this.chunk(i);
+		buffer.position(buffer.position() + 4 + 8);
+		return buffer;
+	}
+
+	/**Returns the number of frames in the session.
+	@return the number of frames.
+	*/
+	public int frameCount(){
+		return offsets.length;
+	}
+
+	/**Returns the time frame i was recorded.
+	@param i the index of the frame.
+	@throws IndexOutOfBoundsException if i is not the index of a frame.
+	@return the time of the frame, in nanoseconds since the session started.
+	*/
+	public long timestamp(int i){
+		return timestamps[i];
+	}
+
+	/**Returns how the session's frames are stored.
+	@return the session's frame encoding.
+	*/
+	public FrameEncoding encoding(){
+		return encoding;
+	}
+
+	/**Returns the id of the predefined dictionary the session's markers were detected with.
+	@return the dictionary id.
+	*/
+	public int dictionaryId(){
+		return dictionaryId;
+	}
+
+	/**Returns the calibration information the session's poses were estimated with.
+	@return the calibration information, or null if the session was recorded without it.
+	*/
+	public CalibrationInformation calibrationInformation(){
+		return calibrationInformation;
+	}
+
+	/**Reads frame i into a pooled frame. If the session was recorded without images, the frame is black.
+	The caller holds the only reference to the returned frame, and must release it once done.
+	@param i the index of the frame.
+	@throws IndexOutOfBoundsException if i is not the index of a frame.
+	@throws IllegalStateException if a compressed frame cannot be decoded.
+	@return the frame.
+	*/
+	public synchronized PooledFrame frame(int i){
+		return this.readFrame(this.image(i));
+	}
+
+	//Reads the image at the buffer's position into a pooled frame, leaving the buffer positioned just past it.
+	private PooledFrame readFrame(ByteBuffer buffer){
+		int rows = buffer.getInt();
+		int cols = buffer.getInt();
+		int type = buffer.getInt();
+		int length = buffer.getInt();
+		if(pool == null || pool.rows() != rows || pool.cols() != cols || pool.type() != type){
+			pool = new FramePool(rows, cols, type, VideoCap.DEFAULT_POOL_SIZE);
+		}
+		PooledFrame frame = pool.acquire();
+		if(length == 0){
+			frame.mat().setTo(Scalar.all(0));
+			return frame;
+		}
+		if(bytes.length != length){
+			bytes = new byte[length];
+		}
+		buffer.get(bytes);
+		if(encoding == FrameEncoding.RAW){
+			frame.mat().put(0, 0, bytes);
+			return frame;
+		}
+		MatOfByte encoded = new MatOfByte(bytes);
+		Mat decoded = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_UNCHANGED);
+		encoded.release();
+		if(decoded.empty()){
+			decoded.release();
+			frame.release();
+			throw new IllegalStateException("Frame could not be decoded.");
+		}
+		decoded.copyTo(frame.mat());
+		decoded.release();
+		return frame;
+	}
+
+	/**Returns the detection results recorded for frame i, with the frame as their base image.
+	The results must be released once they are no longer needed, so that their frame and containers can be reused for a later frame.
+	Results derived from them must not be used after that. Use detached to keep them.
+	@param i the index of the frame.
+	@throws IndexOutOfBoundsException if i is not the index of a frame.
+	@throws IllegalStateException if a compressed frame cannot be decoded.
+	@return the recorded results.
+	*/
+	public synchronized DetectorResults results(int i){
+		ByteBuffer buffer = this.image(i);
+		PooledFrame frame = this.readFrame(buffer);
+		int markers = buffer.getInt();
+		boolean poses = buffer.get() != 0;
+		//The detector leaves ids empty when it finds nothing, and only estimates poses with calibration information.
+		//create only reallocates a container whose size differs from the last frame it held.
+		DetectionBuffers buffers = bufferPool.take();
+		Mat ids = buffers.ids;
+		Mat rvecs = buffers.rotationVectors;
+		Mat tvecs = buffers.translationVectors;
+		if(markers == 0){
+			ids.release();
+		} else {
+			ids.create(markers, 1, CvType.CV_32S);
+		}
+		if(markers == 0 || !poses){
+			rvecs.release();
+			tvecs.release();
+		} else {
+			rvecs.create(markers, 1, CvType.CV_64FC3);
+			tvecs.create(markers, 1, CvType.CV_64FC3);
+		}
+		for(int m = 0; m < markers; m++){
+			ids.put(m, 0, buffer.getInt());
+			for(int j = 0; j < corner.length; j++){
+				corner[j] = buffer.getFloat();
+			}
+			Mat c = new Mat(1, 4, CvType.CV_32FC2);
+			c.put(0, 0, corner);
+			buffers.corners.add(c);
+			if(poses){
+				for(int j = 0; j < 3; j++){
+					vector[j] = buffer.getDouble();
+				}
+				rvecs.put(m, 0, vector);
+				for(int j = 0; j < 3; j++){
+					vector[j] = buffer.getDouble();
+				}
+				tvecs.put(m, 0, vector);
+			}
+		}
+		//The results take over the reference to the frame.
+		return new DetectorResults(frame.mat(), frame, dictionary, buffers, calibrationInformation);
+	}
+
+	/**Passes the recorded results of every frame, in order, to the given consumer, as fast as it takes them.
+	Each result is released once the consumer returns, so the consumer must use detached() to keep one.<br>
+	For example, reader.replay(panel::simulate) runs a panel's simulations on the whole session.
+	@param consumer the consumer of the results.
+	@throws NullPointerException if consumer is null.
+	@throws IllegalStateException if a compressed frame cannot be decoded.
+	*/
+	public void replay(Consumer<? super DetectorResults> consumer){
+		if(consumer == null){
+			throw new NullPointerException();
+		}
+		for(int i = 0; i < offsets.length; i++){
+			DetectorResults results = this.results(i);
+			try {
+				consumer.accept(results);
+			} finally {
+				results.release();
+			}
+		}
+	}
+
+	/**Closes the session file. Frames and results already read stay valid until they are released.
+	@throws IOException if the file cannot be closed.
+	*/
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
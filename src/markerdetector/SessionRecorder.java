@@ -0,0 +1,214 @@
+package markerdetector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.List;
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**Records a session of frames and their detection results to a file, so that it can be replayed later with a SessionReader,
+without a camera or the marker detector.<br>
+Each frame is appended as it is recorded, together with its markers' ids, corners and poses and the time it was recorded.
+An index of the frames is written when the recorder is closed, which lets a SessionReader go straight to any frame.<br>
+This class is thread safe, but frames are recorded in the order record is called, so it should be called from one step of a pipeline which keeps frames in order.
+*/
+public final class SessionRecorder implements AutoCloseable {
+	private static final int INITIAL_FRAMES = 1024;
+
+	private final FileChannel channel;
+	private final FrameEncoding encoding;
+	private final long startNanos;
+	private final MatOfByte encoded = new MatOfByte();
+	private ByteBuffer chunk = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	private byte[] pixels = new byte[0];
+	private final float[] corner = new float[SessionFormat.CORNER_FLOATS];
+	private double[] rotation = new double[0];
+	private double[] translation = new double[0];
+	private long position;
+	private long[] offsets = new long[INITIAL_FRAMES];
+	private long[] timestamps = new long[INITIAL_FRAMES];
+	private int frameCount;
+	private boolean closed;
+
+	//RI: position is the size of the file written so far. offsets[0..frameCount) and timestamps[0..frameCount) describe the chunks written.
+	//AF: Represents a session file, of which the header and frameCount chunks have been written, and, once closed, the footer.
+
+	/**Creates the given file, replacing any file already there, and writes the session's header.
+	@param path the file to record to.
+	@param encoding how each frame's image is stored.
+	@param dictionaryId the id of the predefined dictionary the recorded markers were detected with, used when replaying the results.
+	@param ci the calibration information the recorded poses were estimated with, or null if there is none.
+	@throws IOException if the file cannot be created or written.
+	@throws NullPointerException if path or encoding is null.
+	*/
+	public SessionRecorder(Path path, FrameEncoding encoding, int dictionaryId, CalibrationInformation ci) throws IOException {
+		if(encoding == null){
+			throw new NullPointerException();
+		}
+		this.encoding = encoding;
+		byte[] calibration = ci == null ? new byte[0] : ci.toJSONObject().toString().getBytes(StandardCharsets.UTF_8);
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(SessionFormat.HEADER_FIXED_SIZE + calibration.length).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(SessionFormat.MAGIC).putInt(SessionFormat.VERSION).putInt(encoding.ordinal()).putInt(dictionaryId);
+			header.putInt(calibration.length).put(calibration);
+			header.flip();
+			this.write(header);
+		} catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+		this.startNanos = System.nanoTime();
+	}
+
+	/**Appends a frame and its detection results to the session, timestamped with the time since this recorder was constructed.
+	@param results the results to record. Its base image is recorded as the frame.
+	@throws IOException if the file cannot be written.
+	@throws IllegalStateException if this recorder has been closed.
+	@throws NullPointerException if results is null.
+	*/
+	public void record(DetectorResults results) throws IOException {
+		this.record(results, System.nanoTime() - startNanos);
+	}
+
+	/**Appends a frame and its detection results to the session, with the given timestamp.
+	@param results the results to record. Its base image is recorded as the frame.
+	@param timestamp the time of the frame, in nanoseconds since the session started.
+	@throws IOException if the file cannot be written.
+	@throws IllegalStateException if this recorder has been closed.
+	@throws NullPointerException if results is null.
+	*/
+	public synchronized void record(DetectorResults results, long timestamp) throws IOException {
+		if(closed){
+			throw new IllegalStateException("Recorder has been closed.");
+		}
+		Mat base = results.baseView();
+		int imageLength = this.encodeImage(base);
+		Mat ids = results.idsView();
+		Mat rvecs = results.rotationVectorsView();
+		Mat tvecs = results.translationVectorsView();
+		List<Mat> corners = results.cornersView();
+		int markers = ids.empty() ? 0 : ids.rows();
+		boolean poses = markers > 0 && rvecs != null && tvecs != null && !rvecs.empty();
+		int markerSize = 4 + 4 * SessionFormat.CORNER_FLOATS + (poses ? 8 * SessionFormat.POSE_DOUBLES : 0);
+
+		this.reserve(SessionFormat.CHUNK_FIXED_SIZE + imageLength + 4 + 1 + markers * markerSize);
+		chunk.putInt(SessionFormat.CHUNK_MAGIC).putLong(timestamp);
+		chunk.putInt(base.rows()).putInt(base.cols()).putInt(base.type());
+		chunk.putInt(imageLength);
+		if(encoding == FrameEncoding.RAW){
+			chunk.put(pixels, 0, imageLength);
+		} else if(imageLength > 0){
+			chunk.put(encoded.toArray());
+		}
+		chunk.putInt(markers).put((byte)(poses ? 1 : 0));
+		if(poses){
+			if(rotation.length < 3 * markers){
+				rotation = new double[3 * markers];
+				translation = new double[3 * markers];
+			}
+			rvecs.get(0, 0, rotation);
+			tvecs.get(0, 0, translation);
+		}
+		for(int i = 0; i < markers; i++){
+			chunk.putInt((int)ids.get(i, 0)[0]);
+			corners.get(i).get(0, 0, corner);
+			for(float f : corner){
+				chunk.putFloat(f);
+			}
+			if(poses){
+				for(int j = 0; j < 3; j++){
+					chunk.putDouble(rotation[3 * i + j]);
+				}
+				for(int j = 0; j < 3; j++){
+					chunk.putDouble(translation[3 * i + j]);
+				}
+			}
+		}
+		chunk.flip();
+
+		if(frameCount == offsets.length){
+			offsets = Arrays.copyOf(offsets, 2 * frameCount);
+			timestamps = Arrays.copyOf(timestamps, 2 * frameCount);
+		}
+		long offset = position;
+		this.write(chunk);
+		offsets[frameCount] = offset;
+		timestamps[frameCount] = timestamp;
+		frameCount++;
+	}
+
+	//Puts the image's bytes in pixels or encoded, according to the encoding, and returns their length.
+	private int encodeImage(Mat base) throws IOException {
+		switch(encoding){
+			case NONE:
+				return 0;
+			case RAW:
+				Mat continuous = base.isContinuous() ? base : base.clone();
+				int length = (int)(continuous.total() * continuous.elemSize());
+				if(pixels.length < length){
+					pixels = new byte[length];
+				}
+				continuous.get(0, 0, pixels);
+				if(continuous != base){
+					continuous.release();
+				}
+				return length;
+			default:
+				if(!Imgcodecs.imencode(encoding.extension(), base, encoded)){
+					throw new IOException("Frame could not be encoded as " + encoding + ".");
+				}
+				return (int)encoded.total();
+		}
+	}
+
+	//Clears chunk, making sure it can hold at least size bytes.
+	private void reserve(int size){
+		if(chunk.capacity() < size){
+			chunk = ByteBuffer.allocate(Math.max(size, 2 * chunk.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		chunk.clear();
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer);
+		}
+	}
+
+	/**Returns the number of frames recorded so far.
+	@return the number of frames recorded.
+	*/
+	public synchronized int frameCount(){
+		return frameCount;
+	}
+
+	/**Writes the session's index and closes the file. Does nothing if this recorder has already been closed.
+	@throws IOException if the file cannot be written.
+	*/
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		try {
+			long indexOffset = position;
+			this.reserve(frameCount * SessionFormat.INDEX_ENTRY_SIZE + SessionFormat.TRAILER_SIZE);
+			for(int i = 0; i < frameCount; i++){
+				chunk.putLong(offsets[i]).putLong(timestamps[i]);
+			}
+			chunk.putLong(indexOffset).putInt(frameCount).putLong(SessionFormat.END_MAGIC);
+			chunk.flip();
+			this.write(chunk);
+		} finally {
+			channel.close();
+			encoded.release();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package markerdetector;
+
+import java.util.*;
+import org.json.*;
+import org.opencv.core.*;
+
+/**A frame rendered by a SyntheticFrameGenerator, together with the true poses it was rendered at.<br>
+The true pose of each body is that of its center, as MultiMarkerBody.predictCenter estimates it,
+so detector estimates can be compared with the truth directly.
+*/
+public final class SyntheticFrame {
+	private final Mat image;
+	private final List<Pose> bodyPoses;
+	private final SortedMap<Integer, Pose> markerPoses;
+	private final SortedMap<Integer, double[]> markerCorners;
+
+	//RI: markerCorners has the same keys as markerPoses, and each of its values holds eight numbers.
+	//AF: Represents an image, the poses of the bodies in it, and the poses and image corners of the markers which were drawn.
+
+	SyntheticFrame(Mat image, List<Pose> bodyPoses, SortedMap<Integer, Pose> markerPoses, SortedMap<Integer, double[]> markerCorners){
+		this.image = image;
+		this.bodyPoses = List.copyOf(bodyPoses);
+		this.markerPoses = Collections.unmodifiableSortedMap(markerPoses);
+		this.markerCorners = Collections.unmodifiableSortedMap(markerCorners);
+	}
+
+	/**Returns the rendered image, a three channel BGR image like a camera's. The image is not copied, so it must not be changed.<br>
+	The images of many frames can be played back with an ArrayFrameSource.
+	@return the rendered image.
+	*/
+	public Mat image(){
+		return this.image;
+	}
+
+	/**Returns the true pose of the center of each body, in the order the bodies were given to the generator.
+	@return the poses of the bodies.
+	*/
+	public List<Pose> bodyPoses(){
+		return this.bodyPoses;
+	}
+
+	/**Returns the true pose of each marker which was drawn, by marker id. Markers which face away from the camera or lie behind it are not drawn.
+	The poses are in the detector's convention, for markers of side length SyntheticFrameGenerator.MARKER_LENGTH.
+	@return the poses of the drawn markers.
+	*/
+	public SortedMap<Integer, Pose> markerPoses(){
+		return this.markerPoses;
+	}
+
+	/**Returns the image coordinates of the corners of each marker which was drawn, by marker id,
+	as x and y of each corner in turn, in the order the detector reports corners.
+	@param id the id of the marker.
+	@return the marker's corners, or null if the marker was not drawn.
+	*/
+	public double[] markerCorners(int id){
+		double[] corners = this.markerCorners.get(id);
+		return corners == null ? null : corners.clone();
+	}
+
+	/**Returns a JSON object holding this frame's true poses and corners, but not its image.<br>
+	It has the keys {@code "bodies"}, an array of poses, and {@code "markers"}, an array of objects with the keys {@code "id"}, {@code "pose"} and {@code "corners"}.
+	Each pose is an object with the keys {@code "rvec"} and {@code "tvec"}, each an array of three numbers.
+	@return the JSON object.
+	*/
+	public JSONObject toJSONObject(){
+		JSONObject answer = new JSONObject();
+		JSONArray bodies = new JSONArray();
+		for(Pose p : this.bodyPoses){
+			bodies.put(poseToJSON(p));
+		}
+		answer.put("bodies", bodies);
+		JSONArray markers = new JSONArray();
+		for(Map.Entry<Integer, Pose> e : this.markerPoses.entrySet()){
+			JSONObject marker = new JSONObject();
+			marker.put("id", e.getKey().intValue());
+			marker.put("pose", poseToJSON(e.getValue()));
+			JSONArray corners = new JSONArray();
+			for(double d : this.markerCorners.get(e.getKey())){
+				corners.put(d);
+			}
+			marker.put("corners", corners);
+			markers.put(marker);
+		}
+		answer.put("markers", markers);
+		return answer;
+	}
+
+	private static JSONObject poseToJSON(Pose p){
+		JSONObject pose = new JSONObject();
+		JSONArray rvec = new JSONArray();
+		rvec.put(p.xRotation());
+		rvec.put(p.yRotation());
+		rvec.put(p.zRotation());
+		JSONArray tvec = new JSONArray();
+		tvec.put(p.xTranslation());
+		tvec.put(p.yTranslation());
+		tvec.put(p.zTranslation());
+		pose.put("rvec", rvec);
+		pose.put("tvec", tvec);
+		return pose;
+	}
+}
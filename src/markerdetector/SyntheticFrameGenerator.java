@@ -0,0 +1,469 @@
+package markerdetector;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import org.json.*;
+import org.opencv.aruco.Aruco;
+import org.opencv.aruco.Dictionary;
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import util.MarkerGeneration;
+
+/**Renders MultiMarkerBody layouts into frames at given poses, seen through a calibrated camera, so that the detector's speed and accuracy
+can be measured on large, reproducible inputs with known poses, without a camera or a physical beam.<br>
+Each marker is drawn with Aruco.drawMarker, given a white margin with MarkerGeneration.pad_mat, and warped into the frame,
+as if printed on white paper. Bending, lighting, blur and noise can be added.<br>
+Frames with the same poses and seed are the same, whichever thread renders them. This class is thread safe once configured,
+so frames may be rendered concurrently.
+*/
+public class SyntheticFrameGenerator {
+
+	static{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**Side length of each marker, in the units of the poses. MarkerDetector estimates marker poses with the same length.
+	*/
+	public static final double MARKER_LENGTH = 1.0;
+	//Side length in pixels of each marker image before it is warped, and the white margin around it.
+	private static final int MARKER_PIXELS = 240;
+	private static final int MARGIN_PIXELS = 60;
+	//Markers closer to the camera than this are not drawn.
+	private static final double NEAR = 1e-3;
+
+	private final List<MultiMarkerBody> bodyList;
+	private final CalibrationInformation calibrationInformation;
+	private final Mat cameraMatrix;
+	private final MatOfDouble distCoeffs;
+	private final int width;
+	private final int height;
+	private final Map<Integer, Mat> markerImages = new HashMap<Integer, Mat>();
+	private double bend = 0.0;
+	private double noise = 0.0;
+	private double blur = 0.0;
+	private double gain = 1.0;
+	private double offset = 0.0;
+	private int background = 128;
+
+	//RI: markerImages holds a padded marker image for the id of every marker of every body. No two bodies share a marker id.
+	//AF: Represents a camera of the given size and calibration looking at the given bodies, with the given image effects.
+
+	/**Constructs a generator for frames of the given size, seen through a camera with the given calibration.
+	@param ci the calibration of the camera.
+	@param width the width of the frames, in pixels.
+	@param height the height of the frames, in pixels.
+	@param dictionaryId the predefined dictionary to draw markers from.
+	@param bodies the bodies to render in each frame.
+	@throws NullPointerException if ci or bodies, or any body, is null.
+	@throws IllegalArgumentException if width or height is not positive, there are no bodies, or two bodies share a marker id.
+	*/
+	public SyntheticFrameGenerator(CalibrationInformation ci, int width, int height, int dictionaryId, List<MultiMarkerBody> bodies){
+		if(ci == null){
+			throw new NullPointerException();
+		}
+		if(width <= 0 || height <= 0){
+			throw new IllegalArgumentException("Frame size must be positive.");
+		}
+		if(bodies.isEmpty()){
+			throw new IllegalArgumentException("There must be at least one body.");
+		}
+		this.calibrationInformation = ci;
+		this.cameraMatrix = ci.cameraMatrix();
+		this.distCoeffs = new MatOfDouble();
+		ci.distCoeffs().convertTo(this.distCoeffs, CvType.CV_64F);
+		this.width = width;
+		this.height = height;
+		this.bodyList = List.copyOf(bodies);
+		Dictionary dictionary = Aruco.getPredefinedDictionary(dictionaryId);
+		for(MultiMarkerBody body : this.bodyList){
+			for(MarkerOffset mo : body.getOffsets()){
+				if(markerImages.containsKey(mo.id())){
+					throw new IllegalArgumentException("Marker " + mo.id() + " belongs to more than one body.");
+				}
+				Mat marker = new Mat();
+				Aruco.drawMarker(dictionary, mo.id(), MARKER_PIXELS, marker, 1);
+				markerImages.put(mo.id(), MarkerGeneration.pad_mat(MARGIN_PIXELS, 0, marker));
+				marker.release();
+			}
+		}
+	}
+
+	/**Bends every body along its y axis into a circular arc, as a beam under load would bend. Each marker is moved onto the arc, and tilted to follow it.
+	@param curvature the curvature of the arc, in radians per unit of length. 0 leaves the bodies flat.
+	@return this, for convenience.
+	*/
+	public SyntheticFrameGenerator setBend(double curvature){
+		this.bend = curvature;
+		return this;
+	}
+
+	/**Adds Gaussian noise to every pixel, as a camera sensor would.
+	@param sigma the standard deviation of the noise, in grey levels. 0 adds no noise.
+	@throws IllegalArgumentException if sigma is negative.
+	@return this, for convenience.
+	*/
+	public SyntheticFrameGenerator setNoise(double sigma){
+		if(sigma < 0){
+			throw new IllegalArgumentException("Noise must not be negative.");
+		}
+		this.noise = sigma;
+		return this;
+	}
+
+	/**Blurs each frame with a Gaussian kernel, as an out of focus or moving camera would.
+	@param sigma the standard deviation of the kernel, in pixels. 0 does not blur.
+	@throws IllegalArgumentException if sigma is negative.
+	@return this, for convenience.
+	*/
+	public SyntheticFrameGenerator setBlur(double sigma){
+		if(sigma < 0){
+			throw new IllegalArgumentException("Blur must not be negative.");
+		}
+		this.blur = sigma;
+		return this;
+	}
+
+	/**Changes the lighting, by scaling every grey level by gain and then adding offset.
+	@param gain the contrast, where 1 leaves the frame unchanged.
+	@param offset the brightness added, in grey levels.
+	@throws IllegalArgumentException if gain is negative.
+	@return this, for convenience.
+	*/
+	public SyntheticFrameGenerator setLighting(double gain, double offset){
+		if(gain < 0){
+			throw new IllegalArgumentException("Gain must not be negative.");
+		}
+		this.gain = gain;
+		this.offset = offset;
+		return this;
+	}
+
+	/**Sets the grey level behind the bodies.
+	@param level the grey level, from 0 to 255.
+	@throws IllegalArgumentException if level is not between 0 and 255.
+	@return this, for convenience.
+	*/
+	public SyntheticFrameGenerator setBackground(int level){
+		if(level < 0 || level > 255){
+			throw new IllegalArgumentException("Background must be between 0 and 255.");
+		}
+		this.background = level;
+		return this;
+	}
+
+	/**Returns the calibration frames are rendered with.
+	@return the calibration information.
+	*/
+	public CalibrationInformation calibrationInformation(){
+		return this.calibrationInformation;
+	}
+
+	/**Renders one frame, with each body's center at the given pose.
+	@param bodyPoses the pose of the center of each body, in the order the bodies were given.
+	@param seed the seed for the frame's noise.
+	@throws IllegalArgumentException if there is not one pose for each body.
+	@throws NullPointerException if bodyPoses or any pose is null.
+	@return the rendered frame and its true poses.
+	*/
+	public SyntheticFrame render(List<Pose> bodyPoses, long seed){
+		if(bodyPoses.size() != this.bodyList.size()){
+			throw new IllegalArgumentException("There must be one pose for each body.");
+		}
+		//Each marker's rotation and position in camera coordinates, farthest first, so nearer markers are drawn over farther ones.
+		List<PlacedMarker> placed = new ArrayList<PlacedMarker>();
+		for(int b = 0; b < bodyPoses.size(); b++){
+			Pose center = bodyPoses.get(b);
+			double[][] rc = rodrigues(center.xRotation(), center.yRotation(), center.zRotation());
+			double[] tc = {center.xTranslation(), center.yTranslation(), center.zTranslation()};
+			for(MarkerOffset mo : this.bodyList.get(b).getOffsets()){
+				placed.add(this.place(mo, rc, tc));
+			}
+		}
+		placed.sort((first, second) -> Double.compare(second.translation[2], first.translation[2]));
+
+		Mat canvas = new Mat(height, width, CvType.CV_8UC1, new Scalar(background));
+		SortedMap<Integer, Pose> markerPoses = new TreeMap<Integer, Pose>();
+		SortedMap<Integer, double[]> markerCorners = new TreeMap<Integer, double[]>();
+		for(PlacedMarker pm : placed){
+			double[] corners = this.draw(pm, canvas);
+			if(corners != null){
+				markerPoses.put(pm.id, pm.pose());
+				markerCorners.put(pm.id, corners);
+			}
+		}
+
+		if(gain != 1.0 || offset != 0.0){
+			canvas.convertTo(canvas, CvType.CV_8UC1, gain, offset);
+		}
+		if(blur > 0){
+			Imgproc.GaussianBlur(canvas, canvas, new Size(0, 0), blur);
+		}
+		if(noise > 0){
+			//Noise is drawn from a Random of the frame's own, rather than OpenCV's per thread generator, so frames are reproducible.
+			byte[] pixels = new byte[width * height];
+			canvas.get(0, 0, pixels);
+			Random random = new Random(seed);
+			for(int i = 0; i < pixels.length; i++){
+				long value = Math.round((pixels[i] & 0xFF) + random.nextGaussian() * noise);
+				pixels[i] = (byte)Math.max(0, Math.min(255, value));
+			}
+			canvas.put(0, 0, pixels);
+		}
+		Mat image = new Mat();
+		Imgproc.cvtColor(canvas, image, Imgproc.COLOR_GRAY2BGR);
+		canvas.release();
+		return new SyntheticFrame(image, bodyPoses, markerPoses, markerCorners);
+	}
+
+	/**Renders one frame for each list of body poses, on several threads at once.
+	Frame i's noise is seeded with seed + i, so the frames do not depend on how many threads render them.
+	@param poses the body poses of each frame, as passed to render.
+	@param seed the seed for the first frame's noise.
+	@throws IllegalArgumentException if any frame does not have one pose for each body.
+	@throws NullPointerException if poses, any list of poses, or any pose is null.
+	@return the rendered frames, in order.
+	*/
+	public List<SyntheticFrame> renderAll(List<List<Pose>> poses, long seed){
+		return IntStream.range(0, poses.size()).parallel().mapToObj((i) -> this.render(poses.get(i), seed + i)).collect(Collectors.toList());
+	}
+
+	/**Writes each frame's image to the given directory as a PNG file, named frame_00000.png and so on,
+	and their true poses to ground_truth.json in the same directory, as an object whose {@code "frames"} array holds, for each frame,
+	its file name under {@code "image"} along with the keys of SyntheticFrame.toJSONObject. The calibration is saved under {@code "calibration"}.<br>
+	The directory can then be played back with an ImageSequenceSource.
+	@param frames the frames to save.
+	@param directory the directory to save them in, which is created if need be.
+	@throws IOException if the directory or any file cannot be written.
+	@throws NullPointerException if frames, any frame, or directory is null.
+	*/
+	public void save(List<SyntheticFrame> frames, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		JSONArray truth = new JSONArray();
+		for(int i = 0; i < frames.size(); i++){
+			String name = String.format("frame_%05d.png", i);
+			if(!Imgcodecs.imwrite(directory.resolve(name).toString(), frames.get(i).image())){
+				throw new IOException("Could not write " + name + ".");
+			}
+			JSONObject frame = frames.get(i).toJSONObject();
+			frame.put("image", name);
+			truth.put(frame);
+		}
+		JSONObject answer = new JSONObject();
+		answer.put("calibration", this.calibrationInformation.toJSONObject());
+		answer.put("frames", truth);
+		Files.write(directory.resolve("ground_truth.json"), answer.toString(2).getBytes(StandardCharsets.UTF_8));
+	}
+
+	//Works out where a marker is, given its body's rotation matrix and translation.
+	//MultiMarkerBody predicts the center as rotation R * Rz * Ry * Rx and translation t + R * offset, from a marker with rotation R and translation t,
+	//so the marker sits at center - R_center * offset, with rotation R_center * (Rz * Ry * Rx)^T.
+	//Bending moves the marker's position along the body's y axis onto an arc, and tilts it about the body's x axis by the arc's angle there.
+	private PlacedMarker place(MarkerOffset mo, double[][] rc, double[] tc){
+		double[][] offsetRotation = multiply(multiply(axisRotation(2, mo.zRotation()), axisRotation(1, mo.yRotation())), axisRotation(0, mo.xRotation()));
+		double[][] inBody = transpose(offsetRotation);
+		double[] position = {-mo.xTranslation(), -mo.yTranslation(), -mo.zTranslation()};
+		if(bend != 0.0){
+			double angle = bend * position[1];
+			position[1] = Math.sin(angle) / bend;
+			position[2] += (1 - Math.cos(angle)) / bend;
+			inBody = multiply(axisRotation(0, angle), inBody);
+		}
+		double[][] rotation = multiply(rc, inBody);
+		double[] moved = apply(rc, position);
+		double[] translation = {tc[0] + moved[0], tc[1] + moved[1], tc[2] + moved[2]};
+		return new PlacedMarker(mo.id(), rotation, translation);
+	}
+
+	//Warps the marker's padded image into the canvas. Returns the marker's image corners, or null if it was not drawn.
+	private double[] draw(PlacedMarker pm, Mat canvas){
+		//The detector's marker corners, in marker coordinates: top left, top right, bottom right, bottom left.
+		double half = MARKER_LENGTH / 2;
+		double padded = half * (MARKER_PIXELS + 2.0 * MARGIN_PIXELS) / MARKER_PIXELS;
+		double[][] local = {
+			{-half, half}, {half, half}, {half, -half}, {-half, -half},
+			{-padded, padded}, {padded, padded}, {padded, -padded}, {-padded, -padded}
+		};
+		//A marker faces the camera when its z axis points back towards the camera.
+		double[] normal = {pm.rotation[0][2], pm.rotation[1][2], pm.rotation[2][2]};
+		if(normal[0] * pm.translation[0] + normal[1] * pm.translation[1] + normal[2] * pm.translation[2] >= 0){
+			return null;
+		}
+		Point3[] points = new Point3[local.length];
+		for(int i = 0; i < local.length; i++){
+			double[] p = apply(pm.rotation, new double[]{local[i][0], local[i][1], 0.0});
+			double z = p[2] + pm.translation[2];
+			if(z < NEAR){
+				return null;
+			}
+			points[i] = new Point3(p[0] + pm.translation[0], p[1] + pm.translation[1], z);
+		}
+		MatOfPoint3f objectPoints = new MatOfPoint3f(points);
+		MatOfPoint2f imagePoints = new MatOfPoint2f();
+		Mat zero = Mat.zeros(3, 1, CvType.CV_64FC1);
+		Calib3d.projectPoints(objectPoints, zero, zero, cameraMatrix, distCoeffs, imagePoints);
+		Point[] projected = imagePoints.toArray();
+		objectPoints.release();
+		imagePoints.release();
+		zero.release();
+
+		Mat image = markerImages.get(pm.id);
+		MatOfPoint2f source = new MatOfPoint2f(new Point(0, 0), new Point(image.cols(), 0), new Point(image.cols(), image.rows()), new Point(0, image.rows()));
+		MatOfPoint2f destination = new MatOfPoint2f(projected[4], projected[5], projected[6], projected[7]);
+		Mat transform = Imgproc.getPerspectiveTransform(source, destination);
+		//With a transparent border, only the pixels the marker lands on are written, so it is drawn over whatever is behind it.
+		Imgproc.warpPerspective(image, canvas, transform, canvas.size(), Imgproc.INTER_LINEAR, Core.BORDER_TRANSPARENT);
+		source.release();
+		destination.release();
+		transform.release();
+
+		double[] corners = new double[8];
+		for(int i = 0; i < 4; i++){
+			corners[2 * i] = projected[i].x;
+			corners[2 * i + 1] = projected[i].y;
+		}
+		return corners;
+	}
+
+	private static double[][] axisRotation(int axis, double theta){
+		double[] v = new double[3];
+		v[axis] = theta;
+		return rodrigues(v[0], v[1], v[2]);
+	}
+
+	//Returns the rotation matrix of a rotation vector.
+	private static double[][] rodrigues(double x, double y, double z){
+		double theta = Math.sqrt(x * x + y * y + z * z);
+		if(theta < 1e-12){
+			return new double[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+		}
+		double kx = x / theta, ky = y / theta, kz = z / theta;
+		double c = Math.cos(theta), s = Math.sin(theta), t = 1 - c;
+		return new double[][]{
+			{t * kx * kx + c, t * kx * ky - s * kz, t * kx * kz + s * ky},
+			{t * kx * ky + s * kz, t * ky * ky + c, t * ky * kz - s * kx},
+			{t * kx * kz - s * ky, t * ky * kz + s * kx, t * kz * kz + c}
+		};
+	}
+
+	private static double[][] multiply(double[][] a, double[][] b){
+		double[][] answer = new double[3][3];
+		for(int i = 0; i < 3; i++){
+			for(int j = 0; j < 3; j++){
+				for(int k = 0; k < 3; k++){
+					answer[i][j] += a[i][k] * b[k][j];
+				}
+			}
+		}
+		return answer;
+	}
+
+	private static double[][] transpose(double[][] a){
+		double[][] answer = new double[3][3];
+		for(int i = 0; i < 3; i++){
+			for(int j = 0; j < 3; j++){
+				answer[i][j] = a[j][i];
+			}
+		}
+		return answer;
+	}
+
+	private static double[] apply(double[][] a, double[] v){
+		double[] answer = new double[3];
+		for(int i = 0; i < 3; i++){
+			answer[i] = a[i][0] * v[0] + a[i][1] * v[1] + a[i][2] * v[2];
+		}
+		return answer;
+	}
+
+	//A marker placed in camera coordinates.
+	private static final class PlacedMarker{
+		private final int id;
+		private final double[][] rotation;
+		private final double[] translation;
+
+		PlacedMarker(int id, double[][] rotation, double[] translation){
+			this.id = id;
+			this.rotation = rotation;
+			this.translation = translation;
+		}
+
+		Pose pose(){
+			Mat matrix = new Mat(3, 3, CvType.CV_64FC1);
+			for(int i = 0; i < 3; i++){
+				matrix.put(i, 0, rotation[i]);
+			}
+			Mat rvec = new Mat();
+			Calib3d.Rodrigues(matrix, rvec);
+			Mat tvec = new Mat(3, 1, CvType.CV_64FC1);
+			tvec.put(0, 0, translation);
+			Pose answer = new Pose(rvec, tvec);
+			matrix.release();
+			rvec.release();
+			tvec.release();
+			return answer;
+		}
+	}
+
+	/**Renders a corpus of frames of the default four marker body, as ConfigGenerator configures it for CompoundMarkerSimulation,
+	at random poses in front of the camera, and saves them with their true poses.<br>
+	Arguments: the camera parameters file, the output directory, the number of frames, and optionally the random seed,
+	the bend curvature, the noise and blur sigmas, and the lighting gain and offset, in that order.
+	*/
+	public static void main(String[] args) throws IOException {
+		String cameraParameters = args[0];
+		Path directory = Paths.get(args[1]);
+		int count = Integer.parseInt(args[2]);
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 0L;
+		JSONObject parameters = new JSONObject(new String(Files.readAllBytes(Paths.get(cameraParameters)), StandardCharsets.UTF_8));
+		CalibrationInformation ci = CalibrationInformation.fromJSONObject(parameters);
+		int width = parameters.optInt("image_width", 640);
+		int height = parameters.optInt("image_height", 480);
+
+		MultiMarkerBody body = new MultiMarkerBody(.25,
+			new MarkerOffset(0, 0d, 0d, 0d, .85, -.85, 0d),
+			new MarkerOffset(1, 0d, 0d, 0d, -.85, -.85, 0d),
+			new MarkerOffset(2, 0d, 0d, 0d, .85, .85, 0d),
+			new MarkerOffset(3, 0d, 0d, 0d, -.85, .85, 0d));
+		SyntheticFrameGenerator generator = new SyntheticFrameGenerator(ci, width, height, 4, List.of(body));
+		generator.setBend(args.length > 4 ? Double.parseDouble(args[4]) : 0.0);
+		generator.setNoise(args.length > 5 ? Double.parseDouble(args[5]) : 0.0);
+		generator.setBlur(args.length > 6 ? Double.parseDouble(args[6]) : 0.0);
+		generator.setLighting(args.length > 7 ? Double.parseDouble(args[7]) : 1.0, args.length > 8 ? Double.parseDouble(args[8]) : 0.0);
+
+		//Bodies face the camera, turned by up to about 30 degrees, between 6 and 14 marker lengths away, and kept well inside the frame.
+		Random random = new Random(seed);
+		List<List<Pose>> poses = new ArrayList<List<Pose>>();
+		for(int i = 0; i < count; i++){
+			double z = 6 + 8 * random.nextDouble();
+			double x = (random.nextDouble() - 0.5) * 0.4 * z;
+			double y = (random.nextDouble() - 0.5) * 0.3 * z;
+			double[] rvec = facingCamera(0.5 * (random.nextDouble() - 0.5), 0.5 * (random.nextDouble() - 0.5), Math.PI * (random.nextDouble() - 0.5));
+			poses.add(List.of(new Pose(rvec[0], rvec[1], rvec[2], x, y, z)));
+		}
+		long start = System.nanoTime();
+		List<SyntheticFrame> frames = generator.renderAll(poses, seed);
+		long elapsed = System.nanoTime() - start;
+		generator.save(frames, directory);
+		System.out.println("Rendered " + count + " frames in " + (elapsed / 1_000_000) + "ms, saved to " + directory + ".");
+	}
+
+	//Returns the rotation vector of a body facing the camera, its z axis pointing back at the camera, then tilted about x and y and turned about z.
+	private static double[] facingCamera(double xTilt, double yTilt, double turn){
+		double[][] r = multiply(multiply(multiply(axisRotation(0, Math.PI), axisRotation(0, xTilt)), axisRotation(1, yTilt)), axisRotation(2, turn));
+		Mat matrix = new Mat(3, 3, CvType.CV_64FC1);
+		for(int i = 0; i < 3; i++){
+			matrix.put(i, 0, r[i]);
+		}
+		Mat rvec = new Mat();
+		Calib3d.Rodrigues(matrix, rvec);
+		double[] answer = {rvec.get(0, 0)[0], rvec.get(1, 0)[0], rvec.get(2, 0)[0]};
+		matrix.release();
+		rvec.release();
+		return answer;
+	}
+}
@@ -33,18 +33,22 @@ public class CompoundMarkerSimulation implements Simulation {
 	}
 
 	public Mat run(DetectorResults results){
+		Mat finalMatrix = new Mat();
+		this.run(results, finalMatrix);
+		return finalMatrix;
+	}
+
+	public void run(DetectorResults results, Mat finalMatrix){
+		results.copyBaseImageTo(finalMatrix);
 		/*
 		Example usage of multi marker body must include null checking
 		*/
 		Pair<Mat, Mat> prediction = this.cMarker.predictCenter(results);
 		if(prediction == null){
-			return results.baseImage();
+			return;
 		}
 
-		Mat finalMatrix = results.baseImage();
-
 		CalibrationInformation ci = results.calibrationInformation();
 		Calib3d.drawFrameAxes(finalMatrix, ci.cameraMatrix(), ci.distCoeffs(), prediction.first(), prediction.second(), 0.5F);
-		return finalMatrix;
 	}
 }
@@ -26,19 +26,24 @@ public class CoordinateTestSimulation implements Simulation {
 	}
 
 	public Mat run(DetectorResults results){
+		Mat finalMatrix = new Mat();
+		this.run(results, finalMatrix);
+		return finalMatrix;
+	}
+
+	public void run(DetectorResults results, Mat finalMatrix){
+		results.copyBaseImageTo(finalMatrix);
 		MarkerInformation second = results.getMarkerInformation(this.secondid);
 		if(second == null){
-			return results.baseImage();
+			return;
 		}
 		Pair<Mat, Mat> prediction = this.body.predictCenter(results);
 
-		Mat finalMatrix = results.baseImage();
 		//MatMathUtils.printmat(prediction.first());
 		//MatMathUtils.printmat(prediction.second());
 		//System.out.println();
 		//Pair<Mat, Mat> back = MatMathUtils.get3DCoords(prediction.first(), prediction.second());
 		CalibrationInformation ci = results.calibrationInformation();
 		Calib3d.drawFrameAxes(finalMatrix, ci.cameraMatrix(), ci.distCoeffs(), prediction.first(), prediction.second(), 0.5F);
-		return finalMatrix;
 	}
 }
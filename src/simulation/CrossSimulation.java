@@ -51,13 +51,24 @@ public class CrossSimulation implements Simulation {
     @return The result mat.
     */
     public Mat run(DetectorResults results){
+        Mat answer = new Mat();
+        this.run(results, answer);
+        return answer;
+    }
+
+    /**Runs the simulation, drawing into the given mat.
+    @param results The detector results object.
+    @param answer The mat to draw into.
+    */
+    public void run(DetectorResults results, Mat answer){
+        results.copyBaseImageTo(answer);
         //Edit this section of code to change the conditions on which the simulation does not run, as well as declare variables holding marker information.
         Pair<Mat, Mat> p_tracking = this.trackingGroup.predictCenter(results);
         Pair<Mat, Mat> p_first = this.firstGroup.predictCenter(results);
         Pair<Mat, Mat> p_second = this.secondGroup.predictCenter(results);
 
         if(p_tracking == null || p_first == null || p_second == null){
-            return results.baseImage();
+            return;
         }
         //End section
 
@@ -75,7 +86,6 @@ public class CrossSimulation implements Simulation {
         byte[] data = ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
         mat.put(0, 0, data);
 
-        Mat answer = results.baseImage();
         //Edit this section of code to change where the crossection is drawn on the screen.
         //Variables declared before the code block must be filled in by the end of the section.
         //Width and height each represent the lengths of one side of the marker.
@@ -138,8 +148,6 @@ public class CrossSimulation implements Simulation {
         Calib3d.drawFrameAxes(answer, ci.cameraMatrix(), ci.distCoeffs(), p_tracking.first(), p_tracking.second(), 1F);
         Calib3d.drawFrameAxes(answer, ci.cameraMatrix(), ci.distCoeffs(), p_first.first(), p_first.second(), 1F);
         Calib3d.drawFrameAxes(answer, ci.cameraMatrix(), ci.distCoeffs(), p_second.first(), p_second.second(), 1F);
-
-        return answer;
     }
 
     /*private static void drawLine(Mat dest, int fromX, int fromY, int toX, int toY, int thickness, double[] color){
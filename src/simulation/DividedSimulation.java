@@ -48,7 +48,16 @@ public class DividedSimulation implements Simulation {
 	*/
 	public Mat run(DetectorResults results){
 		Mat finalMatrix = new Mat();
-		results.baseImage().copyTo(finalMatrix);
+		this.run(results, finalMatrix);
+		return finalMatrix;
+	}
+
+	/**Runs the simulation, drawing into the given mat.
+	@param results The detector results object.
+	@param finalMatrix The mat to draw into.
+	*/
+	public void run(DetectorResults results, Mat finalMatrix){
+		results.copyBaseImageTo(finalMatrix);
 		CalibrationInformation ci = results.calibrationInformation();
 		for(int i = firstGroup.first(); i <= firstGroup.second(); i++){
 			MarkerInformation info = results.getMarkerInformation(i);
@@ -64,6 +73,5 @@ public class DividedSimulation implements Simulation {
 			}
 			Calib3d.drawFrameAxes(finalMatrix, ci.cameraMatrix(), ci.distCoeffs(), info.pose().rotationVector(), info.pose().translationVector(), 0.75F);
 		}
-		return finalMatrix;
 	}
 }
\ No newline at end of file
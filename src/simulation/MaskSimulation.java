@@ -107,7 +107,13 @@ public class MaskSimulation implements Simulation {
     }
 
     public Mat run(DetectorResults results){
-        Mat answer = results.baseImage();
+        Mat answer = new Mat();
+        this.run(results, answer);
+        return answer;
+    }
+
+    public void run(DetectorResults results, Mat answer){
+        results.copyBaseImageTo(answer);
         
         Mat zeros = new Mat(3, 1, CvType.CV_64FC1);zeros.put(0, 0, 0);zeros.put(1, 0, 0);zeros.put(2, 0, 0);
 
@@ -122,7 +128,7 @@ public class MaskSimulation implements Simulation {
         Pair<Mat, Mat> p_second = this.secondGroup.predictCenter(results);
 
         if(p_tracking == null || p_first == null || p_second == null){
-            return results.baseImage();
+            return;
         }
 
         Pose tracking_pose = new Pose(p_tracking.first(), p_tracking.second());
@@ -281,8 +287,5 @@ public class MaskSimulation implements Simulation {
         //Calib3d.drawFrameAxes(answer, ci.cameraMatrix(), ci.distCoeffs(), p_tracking.first(), p_tracking.second(), 1F);
         //Calib3d.drawFrameAxes(answer, ci.cameraMatrix(), ci.distCoeffs(), p_first.first(), p_first.second(), 1F);
         //Calib3d.drawFrameAxes(answer, ci.cameraMatrix(), ci.distCoeffs(), p_second.first(), p_second.second(), 1F);
-
-        // Return final image
-        return answer;
     }
 }
\ No newline at end of file
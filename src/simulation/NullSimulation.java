@@ -23,4 +23,8 @@ public class NullSimulation implements Simulation {
 	public Mat run(DetectorResults results){
 		return results.baseImage();
 	}
+
+	public void run(DetectorResults results, Mat dst){
+		results.copyBaseImageTo(dst);
+	}
 }
\ No newline at end of file
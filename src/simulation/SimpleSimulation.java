@@ -22,13 +22,17 @@ public class SimpleSimulation implements Simulation {
 
 	public Mat run(DetectorResults results){
 		Mat finalMatrix = new Mat();
-		results.baseImage().copyTo(finalMatrix);
+		this.run(results, finalMatrix);
+		return finalMatrix;
+	}
+
+	public void run(DetectorResults results, Mat finalMatrix){
+		results.copyBaseImageTo(finalMatrix);
 		Mat rotationMatrix = results.rotationVectors();
 		Mat translationMatrix = results.translationVectors();
 		CalibrationInformation ci = results.calibrationInformation();
 		for(int i = 0; i < rotationMatrix.rows(); i++){
 			Calib3d.drawFrameAxes(finalMatrix, ci.cameraMatrix(), ci.distCoeffs(), rotationMatrix.row(i), translationMatrix.row(i), this.length);
 		}
-		return finalMatrix;
 	}
 }
\ No newline at end of file
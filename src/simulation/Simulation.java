@@ -12,4 +12,15 @@ public interface Simulation {
 	@return A mat consisting of the base picture with the gradient drawn on it.
 	*/
 	Mat run(DetectorResults results);
+
+	/**Runs this simulation, drawing into dst instead of a newly allocated mat.<br>
+	dst is only reallocated if its size or type differs from the base picture's, so passing in a reused frame, such as one from a FramePool,
+	lets steady-state frame processing do no native allocation.<br>
+	The default implementation calls run(results) and copies the result into dst. Simulations which draw over the base picture override it.
+	@param results the results of a detection.
+	@param dst the mat to draw into.
+	*/
+	default void run(DetectorResults results, Mat dst){
+		this.run(results).copyTo(dst);
+	}
 }
\ No newline at end of file
@@ -81,8 +81,14 @@ public class TensorSimulation implements Simulation {
     }
 
     public Mat run(DetectorResults results){
+        Mat answer = new Mat();
+        this.run(results, answer);
+        return answer;
+    }
+
+    public void run(DetectorResults results, Mat answer){
         // Initialize final image buffer
-        Mat answer = results.baseImage();
+        results.copyBaseImageTo(answer);
 
         // Relative translation and z rotation of stress tensor to tracking mmb
         Mat rel_pos = new Mat(3, 1, CvType.CV_64FC1);
@@ -103,7 +109,7 @@ public class TensorSimulation implements Simulation {
         Pair<Mat, Mat> p_first = this.firstGroup.predictCenter(results);
         Pair<Mat, Mat> p_second = this.secondGroup.predictCenter(results);
         if(p_tracking == null || p_first == null || p_second == null){
-            return results.baseImage();
+            return;
         }
         Pose tracking_pose = new Pose(p_tracking.first(), p_tracking.second());
         Pose first_pose = new Pose(p_first.first(), p_first.second());
@@ -214,7 +220,5 @@ public class TensorSimulation implements Simulation {
         answer = drawStress(answer, center, shear_offset1, MatMathUtils.scalarMultiply(v,-1), -1*sigma_prime.get(0,1)[0],ci,dMat,true);
         answer = drawStress(answer, center, shear_offset5, MatMathUtils.scalarMultiply(v,1), -1*sigma_prime.get(0,1)[0],ci,dMat,true);
         answer = drawStress(answer, center, shear_offset6, MatMathUtils.scalarMultiply(u,1), -1*sigma_prime.get(0,1)[0],ci,dMat,true);
-
-        return answer;
     }
 }
\ No newline at end of file
@@ -91,7 +91,8 @@ public class CameraCalibrationPanel extends SimulationPanel implements KeyListen
 
 			if(this.captureNextFrame){
 				this.captureNextFrame = false;
-				capturedFrames.add(results);
+				//The base image may be a pooled frame, which is reused once the caller is done with it.
+				capturedFrames.add(results.detached());
 			}
 			return imageCopy;
 		}
@@ -0,0 +1,74 @@
+package userinterface;
+
+import javax.swing.*;
+import java.util.*;
+
+/**Option for an enum value using a JComboBox representation.
+*/
+
+public class EnumOption<Q extends Enum<Q>, V> extends Option<Q, V>{
+	private final List<Q> values;
+
+	/**Constructs an EnumOption from the given values, offering every constant of the default value's enum.
+	@param name the option's name. Can be null.
+	@param message the option's message. This is what is displayed to users explaining what the option is, it should be human-readable. Can be null.
+	@param defaultValue the option's default value. Can NOT be null.
+	@param reader the function which reads an option's current value.
+	@param enactor the function which enacts an option value.
+	@throws NullPointerException if reader, enactor or defaultValue is null.
+	*/
+	public EnumOption(String name, String message, Q defaultValue, Reader<Q, V> reader, Enactor<Q, V> enactor){
+		this(name, message, defaultValue, reader, enactor, List.of(defaultValue.getDeclaringClass().getEnumConstants()));
+	}
+
+	/**Constructs an EnumOption from the given values, offering only the given constants.
+	@param name the option's name. Can be null.
+	@param message the option's message. This is what is displayed to users explaining what the option is, it should be human-readable. Can be null.
+	@param defaultValue the option's default value. Can NOT be null.
+	@param reader the function which reads an option's current value.
+	@param enactor the function which enacts an option value.
+	@param values the constants to offer, in the order they are offered.
+	@throws NullPointerException if reader, enactor, defaultValue, values or any value in values is null.
+	@throws IllegalArgumentException if values does not contain defaultValue.
+	*/
+	public EnumOption(String name, String message, Q defaultValue, Reader<Q, V> reader, Enactor<Q, V> enactor, List<Q> values){
+		super(name, message, defaultValue, reader, enactor);
+		this.values = List.copyOf(values);
+		if(!this.values.contains(defaultValue)){
+			throw new IllegalArgumentException("Default value " + defaultValue + " is not one of the offered values.");
+		}
+	}
+
+	/**Returns an OptionEvaluator for this EnumOption.<br>
+	The OptionEvaluator's getComponent method will always return an instance of JComboBox.<br>
+	The OptionEvaluator's evaluate method will return the selected constant. It will never return null.
+	@param currentValue the initially selected constant.
+	@throws NullPointerException if currentValue is null.
+	@return an OptionEvaluator for this EnumOption.
+	*/
+	@Override
+	public OptionEvaluator<Q> getEvaluator(Q currentValue){
+		if(currentValue == null){
+			throw new NullPointerException();
+		}
+		return new OptionEvaluator<Q>(){
+			private JComboBox<Q> component;
+
+			{
+				this.component = new JComboBox<Q>(new Vector<Q>(EnumOption.this.values));
+				this.component.setSelectedItem(currentValue);
+			}
+
+			@Override
+			public JComponent getComponent(){
+				return this.component;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public Q evaluate(){
+				return (Q)this.component.getSelectedItem();
+			}
+		};
+	}
+}
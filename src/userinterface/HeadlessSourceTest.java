@@ -0,0 +1,71 @@
+package userinterface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencv.core.*;
+import markerdetector.CalibrationInformation;
+import util.*;
+
+//Runs the simulations on frames held in memory with no display, and checks that they finish without a camera ever being opened, and close the source.
+//Run with the working directory the application is normally run from, so the simulation configs are found.
+public class HeadlessSourceTest{
+	private static final int FRAMES = 300;
+
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		List<Mat> frames = new ArrayList<Mat>();
+		for(int i = 0; i < 10; i++){
+			frames.add(new Mat(480, 640, CvType.CV_8UC3, new Scalar(20 * i, 128, 255 - 20 * i)));
+		}
+		Mat distortion = Mat.zeros(1, 5, CvType.CV_64FC1);
+		CalibrationInformation ci = new CalibrationInformation(Mat.eye(3, 3, CvType.CV_64FC1), distortion);
+		ArrayFrameSource frameArray = new ArrayFrameSource(frames, 30, FramePacing.AS_FAST_AS_POSSIBLE, FRAMES / frames.size());
+		boolean[] closed = {false};
+		FrameSource source = new FrameSource(){
+			public PooledFrame getPooledFrame(){
+				return frameArray.getPooledFrame();
+			}
+
+			public FramePool framePool(){
+				return frameArray.framePool();
+			}
+
+			public int getFrameRate(){
+				return frameArray.getFrameRate();
+			}
+
+			public int getFrameWidth(){
+				return frameArray.getFrameWidth();
+			}
+
+			public int getFrameHeight(){
+				return frameArray.getFrameHeight();
+			}
+
+			public void close(){
+				closed[0] = true;
+				frameArray.close();
+			}
+		};
+
+		StrengthsGUI gui = new StrengthsGUI(ci);
+		gui.start(source);
+		boolean finished = gui.awaitTermination(30, TimeUnit.SECONDS);
+		boolean drained = source.getPooledFrame() == null;
+		int opened = VideoCap.openedCameras();
+		System.out.println("finished " + finished + ", drained " + drained + ", closed " + closed[0] + ", " + opened + " cameras opened, "
+			+ source.framePool().allocations() + " frames allocated for " + FRAMES);
+		assertThat(finished);
+		assertThat(drained);
+		assertThat(closed[0]);
+		assertThat(opened == 0);
+	}
+
+	private static void assertThat(boolean statement){
+		if(!statement){
+			throw new AssertionError();
+		}
+	}
+}
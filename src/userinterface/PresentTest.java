@@ -0,0 +1,45 @@
+package userinterface;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import org.opencv.core.*;
+import util.*;
+
+//Checks that a presented frame can go back to its pool and be drawn over while the panel still paints what was presented.
+public class PresentTest{
+	private static final int SIZE = 4;
+
+	public static void main(String[] args){
+		System.setProperty("java.awt.headless", "true");
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		FramePool pool = new FramePool(SIZE, SIZE, CvType.CV_8UC3, 1);
+		SimulationPanel panel = new SimulationPanel(new ArrayList<OptionalSimulationParameters<?>>());
+
+		PooledFrame shown = pool.acquire();
+		shown.mat().setTo(new Scalar(0, 0, 255));
+		panel.present(shown);
+
+		//The pool keeps one idle frame, so this is the buffer which was just presented.
+		PooledFrame reused = pool.acquire();
+		reused.mat().setTo(new Scalar(255, 0, 0));
+		boolean sameBuffer = pool.allocations() == 1;
+
+		BufferedImage painted = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics g = painted.getGraphics();
+		panel.paintComponent(g);
+		g.dispose();
+		int rgb = painted.getRGB(0, 0) & 0xFFFFFF;
+		reused.release();
+
+		System.out.println("same buffer " + sameBuffer + ", painted " + Integer.toHexString(rgb));
+		assertThat(sameBuffer);
+		assertThat(rgb == 0xFF0000);
+	}
+
+	private static void assertThat(boolean statement){
+		if(!statement){
+			throw new AssertionError();
+		}
+	}
+}
@@ -10,6 +10,8 @@ import simulation.*;
 import java.util.*;
 import java.awt.Graphics;
 import util.*;
+import concurrency.FrameContext;
+import concurrency.FrameTrace;
 
 /**JPanel which displays running simulations.<br>
 This class will store simulations which are either provided at construction-time or with the addSimulation method.<br>
@@ -25,7 +27,14 @@ This class cannot store multiple different versions of the same Simulation class
 
 public class SimulationPanel extends JPanel {
 	private Map<Class<? extends Simulation>, Pair<OptionalSimulationParameters<?>, Simulation>> simulationInformation = new HashMap<>();
-	private Mat matrix;
+	//The most recently presented frame, copied out of its pooled buffer so that painting never sees a buffer which has gone back to the pool.
+	private volatile BufferedImage image;
+	//Frame sequence number of the most recently presented frame, so that painting it can be traced.
+	private volatile long imageSequence = -1;
+	//Pool of output frames, recreated whenever the size or type of the base image changes.
+	private FramePool pool;
+
+	private static final int POOL_SIZE = 4;
 
     /**Constructs a SimulationPanel with the provided simulations, whose running status will be set to the running status of the OptionalSimulationParameters.
     @param defaultSimulationParameters collection of Simulations to display
@@ -51,18 +60,79 @@ public class SimulationPanel extends JPanel {
         return new SimulationPanel(list);
     }
 
-    /**Constructs a mat for each simulation and stacks them in one image.
+    /**Constructs a mat for each simulation, stacks them in one image and shows it on the panel.<br>
+    Equivalent to present(render(results)).
     @param results The detector results to use.
     @throws NullPointerException if results is null.
     */
     public void simulate(DetectorResults results){
-        this.matrix = results.baseImage();
+        this.present(this.render(results));
+    }
+
+    /**Constructs a mat for each simulation and stacks them in one image, which is returned rather than shown.<br>
+    The caller holds the only reference to the returned frame, and must release it once done, for example by passing it to present.<br>
+    Rendering one frame may overlap presenting the previous one on another thread, but calls to render must not overlap each other.
+    @param results The detector results to use. The caller keeps its reference to them.
+    @throws NullPointerException if results is null.
+    @return the rendered frame.
+    */
+    public PooledFrame render(DetectorResults results){
+        FramePool pool = this.framePool(results);
+        DetectorResults current = results;
+        PooledFrame answer = null;
         for(Map.Entry<Class<? extends Simulation>, Pair<OptionalSimulationParameters<?>, Simulation>> entry : this.simulationInformation.entrySet()){
             if(entry.getValue().first().isRunning()){
-                this.matrix = entry.getValue().second().run(results);
-                results = new DetectorResults(this.matrix, results);
+                PooledFrame next = pool.acquire();
+                long start = FrameTrace.begin();
+                entry.getValue().second().run(current, next.mat());
+                FrameTrace.end(entry.getKey().getSimpleName(), start);
+                //Each simulation draws on top of the previous one's output.
+                if(current != results){
+                    current.release();
+                }
+                current = new DetectorResults(next, current);
+                if(answer != null){
+                    answer.release();
+                }
+                answer = next;
             }
         }
+        if(current != results){
+            current.release();
+        }
+        if(answer == null){
+            answer = pool.acquire();
+            results.copyBaseImageTo(answer.mat());
+        }
+        return answer;
+    }
+
+    /**Shows a rendered frame on the panel, and releases it.<br>
+    The frame is copied into an image for painting before it is released, so the copy happens on the calling thread rather than while painting,
+    and the frame may go back to its pool and be drawn over while the panel is still painting it.
+    @param rendered the frame to show. The caller's reference to it is released.
+    @throws NullPointerException if rendered is null.
+    */
+    public void present(PooledFrame rendered){
+        long start = FrameTrace.begin();
+        try {
+            Mat m = rendered.mat();
+            this.imageSequence = FrameContext.sequence();
+            this.image = m.rows() != 0 && m.cols() != 0 ? getImage(m) : null;
+        } finally {
+            FrameTrace.end("convert", start);
+            rendered.release();
+        }
+        this.repaint();
+    }
+
+    //Returns a pool of frames the size and type of the base image.
+    private FramePool framePool(DetectorResults results){
+        Size size = results.baseSize();
+        if(this.pool == null || this.pool.rows() != (int)size.height || this.pool.cols() != (int)size.width || this.pool.type() != results.baseType()){
+            this.pool = new FramePool((int)size.height, (int)size.width, results.baseType(), POOL_SIZE);
+        }
+        return this.pool;
     }
 
     /**Adds the given Simulation to this SimulationPanel's collection of Simulations, using the given parameters a default values, and not running by default.
@@ -197,12 +267,13 @@ public class SimulationPanel extends JPanel {
         return (T)(running ? this.simulationInformation.get(simulationClass).second() : null);
     }
 
-    /**Returns this panel's preferred size, which is the size of the most recently provided input matrix.
+    /**Returns this panel's preferred size, which is the size of the most recently presented frame.
     @return this panel's preferred size.
     */
     @Override
     public Dimension getPreferredSize() {
-        return this.matrix == null ? new Dimension(0, 0) : new Dimension(this.matrix.cols(), this.matrix.rows());
+        BufferedImage img = this.image;
+        return img == null ? new Dimension(0, 0) : new Dimension(img.getWidth(), img.getHeight());
     }
 
     /**Paints the most recent simulation results on the panel.
@@ -211,10 +282,13 @@ public class SimulationPanel extends JPanel {
     */
     @Override
 	public void paintComponent(Graphics g){
+        long start = FrameTrace.begin();
         super.paintComponent(g);
-		if(this.matrix != null && this.matrix.rows() != 0 && this.matrix.cols() != 0){
-            g.drawImage(getImage(this.matrix), 0, 0, this);
+        BufferedImage img = this.image;
+		if(img != null){
+            g.drawImage(img, 0, 0, this);
         }
+        FrameTrace.end("paint", start, this.imageSequence);
 	}
 
 	private static BufferedImage matToBufferedImage(Mat mat) {
@@ -2,15 +2,26 @@ package userinterface;
 
 import java.util.*;
 import javax.swing.*;
+import java.awt.GraphicsEnvironment;
 import java.awt.GridLayout;
 import java.awt.event.*;
 import java.io.*;
 import java.nio.file.*;
 import java.lang.reflect.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.json.*;
 import org.opencv.core.*;
 
+import concurrency.DropPolicy;
+import concurrency.FrameTrace;
+import concurrency.NodeBehavior;
+import concurrency.Pipeline;
+import concurrency.PipelineBuilder;
+import concurrency.PipelineConfig;
+import concurrency.PipelineFunction;
+import concurrency.ReconfigurablePipeline;
 import driver.*;
 import markerdetector.*;
 import util.*;
@@ -30,14 +41,26 @@ import simulation.*;
 */
 
 public class StrengthsGUI{
+	//Null when there is no display, in which case the simulations run without being shown.
 	private JFrame frame;
-	private List<SimulationPanel> simulationPanels;
+	//Read by the pipeline's simulation step, so replacing it takes effect from the next frame.
+	private volatile List<SimulationPanel> simulationPanels;
 	private CalibrationInformation calibrationInformation;
 	private int numPanels;
-	private MarkerDetector detector;
+	private volatile MarkerDetector detector;
+	//Records the frames and results which reach the simulation step, or null if no session is being recorded.
+	private volatile SessionRecorder recorder;
+
+	//The frame pipeline, null until start is called, and the settings it is built with.
+	private ReconfigurablePipeline pipeline;
+	private FrameSource source;
+	//Counted down once the pipeline has stopped for good and the source has been closed.
+	private final CountDownLatch sourceClosed = new CountDownLatch(1);
+	private int detectionWorkers;
+	private NodeBehavior nodeBehavior;
 
 	//The state of the StrengthsGUI is used to mark certain buttons as enabled and disabled.
-	private State state;
+	private volatile State state;
 	private Map<State, List<JComponent>> stateEnablings = new EnumMap<State, List<JComponent>>(State.class);
 	{
 		for(State s : State.values()){
@@ -48,17 +71,27 @@ public class StrengthsGUI{
 	private static final String CONFIG_PATH = resolveConfigPath();
 	private static final String STORAGE_PATH = resolveStoragePath();
 	private static final String CALIBRATION_FILE = STORAGE_PATH + File.separator + "calibration.json";
+	private static final String PIPELINE_FILE = CONFIG_PATH + File.separator + "pipeline.json";
+	//Frames each step may run ahead of the next. Kept small, since every frame in flight adds to the delay before it is shown.
+	private static final int FRAMES_IN_FLIGHT = 4;
+	//Spans kept while tracing. At a few dozen spans per frame, this is the last several seconds at 30 frames per second.
+	private static final int TRACE_CAPACITY = 1 << 16;
+	//The predefined dictionary markers are detected with.
+	private static final int DICTIONARY_ID = 4;
+	//Node behaviors offered in the settings. Replacing nodes are left out, since the frames they replace would be missing from recordings.
+	private static final List<NodeBehavior> OFFERED_BEHAVIORS = List.of(NodeBehavior.BLOCKING, NodeBehavior.RING_BUFFER, NodeBehavior.QUEUE, NodeBehavior.REORDERING);
 	private static final String CALIBRATION_INSTRUCTIONS = "<html><center>Camera Calibration Started.<br>"
 	 				+ "Press C to capture a frame, and press ENTER to calibrate.<br>"
 	 				+ "In order to ensure good calibration, capture frames featuring the board from several different distances and angles.<br>"
 	 				+ "You must capture a minimum of 10 frames. Note that upon pressing enter, calibration may take several seconds.";
 
-	private static VideoCap webcam = new VideoCap();
 
 	private static MenuBarSkeleton<StrengthsGUI> bar;
 	//private static OptionPaneSkeleton<StrengthsGUI> optionPane;
 	private static List<Option<?, StrengthsGUI>> options;
 	private static List<Option<?, SimulationPanel>> panelOptions;
+	//The settings in pipeline.json, which is a pipeline description without stages, since the GUI adds its own.
+	private static JSONObject pipelineDefaults;
 
 	private static final List<Class<? extends Simulation>> eligibleSimulations = List.of(
 		CrossSimulation.class,
@@ -98,6 +131,57 @@ public class StrengthsGUI{
 		dialog.setVisible(true);
 	};
 
+	private static final StaticActionListener<StrengthsGUI> startTrace = (action, gui) -> {
+		FrameTrace.enable(TRACE_CAPACITY);
+	};
+
+	private static final StaticActionListener<StrengthsGUI> saveTrace = (action, gui) -> {
+		if(!FrameTrace.isEnabled()){
+			JOptionPane.showMessageDialog(gui.frame, "Tracing has not been started.");
+			return;
+		}
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("trace.json"));
+		if(chooser.showSaveDialog(gui.frame) != JFileChooser.APPROVE_OPTION){
+			return;
+		}
+		try{
+			FrameTrace.dump(chooser.getSelectedFile().toPath());
+		} catch(IOException e){
+			JOptionPane.showMessageDialog(gui.frame, "The trace could not be saved: " + e.getMessage());
+		}
+	};
+
+	//Frames are recorded raw, since compressing them would slow down the simulation step.
+	private static final StaticActionListener<StrengthsGUI> startRecording = (action, gui) -> {
+		if(gui.recorder != null){
+			JOptionPane.showMessageDialog(gui.frame, "A session is already being recorded.");
+			return;
+		}
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("session.bin"));
+		if(chooser.showSaveDialog(gui.frame) != JFileChooser.APPROVE_OPTION){
+			return;
+		}
+		try{
+			gui.recorder = new SessionRecorder(chooser.getSelectedFile().toPath(), FrameEncoding.RAW, DICTIONARY_ID, gui.calibrationInformation);
+		} catch(IOException e){
+			JOptionPane.showMessageDialog(gui.frame, "The session could not be recorded: " + e.getMessage());
+		}
+	};
+
+	private static final StaticActionListener<StrengthsGUI> stopRecording = (action, gui) -> {
+		if(gui.recorder == null){
+			JOptionPane.showMessageDialog(gui.frame, "No session is being recorded.");
+			return;
+		}
+		try{
+			gui.stopRecording();
+		} catch(IOException e){
+			JOptionPane.showMessageDialog(gui.frame, "The session could not be saved: " + e.getMessage());
+		}
+	};
+
 	private static final StaticActionListener<StrengthsGUI> pause = (action, gui) -> {
 		gui.changeState(State.PAUSED);
 	};
@@ -119,7 +203,15 @@ public class StrengthsGUI{
 		MenuItemSkeleton<StrengthsGUI> resumeItem = new StateMenuItemSkeleton("Resume Simulations", resume, KeyStroke.getKeyStroke(KeyEvent.VK_R, ActionEvent.CTRL_MASK), -1, State.PAUSED);
 		MenuSkeleton<StrengthsGUI> simulationMenu = new MenuSkeleton<StrengthsGUI>("Simulation", List.of(pauseItem, resumeItem));
 
-		bar = new MenuBarSkeleton<StrengthsGUI>(List.of(calibrationMenu, preferencesMenu, simulationMenu));
+		//Traces can be opened in chrome://tracing or ui.perfetto.dev.
+		MenuItemSkeleton<StrengthsGUI> startTraceItem = new MenuItemSkeleton<StrengthsGUI>("Start Tracing", startTrace);
+		MenuItemSkeleton<StrengthsGUI> saveTraceItem = new MenuItemSkeleton<StrengthsGUI>("Save Trace...", saveTrace);
+		//Recorded sessions can be replayed with a SessionReader.
+		MenuItemSkeleton<StrengthsGUI> startRecordingItem = new MenuItemSkeleton<StrengthsGUI>("Record Session...", startRecording);
+		MenuItemSkeleton<StrengthsGUI> stopRecordingItem = new MenuItemSkeleton<StrengthsGUI>("Stop Recording", stopRecording);
+		MenuSkeleton<StrengthsGUI> diagnosticsMenu = new MenuSkeleton<StrengthsGUI>("Diagnostics", List.of(startTraceItem, saveTraceItem, startRecordingItem, stopRecordingItem));
+
+		bar = new MenuBarSkeleton<StrengthsGUI>(List.of(calibrationMenu, preferencesMenu, simulationMenu, diagnosticsMenu));
 
 		//In order to make an option which applies to the entire application, add it to the options list.
 		//In order to make an option which applies to each SimulationPanel, add it to panelOptions list.
@@ -148,13 +240,40 @@ public class StrengthsGUI{
 			gui.simulationPanels = panels;
 			gui.updatePanels();
 		}, 0, 10, 1);
-		options = List.of(testSpinner);
+
+		pipelineDefaults = readPipelineDefaults();
+		int cores = Runtime.getRuntime().availableProcessors();
+		int defaultWorkers = Math.max(1, Math.min(cores, pipelineDefaults.optInt("workers", 2)));
+		Option<Integer, StrengthsGUI> workersSpinner = new IntSpinnerOption<StrengthsGUI>("DetectionThreads", "Select Maximum Number of Marker Detection Threads", defaultWorkers, (gui) -> {
+			return gui.detectionWorkers;
+		}, (value, gui) -> {
+			if(gui.detectionWorkers == value){
+				return;
+			}
+			gui.detectionWorkers = value;
+			gui.reconfigurePipeline();
+		}, 1, cores, 1);
+		Option<NodeBehavior, StrengthsGUI> behaviorOption = new EnumOption<NodeBehavior, StrengthsGUI>("FrameBuffering", "Select How Frames Are Passed Between Steps",
+			NodeBehavior.valueOf(pipelineDefaults.optString("nodeBehavior", NodeBehavior.RING_BUFFER.name())), (gui) -> {
+			return gui.nodeBehavior;
+		}, (value, gui) -> {
+			if(gui.nodeBehavior == value){
+				return;
+			}
+			gui.nodeBehavior = value;
+			gui.reconfigurePipeline();
+		}, OFFERED_BEHAVIORS);
+		options = List.of(testSpinner, workersSpinner, behaviorOption);
 	}
 
 	{
-		this.frame = new JFrame("Strengths \uD83D\uDCAA");
-		this.frame.setJMenuBar(bar.getComponent(this));
-		this.frame.setBounds(0, 0, 1080, 720);
+		//The menu bar is made even without a display, since making it registers the items enabled in each state.
+		JMenuBar menuBar = bar.getComponent(this);
+		if(!GraphicsEnvironment.isHeadless()){
+			this.frame = new JFrame("Strengths \uD83D\uDCAA");
+			this.frame.setJMenuBar(menuBar);
+			this.frame.setBounds(0, 0, 1080, 720);
+		}
 
 		for(Option<?, StrengthsGUI> o : options){
 			o.resetToDefault(this);
@@ -167,12 +286,16 @@ public class StrengthsGUI{
 		this(null);
 	}
 
-	/**Constructs a StrengthsGUI with the given CalibrationInformation. If ci is null, the user will be prompted to calibrate their camera.
+	/**Constructs a StrengthsGUI with the given CalibrationInformation. If ci is null, the user will be prompted to calibrate their camera.<br>
+	If there is no display, no window is shown, but the simulations still run on every frame once started. Calibration needs a display, so ci must not be null then.
 	@param ci the calibration information.
+	@throws java.awt.HeadlessException if there is no display and ci is null.
 	*/
 	public StrengthsGUI(CalibrationInformation ci){
 		this.calibrationInformation = ci;
-		this.frame.setVisible(true);
+		if(this.frame != null){
+			this.frame.setVisible(true);
+		}
 		this.updateDetector();
 		this.changeState(State.PLAYING);
 		if(this.calibrationInformation == null){
@@ -192,18 +315,183 @@ public class StrengthsGUI{
 		for(SimulationPanel sp : this.simulationPanels){
 			contentPane.add(sp);
 		}
+		if(this.frame == null){
+			return;
+		}
 		this.frame.setContentPane(contentPane);
 		this.frame.revalidate();
 		this.frame.repaint();
 	}
 
-	/**Updates the simulations to the current frame by one frame using this StrengthsGUI's MarkerDetector.
-	Does nothing if the simulations are currently paused.
+	/**Starts running the simulations on frames from the camera with ID 0. The camera is only opened here.<br>
+	See start(FrameSource) for details.
+	@throws IllegalStateException if the simulations have already been started.
+	*/
+	public synchronized void start(){
+		if(this.pipeline != null){
+			throw new IllegalStateException("Simulations have already been started.");
+		}
+		this.start(new VideoCap());
+	}
+
+	/**Starts running the simulations on frames from the given source, such as a camera or a video file, and returns straight away.<br>
+	Frames pass through a pipeline of four steps, each on its own thread: capture, marker detection, simulation and presentation.
+	So while one frame is being detected, the next is being captured and the previous one rendered.
+	The source is started first, so a camera's own capture thread runs, and the capture step only takes the newest frame.
+	Once a recorded source runs out of frames, the pipeline finishes the frames it holds and stops, and the source is closed.
+	Detection, usually the slowest step, may run on several threads, which are added while detection falls behind and retired while they sit idle.
+	The largest number of threads, and how frames are passed between steps, can be changed in the settings while the simulations run.
+	@param source the source to take frames from.
+	@throws NullPointerException if source is null.
+	@throws IllegalStateException if the simulations have already been started.
+	*/
+	public synchronized void start(FrameSource source){
+		if(source == null){
+			throw new NullPointerException();
+		}
+		if(this.pipeline != null){
+			throw new IllegalStateException("Simulations have already been started.");
+		}
+		this.source = source;
+		source.start();
+		this.pipeline = this.pipelineBuilder().buildReconfigurable();
+		this.pipeline.start();
+		ReconfigurablePipeline started = this.pipeline;
+		Thread closer = new Thread(() -> this.closeOnTermination(started, source), "frame-source-closer");
+		closer.setDaemon(true);
+		closer.start();
+	}
+
+	//Closes the source once the pipeline has stopped for good, so a camera is given back. A reconfiguration does not count,
+	//since the pipeline replacing the old one reads the same source, and awaitTermination keeps waiting through it.
+	private void closeOnTermination(ReconfigurablePipeline pipeline, FrameSource source){
+		try {
+			while(!pipeline.awaitTermination(1, TimeUnit.DAYS)){
+			}
+		} catch(InterruptedException e){
+			return;
+		}
+		source.close();
+		sourceClosed.countDown();
+	}
+
+	//Waits for the pipeline to stop, which it does once a recorded source runs out of frames, and for the source to be closed.
+	//Returns false if the pipeline was not started or is still running.
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		ReconfigurablePipeline pipeline;
+		synchronized(this){
+			pipeline = this.pipeline;
+		}
+		return pipeline != null && pipeline.awaitTermination(timeout, unit) && sourceClosed.await(timeout, unit);
+	}
+
+	//Replaces the running pipeline with one built from the current settings. The frames already in the old pipeline are shown first.
+	private synchronized void reconfigurePipeline(){
+		if(this.pipeline != null){
+			this.pipeline.reconfigure(this.pipelineBuilder());
+		}
+	}
+
+	//Returns a builder for the frame pipeline, using the current settings.
+	private PipelineBuilder pipelineBuilder(){
+		FrameSource source = this.source;
+		PipelineFunction<Void, PooledFrame> capture = (t) -> {
+			long start = FrameTrace.begin();
+			try {
+				PooledFrame frame = source.getPooledFrame();
+				//A camera interrupted while waiting for a frame returns null too. The pipeline is then stopping, or the watchdog is skipping this call,
+				//and either way ending the stream is harmless.
+				if(frame == null){
+					throw PipelineFunction.endOfStream();
+				}
+				return frame;
+			} finally {
+				FrameTrace.end("capture", start);
+			}
+		};
+		PipelineFunction<PooledFrame, DetectorResults> detect = PipelineFunction.single((frame) -> {
+			long start = FrameTrace.begin();
+			try {
+				return this.detector.detectMarkers(frame, DICTIONARY_ID);
+			} finally {
+				frame.release();
+				FrameTrace.end("detect", start);
+			}
+		});
+		PipelineFunction<DetectorResults, RenderedFrames> simulate = PipelineFunction.single(this::render);
+		PipelineFunction<RenderedFrames, Void> present = PipelineFunction.single((rendered) -> {
+			rendered.present();
+			return null;
+		});
+
+		PipelineBuilder builder = Pipeline.builder();
+		builder.setDefaultUncaughtExceptionHandler((thread, e) -> {
+			e.printStackTrace();
+		});
+		//Queue nodes block rather than drop, so every frame captured is shown, unless pipeline.json says otherwise.
+		builder.setNodeCapacity(FRAMES_IN_FLIGHT).setDropPolicy(DropPolicy.BLOCK);
+		PipelineConfig.configure(builder, pipelineDefaults);
+		//Frames dropped anyway go back to their pools, including those left in the nodes when the pipeline stops.
+		builder.setDiscardAction(PooledFrame.class, PooledFrame::release);
+		builder.setDiscardAction(DetectorResults.class, DetectorResults::release);
+		builder.setDiscardAction(RenderedFrames.class, RenderedFrames::release);
+		builder.addThreads(Void.class, PooledFrame.class, this.nodeBehavior, capture);
+		if(this.detectionWorkers == 1){
+			builder.addThreads(PooledFrame.class, DetectorResults.class, this.nodeBehavior, detect);
+		} else {
+			//Detection takes longer the more markers are in view, so threads are added and retired as needed, up to the setting.
+			//They finish frames out of order, so the frames are put back in order before being simulated.
+			builder.addElasticWorkers(PooledFrame.class, DetectorResults.class, 1, this.detectionWorkers, detect);
+		}
+		builder.addThreads(DetectorResults.class, RenderedFrames.class, this.nodeBehavior, simulate);
+		builder.addThreads(RenderedFrames.class, Void.class, present);
+		return builder;
+	}
+
+	//Renders one frame on every panel, and releases the results. Renders nothing while the simulations are paused.
+	//Frames reach this step in order, so they are recorded here, paused or not.
+	private RenderedFrames render(DetectorResults results){
+		List<SimulationPanel> panels = this.simulationPanels;
+		List<PooledFrame> frames = new ArrayList<PooledFrame>(panels.size());
+		try {
+			this.record(results);
+			if(this.state != State.PAUSED){
+				for(SimulationPanel sp : panels){
+					frames.add(sp.render(results));
+				}
+			}
+		} catch(RuntimeException e){
+			for(PooledFrame f : frames){
+				f.release();
+			}
+			throw e;
+		} finally {
+			results.release();
+		}
+		return new RenderedFrames(panels, frames);
+	}
+
+	/**Updates the simulations to the current frame by one frame using this StrengthsGUI's MarkerDetector,
+	taking the frame from the source the simulations were started with.
+	Does nothing if the simulations are currently paused, or the source has run out of frames.
+	@throws IllegalStateException if the simulations have not been started.
 	*/
 	public void updateSimulations(){
-		Mat m = webcam.getOneFrame();
-        DetectorResults results = detector.detectMarkers(m, 4);
+		FrameSource source;
+		synchronized(this){
+			source = this.source;
+		}
+		if(source == null){
+			throw new IllegalStateException("Simulations have not been started.");
+		}
+		PooledFrame frame = source.getPooledFrame();
+		if(frame == null){
+			return;
+		}
+        DetectorResults results = detector.detectMarkers(frame, DICTIONARY_ID);
+        frame.release();
         this.updateSimulations(results);
+        results.release();
 	}
 
 	/**Updates the simulations using the provided DetectorResults.
@@ -214,8 +502,6 @@ public class StrengthsGUI{
 		if(this.state != State.PAUSED){
 	        for(SimulationPanel sp : this.simulationPanels){
 	        	sp.simulate(results);
-	        	//Possibly unnecessary?
-	        	sp.repaint();
 	        }
     	}
 	}
@@ -252,6 +538,37 @@ public class StrengthsGUI{
 		}).start();
 	}
 
+	//Records the results if a session is being recorded. If the disk fills up, recording stops rather than holding up the simulations.
+	private void record(DetectorResults results){
+		SessionRecorder recorder = this.recorder;
+		if(recorder == null){
+			return;
+		}
+		try {
+			recorder.record(results);
+		} catch(IllegalStateException e){
+			//Recording was stopped while this frame was on its way.
+		} catch(IOException e){
+			e.printStackTrace();
+			if(this.recorder == recorder){
+				this.recorder = null;
+			}
+			try {
+				recorder.close();
+			} catch(IOException ignored){
+			}
+		}
+	}
+
+	//Stops recording the session, and writes its index.
+	private void stopRecording() throws IOException {
+		SessionRecorder stopping = this.recorder;
+		this.recorder = null;
+		if(stopping != null){
+			stopping.close();
+		}
+	}
+
 	//Changes the current state by disabling items limited to the old state and enabling items which are enabled for the new state.
 	private void changeState(State newState){
 		if(this.state == null){
@@ -430,11 +747,46 @@ public class StrengthsGUI{
 		}
 	}
 
+	//Returns the pipeline settings saved by ConfigGenerator, or an empty object if there are none, in which case the built-in defaults are used.
+	private static JSONObject readPipelineDefaults(){
+		try{
+			String content = new Scanner(new File(PIPELINE_FILE)).useDelimiter("\\Z").next();
+			return new JSONObject(content);
+		} catch(IOException e){
+			return new JSONObject();
+		}
+	}
+
 	//Returns the calibrator currently being used. Change if a different method of determining the calibrator is used.
 	private static Calibrator getCalibrator(){
 		return calibrator;
 	}
 
+	//The frames rendered for each panel from one frame's detector results, waiting to be presented.
+	private static final class RenderedFrames{
+		private final List<SimulationPanel> panels;
+		private final List<PooledFrame> frames;
+
+		private RenderedFrames(List<SimulationPanel> panels, List<PooledFrame> frames){
+			this.panels = panels;
+			this.frames = frames;
+		}
+
+		//Shows each frame on the panel it was rendered for, releasing it.
+		private void present(){
+			for(int i = 0; i < this.frames.size(); i++){
+				this.panels.get(i).present(this.frames.get(i));
+			}
+		}
+
+		//Releases each frame without showing it.
+		private void release(){
+			for(PooledFrame f : this.frames){
+				f.release();
+			}
+		}
+	}
+
 	//Enum used to mark the GUI as being in a certain state.
 	private static enum State{
 		PLAYING, PAUSED, CALIBRATING;
@@ -472,8 +824,6 @@ public class StrengthsGUI{
 		} catch(IOException e) {
 			gui = new StrengthsGUI();
 		}
-        while(true){
-            gui.updateSimulations();
-        }
+        gui.start();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package util;
+
+import java.util.*;
+import org.opencv.core.*;
+
+/**FrameSource which plays back frames held in memory, a given number of times over.<br>
+Since no decoding is done, this measures the speed of whatever reads the frames, and nothing else. Each frame is copied into a pooled frame
+as it is handed out, so readers may keep or release frames as they would a camera's.<br>
+This class is thread safe.
+*/
+public class ArrayFrameSource implements FrameSource {
+	private final Mat[] frames;
+	private final int frameRate;
+	private final long total;
+	private final Playback playback;
+	private final FramePool pool;
+	private long next;
+
+	//RI: frames is not empty, and every frame has the size and type of pool. 0 <= next <= total.
+	//AF: Represents frames[next % frames.length], frames[(next + 1) % frames.length], ..., up to but not including frame number total.
+
+	/**Constructs an ArrayFrameSource. The frames are not copied, so they must not be changed or released while this source is in use.
+	@param frames the frames to play back, in order.
+	@param frameRate the number of frames to hand out per second when playing back in real time, and the frame rate reported by this source.
+	@param pacing whether to hand out frames in real time, or as fast as they are asked for.
+	@param repetitions the number of times to play back the frames.
+	@throws IllegalArgumentException if frames is empty, the frames differ in size or type, or frameRate or repetitions is not positive.
+	@throws NullPointerException if frames, any frame, or pacing is null.
+	*/
+	public ArrayFrameSource(List<Mat> frames, int frameRate, FramePacing pacing, int repetitions){
+		if(pacing == null){
+			throw new NullPointerException();
+		}
+		if(frames.isEmpty()){
+			throw new IllegalArgumentException("There must be at least one frame.");
+		}
+		if(repetitions <= 0){
+			throw new IllegalArgumentException("repetitions must be positive.");
+		}
+		this.frames = frames.toArray(new Mat[0]);
+		Mat first = this.frames[0];
+		this.pool = new FramePool(first.rows(), first.cols(), first.type(), VideoCap.DEFAULT_POOL_SIZE);
+		for(Mat m : this.frames){
+			if(!pool.matches(m)){
+				throw new IllegalArgumentException("Every frame must have the size and type of the first.");
+			}
+		}
+		this.frameRate = frameRate;
+		this.playback = new Playback(pacing, frameRate);
+		this.total = (long)this.frames.length * repetitions;
+	}
+
+	/**Returns a copy of the next frame, waiting until it is due if playing back in real time.
+	The caller holds a reference to the returned frame, and must release it once done.
+	@return the next frame, or null once every frame has been handed out the given number of times, or the source is closed.
+	*/
+	@Override
+	public synchronized PooledFrame getPooledFrame(){
+		if(next >= total){
+			return null;
+		}
+		playback.await();
+		PooledFrame frame = pool.acquire();
+		frames[(int)(next++ % frames.length)].copyTo(frame.mat());
+		return frame;
+	}
+
+	@Override
+	public FramePool framePool(){
+		return pool;
+	}
+
+	@Override
+	public int getFrameRate(){
+		return frameRate;
+	}
+
+	@Override
+	public int getFrameWidth(){
+		return pool.cols();
+	}
+
+	@Override
+	public int getFrameHeight(){
+		return pool.rows();
+	}
+
+	/**Skips the remaining frames. Later calls to getPooledFrame return null.
+	*/
+	@Override
+	public synchronized void close(){
+		next = total;
+	}
+}
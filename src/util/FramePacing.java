@@ -0,0 +1,13 @@
+package util;
+
+/**How a recorded FrameSource, such as a video file, hands out its frames.
+*/
+public enum FramePacing {
+	/**Frames are handed out no faster than the source's frame rate, as a camera would produce them.
+	A reader which falls behind is not made to catch up by skipping frames.
+	*/
+	REAL_TIME,
+	/**Frames are handed out as soon as they are asked for, so the speed of whatever reads them can be measured.
+	*/
+	AS_FAST_AS_POSSIBLE
+}
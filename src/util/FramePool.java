@@ -0,0 +1,109 @@
+package util;
+
+import org.opencv.core.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**Pool of reusable frame buffers, all of the same size and type.<br>
+Frames are checked out with acquire, and go back to the pool once every holder has released them,
+so code which processes frames of one size does no native allocation once the pool is warm.<br>
+If every pooled frame is checked out, acquire allocates a new one rather than waiting. The pool keeps at most capacity idle frames,
+and frees any others as soon as they are released, rather than leaving them for the garbage collector.<br>
+This class is thread safe.
+*/
+public final class FramePool {
+	private final int rows;
+	private final int cols;
+	private final int type;
+	private final int capacity;
+
+	private final ConcurrentLinkedQueue<Mat> idle = new ConcurrentLinkedQueue<Mat>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final AtomicLong allocations = new AtomicLong();
+
+	//RI: idleCount is the size of idle, give or take concurrent acquires and releases. Every mat in idle has this pool's size and type.
+	//AF: Represents the idle frames of a pool, along with the number of frames it has allocated.
+
+	/**Constructs an empty FramePool. Frames are allocated as they are first needed.
+	@param rows the number of rows of each frame.
+	@param cols the number of columns of each frame.
+	@param type the OpenCV type of each frame, such as CvType.CV_8UC3.
+	@param capacity the largest number of idle frames to keep.
+	@throws IllegalArgumentException if rows, cols or capacity is negative.
+	*/
+	public FramePool(int rows, int cols, int type, int capacity){
+		if(rows < 0 || cols < 0 || capacity < 0){
+			throw new IllegalArgumentException("rows, cols and capacity must not be negative.");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.type = type;
+		this.capacity = capacity;
+	}
+
+	/**Checks out a frame. The caller holds the only reference to it, and must release it once done.<br>
+	The frame's contents are whatever was last written to it.
+	@return a frame of this pool's size and type.
+	*/
+	public PooledFrame acquire(){
+		Mat m = idle.poll();
+		if(m != null){
+			idleCount.decrementAndGet();
+		} else {
+			m = new Mat(rows, cols, type);
+			allocations.incrementAndGet();
+		}
+		return new PooledFrame(m, this);
+	}
+
+	//Called by PooledFrame once its last reference is released.
+	//A holder may have reallocated the mat, for example by reading a frame of a different size into it, in which case it is not reused.
+	void recycle(Mat m){
+		if(this.matches(m)){
+			if(idleCount.incrementAndGet() <= capacity){
+				idle.offer(m);
+				return;
+			}
+			idleCount.decrementAndGet();
+		}
+		m.release();
+	}
+
+	/**Returns the number of rows of this pool's frames.
+	@return the number of rows of this pool's frames.
+	*/
+	public int rows(){
+		return rows;
+	}
+
+	/**Returns the number of columns of this pool's frames.
+	@return the number of columns of this pool's frames.
+	*/
+	public int cols(){
+		return cols;
+	}
+
+	/**Returns the OpenCV type of this pool's frames.
+	@return the OpenCV type of this pool's frames.
+	*/
+	public int type(){
+		return type;
+	}
+
+	/**Returns whether the given mat has this pool's size and type.
+	@param m the mat to check.
+	@throws NullPointerException if m is null.
+	@return whether the given mat has this pool's size and type.
+	*/
+	public boolean matches(Mat m){
+		return m.rows() == rows && m.cols() == cols && m.type() == type;
+	}
+
+	/**Returns the number of frames this pool has allocated so far. Once the pool is warm, this stops growing.
+	@return the number of frames this pool has allocated.
+	*/
+	public long allocations(){
+		return allocations.get();
+	}
+}
@@ -0,0 +1,47 @@
+package util;
+
+/**Source of frames for the simulations, such as a camera, a video file or a directory of images.<br>
+Frames are handed out in pooled buffers, so a source which is read continuously does no native allocation once its pool is warm.<br>
+Implementations need not be safe for use by more than one reading thread at a time, unless they say otherwise.
+*/
+public interface FrameSource extends AutoCloseable {
+	/**Returns the next frame, in a frame from this source's frame pool.
+	The caller holds a reference to the returned frame, and must release it once done.
+	@return the next frame, or null if the source has no more frames.
+	*/
+	PooledFrame getPooledFrame();
+
+	/**Returns the pool which getPooledFrame takes frames from.
+	Its frames are the size of this source's frames, so later stages which need buffers of that size can take them from it too.
+	@return this source's frame pool.
+	*/
+	FramePool framePool();
+
+	/**Returns the number of frames this source produces per second.
+	@return the frame rate of this source.
+	*/
+	int getFrameRate();
+
+	/**Returns the width of this source's frames.
+	@return the width of this source's frames, in pixels.
+	*/
+	int getFrameWidth();
+
+	/**Returns the height of this source's frames.
+	@return the height of this source's frames, in pixels.
+	*/
+	int getFrameHeight();
+
+	/**Prepares this source to be read continuously, for example by starting a capture thread.
+	Called once before a pipeline starts reading frames. By default, does nothing.
+	*/
+	default void start(){
+	}
+
+	/**Releases the resources held by this source. Frames already handed out stay valid until they are released.
+	By default, does nothing.
+	*/
+	@Override
+	default void close(){
+	}
+}
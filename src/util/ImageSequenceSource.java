@@ -0,0 +1,125 @@
+package util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**FrameSource which plays back the PNG and JPEG images in a directory, once, in order of their file names.<br>
+Images are read as they are needed, so directories of any length can be played back. Every image should be the size of the first.<br>
+This class is thread safe.
+*/
+public class ImageSequenceSource implements FrameSource {
+
+	static{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	private final List<Path> images;
+	private final int frameRate;
+	private final Playback playback;
+	private final FramePool pool;
+	private int next;
+
+	//RI: images is not empty, and 0 <= next <= images.size().
+	//AF: Represents the images images[next], images[next + 1], ..., played back at frameRate frames per second.
+
+	/**Finds the images to play back in the given directory. Files whose names end in .png, .jpg or .jpeg, ignoring case, are played back.
+	@param directory the directory holding the images.
+	@param frameRate the number of images to hand out per second when playing back in real time, and the frame rate reported by this source.
+	@param pacing whether to hand out frames in real time, or as fast as they are asked for.
+	@throws IOException if the directory cannot be listed, holds no images, or its first image cannot be read.
+	@throws IllegalArgumentException if frameRate is not positive.
+	@throws NullPointerException if directory or pacing is null.
+	*/
+	public ImageSequenceSource(Path directory, int frameRate, FramePacing pacing) throws IOException {
+		if(pacing == null){
+			throw new NullPointerException();
+		}
+		try(Stream<Path> files = Files.list(directory)){
+			images = files.filter(ImageSequenceSource::isImage).sorted().collect(Collectors.toList());
+		}
+		if(images.isEmpty()){
+			throw new IOException("No PNG or JPEG images in " + directory + ".");
+		}
+		this.frameRate = frameRate;
+		this.playback = new Playback(pacing, frameRate);
+		Mat first = read(images.get(0));
+		pool = new FramePool(first.rows(), first.cols(), first.type(), VideoCap.DEFAULT_POOL_SIZE);
+		first.release();
+	}
+
+	private static boolean isImage(Path p){
+		String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
+		return Files.isRegularFile(p) && (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg"));
+	}
+
+	private static Mat read(Path p) throws IOException {
+		Mat m = Imgcodecs.imread(p.toString());
+		if(m.empty()){
+			m.release();
+			throw new IOException("Could not read image " + p + ".");
+		}
+		return m;
+	}
+
+	/**Returns the next image, waiting until it is due if playing back in real time.
+	The caller holds a reference to the returned frame, and must release it once done.
+	@throws UncheckedIOException if the image cannot be read.
+	@return the next image, or null once every image has been handed out or the source is closed.
+	*/
+	@Override
+	public synchronized PooledFrame getPooledFrame(){
+		if(next >= images.size()){
+			return null;
+		}
+		playback.await();
+		Mat image;
+		try {
+			image = read(images.get(next++));
+		} catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+		PooledFrame frame = pool.acquire();
+		image.copyTo(frame.mat());
+		image.release();
+		return frame;
+	}
+
+	@Override
+	public FramePool framePool(){
+		return pool;
+	}
+
+	@Override
+	public int getFrameRate(){
+		return frameRate;
+	}
+
+	@Override
+	public int getFrameWidth(){
+		return pool.cols();
+	}
+
+	@Override
+	public int getFrameHeight(){
+		return pool.rows();
+	}
+
+	/**Returns the number of images this source plays back.
+	@return the number of images.
+	*/
+	public int size(){
+		return images.size();
+	}
+
+	/**Skips the remaining images. Later calls to getPooledFrame return null.
+	*/
+	@Override
+	public synchronized void close(){
+		next = images.size();
+	}
+}
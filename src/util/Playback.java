@@ -0,0 +1,31 @@
+package util;
+
+import java.util.concurrent.locks.LockSupport;
+
+//Paces the frames of a recorded source. With real time pacing, frame n is due n frame intervals after the first frame was handed out.
+final class Playback {
+	private final long interval;
+	private long start;
+	private long frames;
+
+	Playback(FramePacing pacing, int frameRate){
+		if(frameRate <= 0){
+			throw new IllegalArgumentException("Frame rate must be positive.");
+		}
+		this.interval = pacing == FramePacing.REAL_TIME ? 1_000_000_000L / frameRate : 0;
+	}
+
+	//Waits until the next frame is due. Returns early if the thread is interrupted, keeping its interrupt status.
+	synchronized void await(){
+		long now = System.nanoTime();
+		if(frames == 0){
+			start = now;
+		}
+		long due = start + frames * interval;
+		frames++;
+		while(now - due < 0 && !Thread.currentThread().isInterrupted()){
+			LockSupport.parkNanos(due - now);
+			now = System.nanoTime();
+		}
+	}
+}
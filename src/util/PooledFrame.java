@@ -0,0 +1,66 @@
+package util;
+
+import org.opencv.core.Mat;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**Reference counted frame buffer, checked out from a FramePool.<br>
+A PooledFrame starts out with one reference, held by whoever acquired it. Every other holder takes its own reference with retain,
+and every holder calls release exactly once when it is done with the frame.<br>
+Once the last reference is released the buffer goes back to its pool, and may be handed out again, so it must not be used after that.<br>
+Holders must not write to the frame while other holders may still be reading it.
+*/
+public final class PooledFrame {
+	private final Mat mat;
+	private final FramePool pool;
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	//RI: references >= 0. Once references reaches 0, mat belongs to pool.
+	//AF: Represents a frame buffer and the number of holders it has.
+
+	PooledFrame(Mat mat, FramePool pool){
+		this.mat = mat;
+		this.pool = pool;
+	}
+
+	/**Returns the frame's buffer. The returned mat is only valid while the caller holds a reference.
+	@throws IllegalStateException if every reference has already been released.
+	@return the frame's buffer.
+	*/
+	public Mat mat(){
+		if(references.get() == 0){
+			throw new IllegalStateException("Frame has already been released.");
+		}
+		return mat;
+	}
+
+	/**Takes another reference to this frame.
+	@throws IllegalStateException if every reference has already been released.
+	@return this, for convenience.
+	*/
+	public PooledFrame retain(){
+		int current;
+		do {
+			current = references.get();
+			if(current == 0){
+				throw new IllegalStateException("Frame has already been released.");
+			}
+		} while(!references.compareAndSet(current, current + 1));
+		return this;
+	}
+
+	/**Releases one reference to this frame. Releasing the last reference returns the buffer to its pool.
+	@throws IllegalStateException if every reference has already been released.
+	*/
+	public void release(){
+		int current;
+		do {
+			current = references.get();
+			if(current == 0){
+				throw new IllegalStateException("Frame has already been released.");
+			}
+		} while(!references.compareAndSet(current, current - 1));
+		if(current == 1){
+			pool.recycle(mat);
+		}
+	}
+}
@@ -3,21 +3,50 @@ package util;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
 import org.opencv.core.*;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
 Small class which allows us to capture video from the webcam.
+This is the FrameSource used when the simulations run live.
 
 @author Nick i think 
 @since 10/9/19
 */
 
 
-public class VideoCap {
+public class VideoCap implements FrameSource {
 
     static{
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
     }
 
+    /**
+    Number of idle frames kept by each camera's frame pool.
+    */
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /**
+    Number of frame buffers allocated up front when capture starts: one being written by the grabber thread,
+    one holding the newest frame, and one being read by whoever took the frame before that.
+    */
+    public static final int CAPTURE_BUFFERS = 3;
+
+    //Counts the cameras opened in this JVM, so checks can confirm that code given another FrameSource never opens one.
+    private static final AtomicInteger openedCameras = new AtomicInteger();
+
     private VideoCapture cap;
+    private FramePool pool;
+
+    //Guards everything below. The grabber thread holds one reference to latest, which it releases once it publishes a newer frame.
+    private final Object captureLock = new Object();
+    private volatile boolean capturing;
+    //Set from startCapture until the grabber thread exits. The grabber thread owns cap while this is set, even once capturing is cleared.
+    private boolean grabberRunning;
+    //Set by close if the grabber thread was still running, so that it releases the camera once it exits.
+    private boolean releaseOnExit;
+    private PooledFrame latest;
+    private boolean latestTaken;
+    private long capturedFrames;
+    private long overwrittenFrames;
 
     /**
     Sets up the class to capture from the camera specified by cameraId.
@@ -25,9 +54,18 @@ public class VideoCap {
     */
     public VideoCap(int cameraId){
         cap = new VideoCapture();
+        openedCameras.incrementAndGet();
         cap.open(cameraId);
     }
 
+    /**
+    Returns the number of VideoCaps which have opened a camera in this JVM, whether or not the camera was there.
+    @return the number of cameras opened.
+    */
+    public static int openedCameras(){
+        return openedCameras.get();
+    }
+
     /**
     Sets up the class to capture from the camera with ID 0.
     Calling this constructor is exactly the same as calling VideoCap(0).
@@ -38,18 +76,248 @@ public class VideoCap {
 
     /**
     Reads a frame from the camera and returns it in a Mat.
-    @return Image taken from the camera, represented as a Mat.
+    While capture is running, this copies the newest captured frame instead, waiting only if it has already been taken. See getPooledFrame.
+    @return Image taken from the camera, represented as a Mat, or an empty Mat if the calling thread was interrupted while waiting.
     */
     public Mat getOneFrame() {
         Mat dst = new Mat();
-        cap.read(dst);
+        PooledFrame frame = this.getPooledFrame();
+        if(frame != null){
+            frame.mat().copyTo(dst);
+            frame.release();
+        }
         return dst;
     }
-    
+
+    /**
+    Reads a frame from the camera into a frame from this camera's frame pool, and returns it.
+    Unlike getOneFrame, this does not allocate a new Mat once the pool is warm.
+    While capture is running, this returns the newest captured frame instead of reading one, so the camera's exposure and readout
+    no longer hold up the caller. It waits only if the newest frame has already been taken, so no frame is returned twice.
+    That wait ends if the calling thread is interrupted, so a camera which has stopped producing frames cannot hold up a pipeline being stopped.
+    The caller holds a reference to the returned frame, and must release it once done.
+    @return Image taken from the camera, in a pooled frame, or null if the calling thread was interrupted while waiting, in which case its interrupt status is kept.
+    */
+    @Override
+    public PooledFrame getPooledFrame() {
+        try {
+            return this.takeFrame();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+    Returns the newest frame captured by the grabber thread, without waiting. This may be a frame which has been returned before.
+    The caller holds a reference to the returned frame, and must release it once done.
+    @return The newest captured frame, or null if capture is not running or no frame has been captured yet.
+    */
+    public PooledFrame latestFrame() {
+        synchronized(captureLock){
+            if(latest == null){
+                return null;
+            }
+            latestTaken = true;
+            return latest.retain();
+        }
+    }
+
+    //Returns the newest frame not yet taken, waiting for the grabber thread if need be.
+    //If capture is not running, reads a frame from the camera instead, once a grabber thread which is stopping has let go of it.
+    //The read holds the lock, so capture cannot start in the middle of it.
+    private PooledFrame takeFrame() throws InterruptedException {
+        synchronized(captureLock){
+            while(capturing ? latest == null || latestTaken : grabberRunning){
+                captureLock.wait();
+            }
+            if(capturing){
+                latestTaken = true;
+                return latest.retain();
+            }
+            PooledFrame frame = this.framePool().acquire();
+            cap.read(frame.mat());
+            return frame;
+        }
+    }
+
+    /**
+    Starts a daemon thread which captures frames from the camera continuously, into buffers from this camera's frame pool.
+    From then on getPooledFrame, getOneFrame and latestFrame return the newest captured frame rather than reading from the camera themselves.
+    Does nothing if capture is already running.
+    */
+    public void startCapture() {
+        FramePool frames = this.framePool();
+        synchronized(captureLock){
+            if(capturing){
+                return;
+            }
+            capturing = true;
+            if(grabberRunning){
+                //The grabber thread has been asked to stop but has not yet, so it carries on instead.
+                return;
+            }
+            //Warm the pool, so the grabber does no allocation once it starts.
+            PooledFrame[] buffers = new PooledFrame[CAPTURE_BUFFERS];
+            for(int i = 0; i < buffers.length; i++){
+                buffers[i] = frames.acquire();
+            }
+            for(PooledFrame buffer : buffers){
+                buffer.release();
+            }
+            grabberRunning = true;
+            Thread grabber = new Thread(() -> this.grab(frames), "camera-grabber");
+            grabber.setDaemon(true);
+            grabber.start();
+        }
+    }
+
+    /**
+    Starts capture, as startCapture does.
+    */
+    @Override
+    public void start() {
+        this.startCapture();
+    }
+
+    /**
+    Stops capture, and releases the camera.
+    If the calling thread is interrupted while capture is stopping, the grabber thread releases the camera once it has stopped.
+    */
+    @Override
+    public void close() {
+        this.stopCapture();
+        synchronized(captureLock){
+            if(grabberRunning){
+                releaseOnExit = true;
+            } else {
+                cap.release();
+            }
+        }
+    }
+
+    /**
+    Stops the thread started by startCapture, and waits for it to finish its current frame.
+    Threads waiting for a captured frame read from the camera themselves once it has stopped, as does whoever asks for a frame afterwards.
+    Does nothing if capture is not running.
+    If the calling thread is interrupted while waiting, this returns at once with the interrupt status kept, and the grabber thread finishes stopping by itself.
+    */
+    public void stopCapture() {
+        synchronized(captureLock){
+            capturing = false;
+            captureLock.notifyAll();
+            try {
+                while(grabberRunning){
+                    captureLock.wait();
+                }
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+    Returns whether the grabber thread started by startCapture is running.
+    @return Whether capture is running.
+    */
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    /**
+    Returns the number of frames the grabber thread has captured since this VideoCap was constructed.
+    @return The number of captured frames.
+    */
+    public long capturedFrames() {
+        synchronized(captureLock){
+            return capturedFrames;
+        }
+    }
+
+    /**
+    Returns the number of captured frames which were replaced by a newer frame before anyone took them.
+    If this grows steadily, the camera produces frames faster than they are used.
+    @return The number of overwritten frames.
+    */
+    public long overwrittenFrames() {
+        synchronized(captureLock){
+            return overwrittenFrames;
+        }
+    }
+
+    //Runs on the grabber thread. Only this thread touches cap until it exits.
+    private void grab(FramePool frames) {
+        while(this.keepGrabbing()){
+            PooledFrame frame = frames.acquire();
+            if(!cap.grab() || !cap.retrieve(frame.mat())){
+                //The camera has no frame for us, perhaps because it was unplugged. Try again shortly rather than spinning, until capture is stopped.
+                frame.release();
+                try {
+                    Thread.sleep(10);
+                } catch(InterruptedException e){
+                    synchronized(captureLock){
+                        capturing = false;
+                    }
+                }
+                continue;
+            }
+            PooledFrame replaced;
+            synchronized(captureLock){
+                replaced = latest;
+                if(replaced != null && !latestTaken){
+                    overwrittenFrames++;
+                }
+                latest = frame;
+                latestTaken = false;
+                capturedFrames++;
+                captureLock.notifyAll();
+            }
+            if(replaced != null){
+                replaced.release();
+            }
+        }
+    }
+
+    //Returns whether the grabber thread should capture another frame. If not, gives up the newest frame and the camera, and wakes everyone waiting for the thread to stop.
+    //Checked under the lock, so startCapture either sees the thread still running and lets it carry on, or starts a new one.
+    private boolean keepGrabbing() {
+        PooledFrame last;
+        synchronized(captureLock){
+            if(capturing){
+                return true;
+            }
+            last = latest;
+            latest = null;
+            grabberRunning = false;
+            if(releaseOnExit){
+                cap.release();
+            }
+            captureLock.notifyAll();
+        }
+        if(last != null){
+            last.release();
+        }
+        return false;
+    }
+
+    /**
+    Returns the pool which getPooledFrame takes frames from.
+    Its frames are the size of the camera feed, so later stages which need buffers of that size can take them from it too.
+    @return This camera's frame pool.
+    */
+    @Override
+    public synchronized FramePool framePool() {
+        if(pool == null){
+            pool = new FramePool(this.getFrameHeight(), this.getFrameWidth(), CvType.CV_8UC3, DEFAULT_POOL_SIZE);
+        }
+        return pool;
+    }
+
     /**
     Reads the frame rate from the camera and returns it.
     @return The integer frame rate of the camera.
     */
+    @Override
     public int getFrameRate() {
 		return (int) cap.get(Videoio.CAP_PROP_FPS);
     }
@@ -58,6 +326,7 @@ public class VideoCap {
     Reads the width of the camera feed and returns it.
     @return The integer width of the camera.
     */
+	@Override
 	public int getFrameWidth() {
 		return (int) cap.get(Videoio.CAP_PROP_FRAME_WIDTH);
 	}
@@ -66,7 +335,8 @@ public class VideoCap {
     Reads the height of the camera feed and returns it.
     @return The integer height of the camera.
     */
+	@Override
 	public int getFrameHeight() {
 		return (int) cap.get(Videoio.CAP_PROP_FRAME_HEIGHT);
 	}
-}
\ No newline at end of file
+}
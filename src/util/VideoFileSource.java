@@ -0,0 +1,105 @@
+package util;
+
+import java.io.IOException;
+import org.opencv.core.*;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**FrameSource which plays back a video file, once, either in real time or as fast as frames are asked for.<br>
+This class is thread safe.
+*/
+public class VideoFileSource implements FrameSource {
+
+	static{
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**Frame rate assumed for video files which do not record one.
+	*/
+	public static final int DEFAULT_FRAME_RATE = 30;
+
+	private final VideoCapture cap;
+	private final int frameRate;
+	private final int width;
+	private final int height;
+	private final Playback playback;
+	private final FramePool pool;
+	private boolean ended;
+
+	//RI: once ended, cap has been released.
+	//AF: Represents the frames of a video file from the current position onwards.
+
+	/**Opens the given video file for playback.
+	@param path the path of the video file.
+	@param pacing whether to hand out frames in real time, or as fast as they are asked for.
+	@throws IOException if the file cannot be opened as a video.
+	@throws NullPointerException if path or pacing is null.
+	*/
+	public VideoFileSource(String path, FramePacing pacing) throws IOException {
+		if(pacing == null){
+			throw new NullPointerException();
+		}
+		cap = new VideoCapture();
+		if(!cap.open(path)){
+			throw new IOException("Could not open video file " + path + ".");
+		}
+		int recordedRate = (int)Math.round(cap.get(Videoio.CAP_PROP_FPS));
+		frameRate = recordedRate > 0 ? recordedRate : DEFAULT_FRAME_RATE;
+		width = (int)cap.get(Videoio.CAP_PROP_FRAME_WIDTH);
+		height = (int)cap.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+		playback = new Playback(pacing, frameRate);
+		pool = new FramePool(height, width, CvType.CV_8UC3, VideoCap.DEFAULT_POOL_SIZE);
+	}
+
+	/**Returns the next frame of the video, waiting until it is due if playing back in real time.
+	The caller holds a reference to the returned frame, and must release it once done.
+	@return the next frame, or null once the end of the video is reached or the source is closed.
+	*/
+	@Override
+	public synchronized PooledFrame getPooledFrame(){
+		if(ended){
+			return null;
+		}
+		playback.await();
+		PooledFrame frame = pool.acquire();
+		if(!cap.read(frame.mat())){
+			frame.release();
+			this.close();
+			return null;
+		}
+		return frame;
+	}
+
+	@Override
+	public FramePool framePool(){
+		return pool;
+	}
+
+	/**Returns the frame rate recorded in the video file, or DEFAULT_FRAME_RATE if it does not record one.
+	@return the frame rate of the video.
+	*/
+	@Override
+	public int getFrameRate(){
+		return frameRate;
+	}
+
+	@Override
+	public int getFrameWidth(){
+		return width;
+	}
+
+	@Override
+	public int getFrameHeight(){
+		return height;
+	}
+
+	/**Closes the video file. Later calls to getPooledFrame return null.
+	*/
+	@Override
+	public synchronized void close(){
+		if(!ended){
+			ended = true;
+			cap.release();
+		}
+	}
+}